@@ -1,65 +1,88 @@
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.*;
+import java.text.DecimalFormat;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
 
 import model.Bidder;
 import model.Vehicle;
+import dao.AsyncDatabaseConnection;
+import dao.BidResult;
 import dao.DatabaseConnection;
+import blockchain.BlockchainService;
+import util.BidStageEvent;
+import util.ConfigManager;
 import util.LoggerUtil;
+import util.MetricsRegistry;
+import util.PasswordHasher;
+import util.StartupPipeline;
+import ui.VehicleTableModel;
 
 public class GridlockedCryptizer {
     private JFrame frame;
     private Bidder currentBidder;
+    private String sessionToken;
+    private Timer refreshTimer;
+    private CompletableFuture<List<Vehicle>> pendingRefresh;
+    // Set when a refresh was asked for while one was running; it runs again once that one finishes
+    private boolean refreshDirty;
+    private long dirtyCorrelationId;
+    // Database calls run in the background; their results are handled on the Event Dispatch Thread
+    private static final Executor EDT = SwingUtilities::invokeLater;
     private static final LoggerUtil logger = LoggerUtil.getLogger(GridlockedCryptizer.class);
 
     public static void main(String[] args) {
+        // Flush queued bids, release pooled connections, seal the open ledger block and write out the log on exit
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            AsyncDatabaseConnection.shutdown();
+            DatabaseConnection.shutdown();
+            BlockchainService.getInstance().shutdown();
+            MetricsRegistry.getInstance().shutdown();
+            LoggerUtil.shutdown();
+        }, "shutdown"));
+
+        // Bring up services in the background; the login screen does not wait for them
+        StartupPipeline startup = new StartupPipeline()
+            .stage("config", ConfigManager::getInstance)
+            .stage("logging", LoggerUtil::initialize, "config")
+            .stage("driver", () -> {
+                if (!DatabaseConnection.loadDriver()) {
+                    throw new IllegalStateException("MySQL JDBC Driver not loaded");
+                }
+            })
+            .stage("schema", DatabaseConnection::initialize, "config", "logging", "driver")
+            .stage("pool", DatabaseConnection::warmPool, "schema")
+            .stage("bid_book", () -> {
+                if (!DatabaseConnection.warmBidBook()) {
+                    throw new IllegalStateException("Bid book could not be loaded");
+                }
+            }, "schema")
+            .stage("catalog", DatabaseConnection::getVehicles, "schema")
+            .stage("blockchain", BlockchainService::getInstance, "config", "logging")
+            .stage("ledger_relay", DatabaseConnection::startLedgerRelay, "schema", "blockchain")
+            .stage("password_hasher", PasswordHasher::getInstance, "config", "logging");
+        startup.start();
+
         SwingUtilities.invokeLater(() -> {
             try {
-                // Test database connection before initializing the application
-                boolean dbConnected = false;
-                try {
-                    DatabaseConnection.getConnection().close();
-                    logger.info("Database connection successful");
-                    dbConnected = true;
-                } catch (Exception e) {
-                    String errorMessage = "Database connection error: " + e.getMessage() + 
-                        "\n\nPlease make sure:\n" +
-                        "1. MySQL Server is running\n" +
-                        "2. The database 'gridlocked_cryptizer' exists\n" +
-                        "3. The MySQL JDBC driver is in the lib directory\n" +
-                        "4. The database credentials in config.properties are correct";
-
-                    // Show error but allow application to continue
-                    int option = JOptionPane.showOptionDialog(
-                        null, 
-                        errorMessage + "\n\nDo you want to continue without database connection?", 
-                        "Database Error", 
-                        JOptionPane.YES_NO_OPTION, 
-                        JOptionPane.WARNING_MESSAGE, 
-                        null, 
-                        new String[]{"Continue Anyway", "Exit"}, 
-                        "Exit"
-                    );
-
-                    logger.error("Database connection error", e);
-
-                    if (option != JOptionPane.YES_OPTION) {
-                        return;
+                GridlockedCryptizer app = new GridlockedCryptizer();
+                app.initialize();
+                startup.milestone("first_frame");
+
+                startup.whenDone("schema").whenCompleteAsync((ok, error) -> {
+                    if (error == null) {
+                        logger.info("Database connection successful");
+                    } else {
+                        app.showDatabaseError(error);
                     }
-                }
-
-                new GridlockedCryptizer().initialize();
-
-                // Show a warning if database is not connected
-                if (!dbConnected) {
-                    JOptionPane.showMessageDialog(
-                        null, 
-                        "Running in offline mode. Database features will not be available.", 
-                        "Offline Mode", 
-                        JOptionPane.WARNING_MESSAGE
-                    );
-                }
+                }, EDT);
             } catch (Exception e) {
                 JOptionPane.showMessageDialog(null, "Error starting application: " + e.getMessage(), 
                     "Application Error", JOptionPane.ERROR_MESSAGE);
@@ -68,6 +91,45 @@ public class GridlockedCryptizer {
         });
     }
 
+    private void showDatabaseError(Throwable error) {
+        Throwable cause = AsyncDatabaseConnection.unwrap(error);
+        // A stage failure wraps the original exception
+        if (cause instanceof IllegalStateException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        logger.error("Database connection error", cause);
+
+        String errorMessage = "Database connection error: " + AsyncDatabaseConnection.describe(cause) +
+            "\n\nPlease make sure:\n" +
+            "1. MySQL Server is running\n" +
+            "2. The database 'gridlocked_cryptizer' exists\n" +
+            "3. The MySQL JDBC driver is in the lib directory\n" +
+            "4. The database credentials in config.properties are correct";
+
+        // Show error but allow application to continue
+        int option = JOptionPane.showOptionDialog(
+            frame, 
+            errorMessage + "\n\nDo you want to continue without database connection?", 
+            "Database Error", 
+            JOptionPane.YES_NO_OPTION, 
+            JOptionPane.WARNING_MESSAGE, 
+            null, 
+            new String[]{"Continue Anyway", "Exit"}, 
+            "Exit"
+        );
+
+        if (option != JOptionPane.YES_OPTION) {
+            System.exit(1);
+        }
+
+        JOptionPane.showMessageDialog(
+            frame, 
+            "Running in offline mode. Database features will not be available.", 
+            "Offline Mode", 
+            JOptionPane.WARNING_MESSAGE
+        );
+    }
+
     private void initialize() {
         // Set up the main frame
         frame = new JFrame("Gridlocked Cryptizer - Vehicle Auction System");
@@ -140,6 +202,7 @@ public class GridlockedCryptizer {
         JPanel buttonPanel = new JPanel(new FlowLayout());
 
         JButton loginButton = new JButton("Login");
+        JButton registerButton = new JButton("Register");
         loginButton.addActionListener(e -> {
             String username = usernameField.getText();
             String password = new String(passwordField.getPassword());
@@ -149,17 +212,25 @@ public class GridlockedCryptizer {
                 return;
             }
 
-            Bidder bidder = DatabaseConnection.authenticateBidder(username, password);
-            if (bidder != null) {
-                currentBidder = bidder;
-                JOptionPane.showMessageDialog(frame, "Login successful!");
-                showBiddingPanel();
-            } else {
-                JOptionPane.showMessageDialog(frame, "Invalid username or password.");
-            }
+            loginButton.setEnabled(false);
+            registerButton.setEnabled(false);
+            AsyncDatabaseConnection.login(username, password).whenCompleteAsync((login, error) -> {
+                loginButton.setEnabled(true);
+                registerButton.setEnabled(true);
+                if (error != null) {
+                    logger.error("Login failed", AsyncDatabaseConnection.unwrap(error));
+                    JOptionPane.showMessageDialog(frame, "Login failed. " + AsyncDatabaseConnection.describe(error));
+                } else if (login != null) {
+                    sessionToken = login.getSessionToken();
+                    currentBidder = login.getBidder();
+                    JOptionPane.showMessageDialog(frame, "Login successful!");
+                    showBiddingPanel();
+                } else {
+                    JOptionPane.showMessageDialog(frame, "Invalid username or password.");
+                }
+            }, EDT);
         });
 
-        JButton registerButton = new JButton("Register");
         registerButton.addActionListener(e -> {
             String username = usernameField.getText();
             String password = new String(passwordField.getPassword());
@@ -170,18 +241,26 @@ public class GridlockedCryptizer {
                 return;
             }
 
-            boolean success = DatabaseConnection.registerBidder(username, password, email);
-            if (success) {
-                JOptionPane.showMessageDialog(frame, "Registration successful! You can now login.");
-                emailField.setText("");
-            } else {
-                JOptionPane.showMessageDialog(frame, "Registration failed. Username may already exist or password doesn't meet requirements.\n\n" +
-                    "Password requirements:\n" +
-                    "- At least 8 characters\n" +
-                    "- At least 1 uppercase letter\n" +
-                    "- At least 1 lowercase letter\n" +
-                    "- At least 1 digit");
-            }
+            loginButton.setEnabled(false);
+            registerButton.setEnabled(false);
+            AsyncDatabaseConnection.registerBidder(username, password, email).whenCompleteAsync((success, error) -> {
+                loginButton.setEnabled(true);
+                registerButton.setEnabled(true);
+                if (error != null) {
+                    logger.error("Registration failed", AsyncDatabaseConnection.unwrap(error));
+                    JOptionPane.showMessageDialog(frame, "Registration failed. " + AsyncDatabaseConnection.describe(error));
+                } else if (success) {
+                    JOptionPane.showMessageDialog(frame, "Registration successful! You can now login.");
+                    emailField.setText("");
+                } else {
+                    JOptionPane.showMessageDialog(frame, "Registration failed. Username may already exist or password doesn't meet requirements.\n\n" +
+                        "Password requirements:\n" +
+                        "- At least 8 characters\n" +
+                        "- At least 1 uppercase letter\n" +
+                        "- At least 1 lowercase letter\n" +
+                        "- At least 1 digit");
+                }
+            }, EDT);
         });
 
         buttonPanel.add(loginButton);
@@ -213,8 +292,8 @@ public class GridlockedCryptizer {
 
         JButton logoutButton = new JButton("Logout");
         logoutButton.addActionListener(e -> {
-            currentBidder = null;
-            showLoginPanel();
+            AsyncDatabaseConnection.logout(sessionToken);
+            endSession();
         });
         headerPanel.add(logoutButton, BorderLayout.EAST);
 
@@ -224,11 +303,45 @@ public class GridlockedCryptizer {
         JPanel vehiclePanel = new JPanel(new BorderLayout());
         vehiclePanel.setBorder(BorderFactory.createTitledBorder("Available Vehicles"));
 
-        JTextArea vehicleArea = new JTextArea(15, 40);
-        vehicleArea.setEditable(false);
-        JScrollPane vehicleScroll = new JScrollPane(vehicleArea);
+        // Rows are updated in place on refresh; sorting and filtering run on the loaded rows
+        VehicleTableModel vehicleModel = new VehicleTableModel();
+        JTable vehicleTable = new JTable(vehicleModel);
+        TableRowSorter<VehicleTableModel> vehicleSorter = new TableRowSorter<>(vehicleModel);
+        vehicleSorter.setSortsOnUpdates(true);
+        vehicleTable.setRowSorter(vehicleSorter);
+        vehicleTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        vehicleTable.setFillsViewportHeight(true);
+        vehicleTable.setPreferredScrollableViewportSize(new Dimension(480, 240));
+        DefaultTableCellRenderer moneyRenderer = new DefaultTableCellRenderer() {
+            private final DecimalFormat format = new DecimalFormat("$#,##0.00");
+
+            @Override
+            protected void setValue(Object value) {
+                setText(value == null ? "" : format.format(value));
+            }
+        };
+        moneyRenderer.setHorizontalAlignment(SwingConstants.RIGHT);
+        vehicleTable.getColumnModel().getColumn(VehicleTableModel.STARTING_BID_COLUMN).setCellRenderer(moneyRenderer);
+        vehicleTable.getColumnModel().getColumn(VehicleTableModel.HIGHEST_BID_COLUMN).setCellRenderer(moneyRenderer);
+        JScrollPane vehicleScroll = new JScrollPane(vehicleTable);
         vehiclePanel.add(vehicleScroll, BorderLayout.CENTER);
 
+        // Filter by make, model, year or ID
+        JPanel filterPanel = new JPanel(new BorderLayout(5, 0));
+        filterPanel.add(new JLabel("Filter:"), BorderLayout.WEST);
+        JTextField filterField = new JTextField();
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { applyFilter(); }
+            @Override public void removeUpdate(DocumentEvent e) { applyFilter(); }
+            @Override public void changedUpdate(DocumentEvent e) { applyFilter(); }
+
+            private void applyFilter() {
+                vehicleSorter.setRowFilter(vehicleModel.textFilter(filterField.getText()));
+            }
+        });
+        filterPanel.add(filterField, BorderLayout.CENTER);
+        vehiclePanel.add(filterPanel, BorderLayout.NORTH);
+
         // Bidding panel
         JPanel bidPanel = new JPanel(new GridBagLayout());
         bidPanel.setBorder(BorderFactory.createTitledBorder("Place a Bid"));
@@ -248,6 +361,15 @@ public class GridlockedCryptizer {
         gbc.anchor = GridBagConstraints.WEST;
         bidPanel.add(vehicleIdField, gbc);
 
+        // Selecting a vehicle fills in its ID
+        vehicleTable.getSelectionModel().addListSelectionListener(e -> {
+            int viewRow = vehicleTable.getSelectedRow();
+            if (!e.getValueIsAdjusting() && viewRow >= 0) {
+                vehicleIdField.setText(String.valueOf(
+                    vehicleModel.getVehicleId(vehicleTable.convertRowIndexToModel(viewRow))));
+            }
+        });
+
         // Bid amount
         JLabel bidAmountLabel = new JLabel("Bid Amount ($):");
         gbc.gridx = 0;
@@ -267,27 +389,47 @@ public class GridlockedCryptizer {
                 int vehicleId = Integer.parseInt(vehicleIdField.getText());
                 double bidAmount = Double.parseDouble(bidAmountField.getText());
 
-                // Check if bid is higher than current highest bid
-                double highestBid = DatabaseConnection.getHighestBid(vehicleId);
-                if (bidAmount <= highestBid) {
-                    JOptionPane.showMessageDialog(frame, 
-                        "Your bid must be higher than the current highest bid ($" + 
-                        String.format("%.2f", highestBid) + ").");
-                    return;
-                }
-
-                boolean success = DatabaseConnection.placeBid(
-                    currentBidder.getBidderId(), vehicleId, bidAmount);
-
-                if (success) {
-                    JOptionPane.showMessageDialog(frame, "Bid placed successfully!");
-                    bidAmountField.setText("");
-
-                    // Refresh vehicle list
-                    updateVehicleArea(vehicleArea, DatabaseConnection.getVehicles());
-                } else {
-                    JOptionPane.showMessageDialog(frame, "Failed to place bid.");
-                }
+                // Validate and place the bid in one step; every stage is traced under one correlation ID
+                long correlationId = BidStageEvent.nextCorrelationId();
+                int bidderId = currentBidder != null ? currentBidder.getBidderId() : 0;
+                BidStageEvent uiStage = BidStageEvent.start(BidStageEvent.UI, correlationId);
+                bidButton.setEnabled(false);
+                AsyncDatabaseConnection.placeBid(correlationId, sessionToken, vehicleId, bidAmount).whenCompleteAsync((result, error) -> {
+                    bidButton.setEnabled(true);
+                    // Stop the clock before any dialog waits for the user
+                    uiStage.finish(vehicleId, bidderId, 0, error != null ? "ERROR" : result.getStatus().name());
+                    if (error != null) {
+                        handleBidError(vehicleModel, error);
+                        return;
+                    }
+                    switch (result.getStatus()) {
+                        case ACCEPTED:
+                            // Refresh vehicle list
+                            refreshVehicles(vehicleModel, correlationId);
+
+                            JOptionPane.showMessageDialog(frame, "Bid placed successfully!");
+                            bidAmountField.setText("");
+                            break;
+                        case OUTBID:
+                            JOptionPane.showMessageDialog(frame, 
+                                "Your bid must be higher than the current highest bid ($" + 
+                                String.format("%.2f", result.getHighestBid()) + ").");
+                            break;
+                        case AUCTION_CLOSED:
+                            JOptionPane.showMessageDialog(frame, "The auction for this vehicle has ended.");
+                            break;
+                        case UNAUTHORIZED:
+                            JOptionPane.showMessageDialog(frame, "Your session has expired. Please log in again.");
+                            endSession();
+                            break;
+                        case UNKNOWN_VEHICLE:
+                            JOptionPane.showMessageDialog(frame, "No vehicle exists with ID " + vehicleId + ".");
+                            break;
+                        default:
+                            JOptionPane.showMessageDialog(frame, "Failed to place bid.");
+                            break;
+                    }
+                }, EDT);
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(frame, "Please enter valid numbers for Vehicle ID and Bid Amount.");
             }
@@ -301,9 +443,7 @@ public class GridlockedCryptizer {
 
         // Refresh button
         JButton refreshButton = new JButton("Refresh Vehicle List");
-        refreshButton.addActionListener(e -> {
-            updateVehicleArea(vehicleArea, DatabaseConnection.getVehicles());
-        });
+        refreshButton.addActionListener(e -> refreshVehicles(vehicleModel));
 
         gbc.gridy = 3;
         bidPanel.add(refreshButton, gbc);
@@ -316,29 +456,80 @@ public class GridlockedCryptizer {
         frame.getContentPane().add(mainPanel);
 
         // Load initial vehicle data
-        updateVehicleArea(vehicleArea, DatabaseConnection.getVehicles());
+        refreshVehicles(vehicleModel);
 
         // Add a timer to refresh the vehicle list every 10 seconds
-        Timer timer = new Timer(10000, e -> {
-            updateVehicleArea(vehicleArea, DatabaseConnection.getVehicles());
-        });
-        timer.start();
+        refreshTimer = new Timer(10000, e -> refreshVehicles(vehicleModel));
+        refreshTimer.start();
 
         frame.revalidate();
         frame.repaint();
     }
 
-    private void updateVehicleArea(JTextArea vehicleArea, List<Vehicle> vehicles) {
-        StringBuilder sb = new StringBuilder();
+    // Load the vehicle list in the background; if a load is already running, load again after it
+    private void refreshVehicles(VehicleTableModel vehicleModel) {
+        refreshVehicles(vehicleModel, 0);
+    }
 
-        for (Vehicle vehicle : vehicles) {
-            sb.append("ID: ").append(vehicle.getVehicleId()).append(" - ");
-            sb.append(vehicle.getYear()).append(" ").append(vehicle.getMake());
-            sb.append(" ").append(vehicle.getModel()).append("\n");
-            sb.append("Starting Bid: $").append(String.format("%.2f", vehicle.getStartingBid())).append("\n");
-            sb.append("Current Highest Bid: $").append(String.format("%.2f", vehicle.getHighestBid())).append("\n\n");
+    // As above, tracing the refresh as part of a bid when correlationId is not 0
+    private void refreshVehicles(VehicleTableModel vehicleModel, long correlationId) {
+        if (pendingRefresh != null && !pendingRefresh.isDone()) {
+            // The running load may have read the catalog before this change
+            refreshDirty = true;
+            if (correlationId != 0) {
+                dirtyCorrelationId = correlationId;
+            }
+            return;
         }
+        BidStageEvent refreshStage = BidStageEvent.start(BidStageEvent.REFRESH, correlationId);
+        CompletableFuture<List<Vehicle>> refresh = AsyncDatabaseConnection.getVehicles();
+        pendingRefresh = refresh;
+        refresh.whenCompleteAsync((vehicles, error) -> {
+            // Ignore results that arrive after logout
+            if (pendingRefresh != refresh) return;
+            int bidderId = currentBidder != null ? currentBidder.getBidderId() : 0;
+            if (error != null) {
+                logger.warn("Could not refresh vehicle list: " + AsyncDatabaseConnection.describe(error));
+                refreshStage.finish(0, bidderId, 0, "ERROR");
+            } else {
+                vehicleModel.update(vehicles);
+                refreshStage.finish(0, bidderId, 0, "LOADED");
+            }
+            if (refreshDirty) {
+                long followUpCorrelationId = dirtyCorrelationId;
+                refreshDirty = false;
+                dirtyCorrelationId = 0;
+                refreshVehicles(vehicleModel, followUpCorrelationId);
+            }
+        }, EDT);
+    }
 
-        vehicleArea.setText(sb.toString());
+    private void handleBidError(VehicleTableModel vehicleModel, Throwable error) {
+        if (AsyncDatabaseConnection.unwrap(error) instanceof TimeoutException) {
+            // The bid may still be written, so show the latest state rather than report a failure
+            JOptionPane.showMessageDialog(frame, "The bid is taking longer than expected. " +
+                "Check the vehicle list to see whether it was accepted.");
+            refreshVehicles(vehicleModel);
+        } else {
+            logger.error("Error placing bid", AsyncDatabaseConnection.unwrap(error));
+            JOptionPane.showMessageDialog(frame, "Failed to place bid. " + AsyncDatabaseConnection.describe(error));
+        }
+    }
+
+    // Stop background refreshes and return to the login panel
+    private void endSession() {
+        if (refreshTimer != null) {
+            refreshTimer.stop();
+            refreshTimer = null;
+        }
+        if (pendingRefresh != null) {
+            pendingRefresh.cancel(true);
+            pendingRefresh = null;
+        }
+        refreshDirty = false;
+        dirtyCorrelationId = 0;
+        sessionToken = null;
+        currentBidder = null;
+        showLoginPanel();
     }
 }
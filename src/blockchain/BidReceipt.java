@@ -0,0 +1,71 @@
+package blockchain;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Proof of where a bid was recorded in the ledger: the block height, the
+ * bid's position in that block and the bid's leaf hash. The text form
+ * "height:index:leafHash" is what gets stored with the bid.
+ */
+public final class BidReceipt {
+    private final long blockHeight;
+    private final int index;
+    private final byte[] leafHash;
+
+    public BidReceipt(long blockHeight, int index, byte[] leafHash) {
+        if (blockHeight < 0 || index < 0 || leafHash == null || leafHash.length != Block.HASH_LENGTH) {
+            throw new IllegalArgumentException("Invalid receipt");
+        }
+        this.blockHeight = blockHeight;
+        this.index = index;
+        this.leafHash = leafHash.clone();
+    }
+
+    /**
+     * Parse a receipt from its text form
+     *
+     * @param text the text form, as returned by toString
+     * @return the receipt, or null if the text is not a receipt
+     */
+    public static BidReceipt parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        int first = text.indexOf(':');
+        int second = first < 0 ? -1 : text.indexOf(':', first + 1);
+        if (second < 0) {
+            return null;
+        }
+        try {
+            return new BidReceipt(
+                Long.parseLong(text.substring(0, first)),
+                Integer.parseInt(text.substring(first + 1, second)),
+                Base64.getDecoder().decode(text.substring(second + 1)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public long getBlockHeight() { return blockHeight; }
+    public int getIndex() { return index; }
+    public byte[] getLeafHash() { return leafHash.clone(); }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BidReceipt)) return false;
+        BidReceipt other = (BidReceipt) o;
+        return blockHeight == other.blockHeight && index == other.index && Arrays.equals(leafHash, other.leafHash);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Long.hashCode(blockHeight) + index) + Arrays.hashCode(leafHash);
+    }
+
+    @Override
+    public String toString() {
+        return blockHeight + ":" + index + ":" + Base64.getEncoder().encodeToString(leafHash);
+    }
+}
@@ -0,0 +1,141 @@
+package blockchain;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Canonical binary form of a bid, the one layout used for leaf hashing,
+ * ledger storage and the JSON-RPC wire format:
+ * <pre>
+ *   int bidderId, int vehicleId, long amountCents, long timestampMillis, long sequence
+ * </pre>
+ * 32 bytes, big-endian. The amount is in cents so the bytes never depend on
+ * floating-point formatting, and for bids from the database the timestamp
+ * is bids.bid_time and the sequence is bids.bid_id, so a bid's leaf hash can
+ * be recomputed from its row at any time.
+ */
+public final class BidRecord {
+    public static final int LENGTH = 2 * Integer.BYTES + 3 * Long.BYTES;
+
+    // Reused per thread so hashing a record doesn't allocate its input
+    private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(LENGTH));
+
+    private final int bidderId;
+    private final int vehicleId;
+    private final long amountCents;
+    private final long timestampMillis;
+    private final long sequence;
+
+    public BidRecord(int bidderId, int vehicleId, long amountCents, long timestampMillis, long sequence) {
+        this.bidderId = bidderId;
+        this.vehicleId = vehicleId;
+        this.amountCents = amountCents;
+        this.timestampMillis = timestampMillis;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Convert a DECIMAL(10, 2) amount to cents
+     *
+     * @throws ArithmeticException if the amount has fractions of a cent
+     */
+    public static long toCents(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.UNNECESSARY).longValueExact();
+    }
+
+    /**
+     * Convert an amount to the nearest cent
+     */
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    /**
+     * Write the record at the buffer's position, advancing it
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(bidderId).putInt(vehicleId).putLong(amountCents).putLong(timestampMillis).putLong(sequence);
+    }
+
+    /**
+     * Write the record at an offset, leaving the buffer's position alone
+     */
+    public void writeTo(ByteBuffer buffer, int offset) {
+        buffer.putInt(offset, bidderId);
+        buffer.putInt(offset + 4, vehicleId);
+        buffer.putLong(offset + 8, amountCents);
+        buffer.putLong(offset + 16, timestampMillis);
+        buffer.putLong(offset + 24, sequence);
+    }
+
+    /**
+     * Read a record at an offset
+     */
+    public static BidRecord readFrom(ByteBuffer buffer, int offset) {
+        return new BidRecord(buffer.getInt(offset), buffer.getInt(offset + 4), buffer.getLong(offset + 8),
+            buffer.getLong(offset + 16), buffer.getLong(offset + 24));
+    }
+
+    /**
+     * Read a record from its base64 wire form
+     *
+     * @throws IllegalArgumentException if the text is not a record
+     */
+    public static BidRecord fromBase64(String text) {
+        byte[] bytes = Base64.getDecoder().decode(text);
+        if (bytes.length != LENGTH) {
+            throw new IllegalArgumentException("A bid record is " + LENGTH + " bytes, not " + bytes.length);
+        }
+        return readFrom(ByteBuffer.wrap(bytes), 0);
+    }
+
+    /**
+     * Get the base64 wire form
+     */
+    public String toBase64() {
+        ByteBuffer buffer = BUFFER.get();
+        writeTo(buffer, 0);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    /**
+     * Get the record's Merkle leaf hash
+     */
+    public byte[] leafHash() {
+        ByteBuffer buffer = BUFFER.get();
+        writeTo(buffer, 0);
+        return MerkleTree.leafHash(buffer.array());
+    }
+
+    public int getBidderId() { return bidderId; }
+    public int getVehicleId() { return vehicleId; }
+    public long getAmountCents() { return amountCents; }
+    public long getTimestampMillis() { return timestampMillis; }
+    public long getSequence() { return sequence; }
+
+    public double getAmount() {
+        return amountCents / 100.0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BidRecord)) return false;
+        BidRecord other = (BidRecord) o;
+        return bidderId == other.bidderId && vehicleId == other.vehicleId && amountCents == other.amountCents
+            && timestampMillis == other.timestampMillis && sequence == other.sequence;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(sequence) * 31 + Long.hashCode(timestampMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "Bid[" + sequence + ", bidder=" + bidderId + ", vehicle=" + vehicleId
+            + ", cents=" + amountCents + ", time=" + timestampMillis + "]";
+    }
+}
@@ -0,0 +1,146 @@
+package blockchain;
+
+import util.SecurityUtil;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * A sealed block of bids.
+ * The block hash commits to the height, the previous block's hash, the
+ * Merkle root of the block's bid leaves, the sealing time and the leaf
+ * count, so changing any recorded bid or reordering blocks breaks the chain.
+ * The block also keeps each bid's BidRecord, so every leaf can be
+ * recomputed from the bid it stands for. A block read back from the
+ * ledger store carries the root and hash persisted when it was sealed,
+ * which isIntact checks against the tree and header.
+ */
+public final class Block {
+    static final int HASH_LENGTH = 32;
+    private static final byte[] GENESIS_PREVIOUS_HASH = new byte[HASH_LENGTH];
+
+    private final long height;
+    private final byte[] previousHash;
+    private final byte[] merkleRoot;
+    private final long timestamp;
+    private final int leafCount;
+    private final byte[] hash;
+    private final MerkleTree tree;
+    private final byte[] records;
+
+    Block(long height, byte[] previousHash, MerkleTree tree, long timestamp, byte[] records) {
+        this(height, previousHash, tree, timestamp, records, tree.getRoot(), null);
+    }
+
+    // A stored block: merkleRoot and hash are what was persisted at seal time
+    Block(long height, byte[] previousHash, MerkleTree tree, long timestamp, byte[] records,
+            byte[] merkleRoot, byte[] hash) {
+        if (records.length != tree.getLeafCount() * BidRecord.LENGTH) {
+            throw new IllegalArgumentException("Expected " + tree.getLeafCount() + " bid records");
+        }
+        this.height = height;
+        this.previousHash = previousHash.clone();
+        this.merkleRoot = merkleRoot.clone();
+        this.timestamp = timestamp;
+        this.leafCount = tree.getLeafCount();
+        this.tree = tree;
+        this.records = records;
+        this.hash = hash != null ? hash.clone()
+            : computeHash(height, this.previousHash, this.merkleRoot, timestamp, leafCount);
+    }
+
+    /**
+     * The previous hash of the first block
+     */
+    static byte[] genesisPreviousHash() {
+        return GENESIS_PREVIOUS_HASH.clone();
+    }
+
+    static byte[] computeHash(long height, byte[] previousHash, byte[] merkleRoot, long timestamp, int leafCount) {
+        ByteBuffer header = ByteBuffer.allocate(Long.BYTES + 2 * HASH_LENGTH + Long.BYTES + Integer.BYTES);
+        header.putLong(height).put(previousHash).put(merkleRoot).putLong(timestamp).putInt(leafCount);
+        MessageDigest md = SecurityUtil.sha256();
+        return md.digest(header.array());
+    }
+
+    /**
+     * Check that the hash matches the header, the root matches the tree
+     * built from the leaves, and each leaf matches its bid record
+     */
+    public boolean isIntact() {
+        return isSealIntact() && leavesMatchRecords();
+    }
+
+    // The stored root and hash against the tree and header; cheap, since the tree is already built
+    boolean isSealIntact() {
+        return MessageDigest.isEqual(merkleRoot, tree.getRoot())
+            && MessageDigest.isEqual(hash, computeHash(height, previousHash, merkleRoot, timestamp, leafCount));
+    }
+
+    private boolean leavesMatchRecords() {
+        byte[][] leaves = tree.levels().get(0);
+        for (int i = 0; i < leafCount; i++) {
+            if (!MessageDigest.isEqual(leaves[i], MerkleTree.leafHash(records, i * BidRecord.LENGTH, BidRecord.LENGTH))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getHeight() { return height; }
+    public byte[] getPreviousHash() { return previousHash.clone(); }
+    public byte[] getMerkleRoot() { return merkleRoot.clone(); }
+    public long getTimestamp() { return timestamp; }
+    public int getLeafCount() { return leafCount; }
+    public byte[] getHash() { return hash.clone(); }
+
+    /**
+     * Get the leaf hash of one of the block's bids
+     *
+     * @throws IndexOutOfBoundsException if the block has no such leaf
+     */
+    public byte[] getLeafHash(int index) {
+        return tree.levels().get(0)[index].clone();
+    }
+
+    /**
+     * Check whether a leaf hash sits at a position in this block, without copying it
+     */
+    public boolean hasLeaf(int index, byte[] leafHash) {
+        return index >= 0 && index < leafCount && MessageDigest.isEqual(tree.levels().get(0)[index], leafHash);
+    }
+
+    /**
+     * Get the record of one of the block's bids
+     *
+     * @throws IndexOutOfBoundsException if the block has no such bid
+     */
+    public BidRecord getRecord(int index) {
+        if (index < 0 || index >= leafCount) {
+            throw new IndexOutOfBoundsException("Bid " + index + " of " + leafCount);
+        }
+        return BidRecord.readFrom(ByteBuffer.wrap(records), index * BidRecord.LENGTH);
+    }
+
+    // The packed records, for the ledger store
+    byte[] records() {
+        return records;
+    }
+
+    MerkleTree getTree() {
+        return tree;
+    }
+
+    /**
+     * Get the block hash as base64
+     */
+    public String getHashString() {
+        return Base64.getEncoder().encodeToString(hash);
+    }
+
+    @Override
+    public String toString() {
+        return "Block[" + height + ", bids=" + leafCount + ", hash=" + getHashString() + "]";
+    }
+}
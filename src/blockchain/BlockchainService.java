@@ -2,23 +2,127 @@ package blockchain;
 
 import util.ConfigManager;
 import util.LoggerUtil;
+import util.MetricsRegistry;
+import util.MetricsRegistry.Outcome;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Simple blockchain service for bid verification
- * In a real implementation, this would connect to an actual blockchain network
+ * Append-only, hash-chained ledger of bids.
+ * Recorded bids collect in an open block, which is sealed once it holds
+ * blockchain.block.max_bids bids or blockchain.block.max_delay_ms has passed.
+ * Sealing builds a Merkle tree over the block's bids and links the block to
+ * the previous block's hash, so recording a bid costs one leaf hash and the
+ * tree and header hashes are shared by the whole block.
+ * Sealed blocks are appended to a LedgerStore under blockchain.store.path,
+ * so receipts survive a restart. Only the tip's height and hash are kept in
+ * memory; sealed blocks are read back from the store on demand and the
+ * most recent blockchain.block_cache.blocks of them are cached.
+ * With blockchain.rpc.enabled, recordBids also submits the bids to the node
+ * at blockchain.endpoint through RpcLedgerClient, once they are sealed.
  */
 public class BlockchainService {
     private static final LoggerUtil logger = LoggerUtil.getLogger(BlockchainService.class);
+    private static final MetricsRegistry.Timer recordBidTimer = MetricsRegistry.timer("ledger.recordBid");
+    private static final MetricsRegistry.Timer recordBidsTimer = MetricsRegistry.timer("ledger.recordBids");
+    private static final MetricsRegistry.Timer sealTimer = MetricsRegistry.timer("ledger.seal");
+    private static final MetricsRegistry.Timer verifyBidsTimer = MetricsRegistry.timer("ledger.verifyBids");
     private static BlockchainService instance;
     private final String blockchainEndpoint;
+    private int maxBidsPerBlock;
+    private final long maxBlockDelayMs;
+    private final RpcLedgerClient rpcClient;
+    private final LedgerStore store;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // The number of sealed blocks; written under the lock
+    private volatile long sealedHeight;
+    // Guarded by lock: the hash the next block links to
+    private byte[] tipHash;
+    private final Map<Long, Block> blockCache;
+    private List<byte[]> pendingLeaves = new ArrayList<>();
+    // The open block's bid records, packed; reused from block to block
+    private ByteBuffer pendingRecords;
+    private final ScheduledExecutorService sealer;
+    private volatile boolean closed;
+    private final Map<Long, MerkleProof[]> proofCache;
+
+    // Statistics
+    private final AtomicLong bidsRecorded = new AtomicLong();
+    private final AtomicLong sealNanosTotal = new AtomicLong();
+    private final AtomicLong proofHits = new AtomicLong();
+    private final AtomicLong proofMisses = new AtomicLong();
     
     private BlockchainService() {
         ConfigManager config = ConfigManager.getInstance();
         blockchainEndpoint = config.getProperty("blockchain.endpoint");
-        logger.info("Blockchain service initialized with endpoint: " + blockchainEndpoint);
+        maxBidsPerBlock = Math.max(1, config.getIntProperty("blockchain.block.max_bids", 256));
+        maxBlockDelayMs = Math.max(1L, config.getLongProperty("blockchain.block.max_delay_ms", 1000L));
+        pendingRecords = ByteBuffer.allocate(maxBidsPerBlock * BidRecord.LENGTH);
+        int blockCacheBlocks = Math.max(1, config.getIntProperty("blockchain.block_cache.blocks", 256));
+        blockCache = new LinkedHashMap<Long, Block>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Block> eldest) {
+                return size() > blockCacheBlocks;
+            }
+        };
+        int proofCacheBlocks = Math.max(1, config.getIntProperty("blockchain.proof_cache.blocks", 64));
+        proofCache = new LinkedHashMap<Long, MerkleProof[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MerkleProof[]> eldest) {
+                return size() > proofCacheBlocks;
+            }
+        };
+
+        try {
+            store = LedgerStore.open(Paths.get(config.getProperty("blockchain.store.path", "ledger")),
+                Math.max(1 << 16, config.getIntProperty("blockchain.store.segment_bytes", 64 << 20)),
+                config.getIntProperty("blockchain.store.hot_segments", 8),
+                Boolean.parseBoolean(config.getProperty("blockchain.store.force_on_seal", "true")));
+            sealedHeight = store.getBlockCount();
+            tipHash = sealedHeight == 0 ? Block.genesisPreviousHash() : store.readBlock(sealedHeight - 1).getHash();
+            bidsRecorded.set(store.getStats().getBids());
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open the ledger store", e);
+        }
+
+        rpcClient = Boolean.parseBoolean(config.getProperty("blockchain.rpc.enabled", "false"))
+            ? RpcLedgerClient.fromConfig() : null;
+
+        sealer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ledger-block-sealer");
+            t.setDaemon(true);
+            return t;
+        });
+        sealer.scheduleAtFixedRate(this::sealOnTimer, maxBlockDelayMs, maxBlockDelayMs, TimeUnit.MILLISECONDS);
+        config.addListener((previous, current, changedKeys) -> {
+            if (changedKeys.contains("blockchain.block.max_bids")) {
+                setMaxBidsPerBlock(current.getInt("blockchain.block.max_bids", 256));
+            }
+        });
+        logger.info("Blockchain service initialized with endpoint: " + blockchainEndpoint
+            + " (block size " + maxBidsPerBlock + ", max delay " + maxBlockDelayMs + "ms"
+            + (rpcClient != null ? ", submitting to node" : "") + ")");
     }
     
     /**
@@ -32,42 +136,589 @@ public class BlockchainService {
     }
     
     /**
-     * Record a bid on the blockchain
-     * This is a simplified implementation that just creates a hash
+     * Record a bid in the ledger
+     * The bid joins the open block; its receipt is valid once that block is sealed.
      * 
-     * @param bidderId the ID of the bidder
-     * @param vehicleId the ID of the vehicle
-     * @param bidAmount the bid amount
-     * @return a hash representing the blockchain transaction
+     * @param record the bid
+     * @return the receipt locating the bid in the ledger
+     * @throws IllegalStateException if the ledger has been shut down
+     */
+    public BidReceipt recordBid(BidRecord record) {
+        long start = recordBidTimer.start();
+        lock.lock();
+        try {
+            if (closed) {
+                recordBidTimer.stop(start, Outcome.ERROR);
+                throw new IllegalStateException("Ledger is shut down");
+            }
+            int index = pendingLeaves.size();
+            BidReceipt receipt = new BidReceipt(sealedHeight, index, appendLocked(record));
+            if (pendingLeaves.size() >= maxBidsPerBlock) {
+                try {
+                    sealLocked();
+                } catch (UncheckedIOException e) {
+                    // The bid stays in the open block and sealing is retried on the timer
+                    logger.error("Could not seal block", e);
+                }
+            }
+            recordBidTimer.stop(start, Outcome.SUCCESS);
+            return receipt;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock. The record is encoded once, into the open block, and hashed from there.
+    private byte[] appendLocked(BidRecord record) {
+        if (pendingRecords.remaining() < BidRecord.LENGTH) {
+            // After the block size was raised, a large recordBids batch, or a failed seal
+            ByteBuffer larger = ByteBuffer.allocate(pendingRecords.capacity() * 2);
+            pendingRecords.flip();
+            pendingRecords = larger.put(pendingRecords);
+        }
+        int offset = pendingRecords.position();
+        record.writeTo(pendingRecords);
+        byte[] leaf = MerkleTree.leafHash(pendingRecords.array(), offset, BidRecord.LENGTH);
+        pendingLeaves.add(leaf);
+        bidsRecorded.incrementAndGet();
+        return leaf;
+    }
+
+    /**
+     * Record bids in the ledger as one block, then submit them to the node
+     * when blockchain.rpc.enabled is set
+     * The call is safe to retry: if sealing fails the open block is rolled
+     * back, and bids already sealed by an earlier attempt keep their
+     * receipts instead of being stored again. The bids go to the node in
+     * pipelined JSON-RPC batches only once they are on disk; that
+     * submission is at-least-once, so a retry after a node failure may
+     * send the node bids it already holds.
+     *
+     * @param bids the bids to record
+     * @return the receipt for each bid, in order
+     * @throws Exception if the block cannot be stored, or the node rejects the bids or cannot be reached
+     * @throws IllegalStateException if the ledger has been shut down
+     */
+    public List<BidReceipt> recordBids(List<BidRecord> bids) throws Exception {
+        long start = recordBidsTimer.start();
+        try {
+            List<BidReceipt> receipts = new ArrayList<>(bids.size());
+            // The canonical bytes of every bid, copied out of the open block for the node
+            byte[] wire = new byte[bids.size() * BidRecord.LENGTH];
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("Ledger is shut down");
+                }
+                // Bids left open by recordBid get their own block, so a failed seal below undoes only this batch
+                if (!pendingLeaves.isEmpty()) {
+                    sealLocked();
+                }
+                for (int i = 0; i < bids.size(); i++) {
+                    int offset = pendingRecords.position();
+                    byte[] leaf = appendLocked(bids.get(i));
+                    System.arraycopy(pendingRecords.array(), offset, wire, i * BidRecord.LENGTH, BidRecord.LENGTH);
+                    BidReceipt stored = store.findReceipt(leaf);
+                    if (stored != null) {
+                        // Sealed by an attempt whose node submission failed
+                        pendingLeaves.remove(pendingLeaves.size() - 1);
+                        pendingRecords.position(offset);
+                        bidsRecorded.decrementAndGet();
+                        receipts.add(stored);
+                    } else {
+                        receipts.add(new BidReceipt(sealedHeight, pendingLeaves.size() - 1, leaf));
+                    }
+                }
+                if (!pendingLeaves.isEmpty()) {
+                    try {
+                        sealLocked();
+                    } catch (UncheckedIOException e) {
+                        bidsRecorded.addAndGet(-pendingLeaves.size());
+                        pendingLeaves = new ArrayList<>(maxBidsPerBlock);
+                        pendingRecords.clear();
+                        throw e;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (rpcClient != null) {
+                rpcClient.submitBids(wire, bids.size());
+            }
+            recordBidsTimer.stop(start, Outcome.SUCCESS);
+            return receipts;
+        } catch (Exception e) {
+            recordBidsTimer.stop(start, Outcome.ERROR);
+            throw e;
+        }
+    }
+
+    /**
+     * Get the JSON-RPC client statistics, or null if blockchain.rpc.enabled is off
+     */
+    public JsonRpcClient.RpcStats getRpcStats() {
+        return rpcClient == null ? null : rpcClient.getStats();
+    }
+
+    /**
+     * Change how many bids fill a block. An open block that is already
+     * full at the new size is sealed straight away.
+     */
+    public void setMaxBidsPerBlock(int maxBids) {
+        int size = Math.max(1, maxBids);
+        lock.lock();
+        try {
+            maxBidsPerBlock = size;
+            if (!closed && pendingLeaves.size() >= maxBidsPerBlock) {
+                sealLocked();
+            }
+        } catch (UncheckedIOException e) {
+            logger.error("Could not seal block", e);
+        } finally {
+            lock.unlock();
+        }
+        logger.info("Block size set to " + size);
+    }
+
+    /**
+     * Seal the open block now, if it holds any bids
+     *
+     * @return the sealed block, or null if there was nothing to seal
      */
-    public String recordBid(int bidderId, int vehicleId, double bidAmount) {
+    public Block sealPendingBlock() {
+        lock.lock();
+        try {
+            return pendingLeaves.isEmpty() ? null : sealLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void sealOnTimer() {
         try {
-            // In a real implementation, this would submit a transaction to the blockchain
-            // For now, we'll just create a hash of the bid data
-            String bidData = bidderId + ":" + vehicleId + ":" + bidAmount + ":" + System.currentTimeMillis();
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] hash = md.digest(bidData.getBytes());
-            String hashString = Base64.getEncoder().encodeToString(hash);
-            
-            logger.info("Recorded bid on blockchain: " + hashString);
-            return hashString;
-        } catch (NoSuchAlgorithmException e) {
-            logger.error("Error recording bid on blockchain", e);
+            sealPendingBlock();
+        } catch (RuntimeException e) {
+            logger.error("Could not seal block", e);
+        }
+    }
+
+    // Caller holds the lock and there is at least one pending leaf
+    private Block sealLocked() {
+        long start = System.nanoTime();
+        Block block = new Block(sealedHeight, tipHash, MerkleTree.build(pendingLeaves), System.currentTimeMillis(),
+            Arrays.copyOf(pendingRecords.array(), pendingRecords.position()));
+        try {
+            store.append(block);
+        } catch (IOException e) {
+            sealTimer.stop(start, Outcome.ERROR);
+            throw new UncheckedIOException("Could not store block " + block.getHeight(), e);
+        }
+        tipHash = block.getHash();
+        synchronized (blockCache) {
+            blockCache.put(block.getHeight(), block);
+        }
+        sealedHeight = block.getHeight() + 1;
+        pendingLeaves = new ArrayList<>(maxBidsPerBlock);
+        pendingRecords.clear();
+        long elapsed = System.nanoTime() - start;
+        sealNanosTotal.addAndGet(elapsed);
+        sealTimer.record(Outcome.SUCCESS, elapsed);
+
+        logger.debug(() -> "Sealed " + block);
+        return block;
+    }
+
+    /**
+     * Get a sealed block
+     *
+     * @param height the block height
+     * @return the block, or null if no block at that height has been sealed
+     */
+    public Block getBlock(long height) {
+        return loadBlock(height, true);
+    }
+
+    /**
+     * Get a sealed block without adding it to the block cache, for scans
+     * over many blocks that would otherwise evict the recently used ones
+     *
+     * @return the block, or null if it has not been sealed
+     */
+    public Block readBlock(long height) {
+        return loadBlock(height, false);
+    }
+
+    /**
+     * Get the number of bids in a sealed block without reading the block
+     *
+     * @return the leaf count, or -1 if the block has not been sealed
+     */
+    public int getLeafCount(long height) {
+        return height < sealedHeight ? store.getLeafCount(height) : -1;
+    }
+
+    // Serve a block from the cache or read it from the store, optionally caching it
+    private Block loadBlock(long height, boolean cache) {
+        if (height < 0 || height >= sealedHeight) {
             return null;
         }
+        synchronized (blockCache) {
+            Block block = blockCache.get(height);
+            if (block != null) {
+                return block;
+            }
+        }
+        Block block;
+        try {
+            block = store.readBlock(height);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read block " + height, e);
+        }
+        if (block != null && cache) {
+            synchronized (blockCache) {
+                blockCache.put(height, block);
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Get the number of sealed blocks
+     */
+    public long getHeight() {
+        return sealedHeight;
+    }
+
+    /**
+     * Check every sealed block's hash, Merkle root and link to its predecessor
+     *
+     * @return true if the chain is intact
+     */
+    public boolean verifyChain() {
+        long height = sealedHeight;
+        byte[] previousHash = Block.genesisPreviousHash();
+        // Stream the blocks rather than caching them, so a long chain doesn't evict the hot ones
+        for (long h = 0; h < height; h++) {
+            Block block;
+            try {
+                block = loadBlock(h, false);
+            } catch (UncheckedIOException e) {
+                logger.error("Ledger broken at block " + h, e);
+                return false;
+            }
+            if (!MessageDigest.isEqual(previousHash, block.getPreviousHash()) || !block.isIntact()) {
+                logger.error("Ledger broken at " + block);
+                return false;
+            }
+            previousHash = block.getHash();
+        }
+        lock.lock();
+        try {
+            // Nothing links forward to the last block, so check it against the tip
+            if (height == sealedHeight && !MessageDigest.isEqual(previousHash, tipHash)) {
+                logger.error("Ledger broken at the tip, block " + (height - 1));
+                return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return true;
     }
     
+    /**
+     * Find the receipt of a stored bid from its leaf hash
+     *
+     * @param leafHash the bid's leaf hash
+     * @return the receipt, or null if no sealed block holds the bid
+     */
+    public BidReceipt findReceipt(byte[] leafHash) {
+        try {
+            return store.findReceipt(leafHash);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the ledger store", e);
+        }
+    }
+
+    /**
+     * Get the ledger store statistics
+     */
+    public LedgerStore.StoreStats getStoreStats() {
+        return store.getStats();
+    }
+
     /**
      * Verify a bid on the blockchain
      * 
-     * @param blockchainHash the hash to verify
-     * @return true if the hash is valid
+     * @param blockchainHash the receipt text stored with the bid
+     * @return true if the receipt's leaf is included in its sealed block
      */
     public boolean verifyBid(String blockchainHash) {
-        // In a real implementation, this would verify the transaction on the blockchain
-        // For now, we'll just check if the hash is not null or empty
-        boolean isValid = blockchainHash != null && !blockchainHash.isEmpty();
-        logger.info("Verified bid on blockchain: " + isValid);
-        return isValid;
+        BidReceipt receipt = BidReceipt.parse(blockchainHash);
+        return receipt != null && verifyBid(receipt) == Verification.VALID;
+    }
+
+    /**
+     * Verify a bid's receipt with a Merkle inclusion proof against the root
+     * its block was sealed with, after checking that the block is the one
+     * the chain links to
+     *
+     * @param receipt the bid's receipt
+     * @return VALID, INVALID, or PENDING if the bid's block has not been sealed yet
+     */
+    public Verification verifyBid(BidReceipt receipt) {
+        Block block = getBlock(receipt.getBlockHeight());
+        if (block == null) {
+            return receipt.getBlockHeight() == getHeight() ? Verification.PENDING : Verification.INVALID;
+        }
+        return verify(block, receipt);
+    }
+
+    private Verification verify(Block block, BidReceipt receipt) {
+        return isAnchored(block) ? verifyProof(block, receipt) : Verification.INVALID;
+    }
+
+    // Caller has checked the block is anchored
+    private Verification verifyProof(Block block, BidReceipt receipt) {
+        MerkleProof proof = getProof(block, receipt.getIndex());
+        if (proof == null) {
+            return Verification.INVALID;
+        }
+        return proof.verify(receipt.getLeafHash(), block.getMerkleRoot()) ? Verification.VALID : Verification.INVALID;
+    }
+
+    // A block's root is only trusted if its hash is what the next block links to, or is the tip's.
+    // Blocks read from the store have already been checked against their sealed root and hash.
+    private boolean isAnchored(Block block) {
+        long next = block.getHeight() + 1;
+        if (next >= sealedHeight) {
+            lock.lock();
+            try {
+                if (next == sealedHeight) {
+                    return MessageDigest.isEqual(block.getHash(), tipHash);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        Block successor = getBlock(next);
+        return successor != null && MessageDigest.isEqual(block.getHash(), successor.getPreviousHash());
+    }
+
+    /**
+     * Get the inclusion proof for a bid
+     *
+     * @param receipt the bid's receipt
+     * @return the proof, or null if the block is not sealed or has no such leaf
+     */
+    public MerkleProof getProof(BidReceipt receipt) {
+        Block block = getBlock(receipt.getBlockHeight());
+        return block == null ? null : getProof(block, receipt.getIndex());
+    }
+
+    // Proofs for recently used blocks are cached, so verifying a whole auction builds each path once
+    private MerkleProof getProof(Block block, int index) {
+        if (index >= block.getLeafCount()) {
+            return null;
+        }
+        MerkleProof[] proofs;
+        synchronized (proofCache) {
+            proofs = proofCache.get(block.getHeight());
+            if (proofs == null) {
+                proofs = new MerkleProof[block.getLeafCount()];
+                proofCache.put(block.getHeight(), proofs);
+            }
+        }
+
+        // A racing thread may build the same proof; both results are identical
+        MerkleProof proof = proofs[index];
+        if (proof == null) {
+            proof = MerkleProof.of(block.getTree(), index);
+            proofs[index] = proof;
+            proofMisses.incrementAndGet();
+        } else {
+            proofHits.incrementAndGet();
+        }
+        return proof;
+    }
+
+    /**
+     * Verify many receipts in parallel
+     * Receipts are grouped by block so each block is looked up and anchored
+     * to the chain once; when a block has enough receipts each one is
+     * matched against its leaf, which the block's sealed root covers,
+     * instead of walking a proof.
+     *
+     * @param receipts the receipts to verify
+     * @return the counts of valid, invalid and pending receipts, and the invalid ones
+     */
+    public BatchVerification verifyBids(Collection<BidReceipt> receipts) {
+        long start = System.nanoTime();
+        Map<Long, List<BidReceipt>> byBlock = new HashMap<>();
+        for (BidReceipt receipt : receipts) {
+            byBlock.computeIfAbsent(receipt.getBlockHeight(), height -> new ArrayList<>()).add(receipt);
+        }
+
+        LongAdder valid = new LongAdder();
+        LongAdder pending = new LongAdder();
+        Queue<BidReceipt> invalid = new ConcurrentLinkedQueue<>();
+        long sealedHeight = getHeight();
+
+        byBlock.entrySet().parallelStream().forEach(entry -> {
+            Block block = getBlock(entry.getKey());
+            boolean anchored = block != null && isAnchored(block);
+            // With enough receipts in one block, matching leaves beats a proof per receipt
+            boolean wholeBlock = block != null
+                && (long) entry.getValue().size() * proofLength(block.getLeafCount()) >= block.getLeafCount();
+
+            for (BidReceipt receipt : entry.getValue()) {
+                Verification result;
+                if (block == null) {
+                    result = entry.getKey() == sealedHeight ? Verification.PENDING : Verification.INVALID;
+                } else if (!anchored) {
+                    result = Verification.INVALID;
+                } else if (wholeBlock) {
+                    result = block.hasLeaf(receipt.getIndex(), receipt.getLeafHash())
+                        ? Verification.VALID : Verification.INVALID;
+                } else {
+                    result = verifyProof(block, receipt);
+                }
+                if (result == Verification.VALID) {
+                    valid.increment();
+                } else if (result == Verification.PENDING) {
+                    pending.increment();
+                } else {
+                    invalid.add(receipt);
+                }
+            }
+        });
+
+        BatchVerification result = new BatchVerification(valid.sum(), pending.sum(), new ArrayList<>(invalid),
+            (System.nanoTime() - start) / 1000);
+        verifyBidsTimer.stop(start, result.getInvalid().isEmpty() ? Outcome.SUCCESS : Outcome.REJECTED);
+        if (!result.getInvalid().isEmpty()) {
+            logger.warn("Batch verification found " + result.getInvalid().size() + " invalid receipts");
+        }
+        return result;
+    }
+
+    // Number of sibling hashes on a path in a tree of leafCount leaves
+    private static int proofLength(int leafCount) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(1, leafCount - 1));
+    }
+
+    /**
+     * Seal the open block and stop accepting bids
+     */
+    public void shutdown() {
+        sealer.shutdownNow();
+        if (rpcClient != null) {
+            rpcClient.close();
+        }
+        lock.lock();
+        try {
+            if (!closed && !pendingLeaves.isEmpty()) {
+                sealLocked();
+            }
+            closed = true;
+            store.close();
+        } catch (IOException | UncheckedIOException e) {
+            logger.error("Could not close the ledger store", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get a snapshot of the ledger statistics
+     */
+    public LedgerStats getStats() {
+        lock.lock();
+        try {
+            long blocks = sealedHeight;
+            return new LedgerStats(blocks, bidsRecorded.get(), pendingLeaves.size(),
+                blocks == 0 ? 0 : sealNanosTotal.get() / blocks / 1000, proofHits.get(), proofMisses.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Immutable snapshot of ledger statistics. Latencies are in microseconds.
+     */
+    public static class LedgerStats {
+        private final long blocks;
+        private final long bidsRecorded;
+        private final int pendingBids;
+        private final long averageSealMicros;
+        private final long proofCacheHits;
+        private final long proofCacheMisses;
+
+        LedgerStats(long blocks, long bidsRecorded, int pendingBids, long averageSealMicros,
+                    long proofCacheHits, long proofCacheMisses) {
+            this.blocks = blocks;
+            this.bidsRecorded = bidsRecorded;
+            this.pendingBids = pendingBids;
+            this.averageSealMicros = averageSealMicros;
+            this.proofCacheHits = proofCacheHits;
+            this.proofCacheMisses = proofCacheMisses;
+        }
+
+        public long getBlocks() { return blocks; }
+        public long getBidsRecorded() { return bidsRecorded; }
+        public int getPendingBids() { return pendingBids; }
+        public long getAverageSealMicros() { return averageSealMicros; }
+        public long getProofCacheHits() { return proofCacheHits; }
+        public long getProofCacheMisses() { return proofCacheMisses; }
+
+        public double getAverageBidsPerBlock() {
+            return blocks == 0 ? 0.0 : (double) (bidsRecorded - pendingBids) / blocks;
+        }
+
+        @Override
+        public String toString() {
+            return "blocks=" + blocks + ", bids=" + bidsRecorded + ", pending=" + pendingBids
+                + ", bids/block=" + String.format("%.1f", getAverageBidsPerBlock())
+                + ", seal(us) avg=" + averageSealMicros
+                + ", proof cache hits=" + proofCacheHits + " misses=" + proofCacheMisses;
+        }
+    }
+
+    public enum Verification {
+        VALID,
+        INVALID,
+        PENDING
+    }
+
+    /**
+     * Immutable result of a batch verification. Elapsed time is in microseconds.
+     */
+    public static class BatchVerification {
+        private final long valid;
+        private final long pending;
+        private final List<BidReceipt> invalid;
+        private final long elapsedMicros;
+
+        BatchVerification(long valid, long pending, List<BidReceipt> invalid, long elapsedMicros) {
+            this.valid = valid;
+            this.pending = pending;
+            this.invalid = Collections.unmodifiableList(invalid);
+            this.elapsedMicros = elapsedMicros;
+        }
+
+        public long getValid() { return valid; }
+        public long getPending() { return pending; }
+        public List<BidReceipt> getInvalid() { return invalid; }
+        public long getElapsedMicros() { return elapsedMicros; }
+
+        public boolean isAllValid() {
+            return invalid.isEmpty() && pending == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "valid=" + valid + ", invalid=" + invalid.size() + ", pending=" + pending
+                + ", elapsed(us)=" + elapsedMicros;
+        }
     }
-}
\ No newline at end of file
+}
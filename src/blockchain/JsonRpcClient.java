@@ -0,0 +1,275 @@
+package blockchain;
+
+import util.Json;
+import util.LoggerUtil;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JSON-RPC 2.0 client over java.net.http.HttpClient.
+ * The HttpClient keeps connections to the node alive between requests. Many
+ * calls can share one HTTP request as a JSON-RPC batch, and at most
+ * maxInFlight requests are outstanding at once: callers beyond that wait up
+ * to acquireTimeoutMs and are then rejected, which pushes back on whoever
+ * is producing work faster than the node accepts it.
+ */
+public class JsonRpcClient {
+    private static final LoggerUtil logger = LoggerUtil.getLogger(JsonRpcClient.class);
+
+    private final URI endpoint;
+    private final HttpClient http;
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final long acquireTimeoutMs;
+    private final Duration requestTimeout;
+    private final AtomicLong nextId = new AtomicLong();
+
+    // Statistics
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong latencyNanosTotal = new AtomicLong();
+
+    /**
+     * @param endpoint the node's HTTP endpoint
+     * @param maxInFlight the most HTTP requests outstanding at once
+     * @param acquireTimeoutMs how long a caller waits for an in-flight slot
+     * @param requestTimeoutMs how long one HTTP request may take
+     */
+    public JsonRpcClient(URI endpoint, int maxInFlight, long acquireTimeoutMs, long requestTimeoutMs) {
+        this.endpoint = endpoint;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "json-rpc-client-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMillis(requestTimeoutMs))
+            .executor(executor)
+            .build();
+    }
+
+    /**
+     * A method call within a batch
+     */
+    public static final class Call {
+        private final String method;
+        private final Object params;
+
+        public Call(String method, Object params) {
+            this.method = method;
+            this.params = params;
+        }
+
+        public String getMethod() { return method; }
+        public Object getParams() { return params; }
+    }
+
+    /**
+     * Make a single call
+     *
+     * @return a future with the call's result
+     */
+    public CompletableFuture<Object> call(String method, Object params) {
+        return callBatch(Collections.singletonList(new Call(method, params))).thenApply(results -> results.get(0));
+    }
+
+    /**
+     * Send calls as one JSON-RPC batch request
+     * Blocks while maxInFlight requests are outstanding.
+     *
+     * @return a future with the results in call order; it fails with
+     *         JsonRpcException if the node reports an error for any call
+     * @throws RejectedExecutionException if no in-flight slot frees up within acquireTimeoutMs
+     */
+    public CompletableFuture<List<Object>> callBatch(List<Call> batch) {
+        acquire();
+        long firstId = nextId.getAndAdd(batch.size());
+        List<Object> body = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Map<String, Object> request = new LinkedHashMap<>();
+            request.put("jsonrpc", "2.0");
+            request.put("id", firstId + i);
+            request.put("method", batch.get(i).method);
+            request.put("params", batch.get(i).params);
+            body.add(request);
+        }
+
+        HttpRequest request = HttpRequest.newBuilder(endpoint)
+            .timeout(requestTimeout)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(Json.write(body)))
+            .build();
+
+        long start = System.nanoTime();
+        requests.incrementAndGet();
+        calls.addAndGet(batch.size());
+        CompletableFuture<List<Object>> result;
+        try {
+            result = http.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> parseResponse(response, firstId, batch.size()));
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+        return result.whenComplete((results, error) -> {
+            inFlight.release();
+            latencyNanosTotal.addAndGet(System.nanoTime() - start);
+            if (error != null) {
+                failures.incrementAndGet();
+            }
+        });
+    }
+
+    private void acquire() {
+        try {
+            if (!inFlight.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejected.incrementAndGet();
+                throw new RejectedExecutionException("JSON-RPC node is saturated: "
+                    + maxInFlight + " requests in flight for " + acquireTimeoutMs + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted waiting for the JSON-RPC node", e);
+        }
+    }
+
+    // Match the responses to the calls by ID; the node may answer a batch in any order
+    private static List<Object> parseResponse(HttpResponse<String> response, long firstId, int count) {
+        if (response.statusCode() != 200) {
+            throw new JsonRpcException(-32000, "HTTP " + response.statusCode() + " from JSON-RPC node", -1);
+        }
+        Object parsed = Json.parse(response.body());
+        List<?> responses = parsed instanceof List ? (List<?>) parsed : Collections.singletonList(parsed);
+
+        Map<Long, Map<?, ?>> byId = new HashMap<>();
+        for (Object element : responses) {
+            if (element instanceof Map && ((Map<?, ?>) element).get("id") instanceof Long) {
+                Map<?, ?> entry = (Map<?, ?>) element;
+                byId.put((Long) entry.get("id"), entry);
+            }
+        }
+
+        List<Object> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<?, ?> entry = byId.get(firstId + i);
+            if (entry == null) {
+                throw new JsonRpcException(-32603, "No response for call", i);
+            }
+            Object error = entry.get("error");
+            if (error instanceof Map) {
+                Map<?, ?> err = (Map<?, ?>) error;
+                long code = err.get("code") instanceof Long ? (Long) err.get("code") : -32603;
+                throw new JsonRpcException((int) code, String.valueOf(err.get("message")), i);
+            }
+            results.add(entry.get("result"));
+        }
+        return results;
+    }
+
+    /**
+     * Stop the client's threads
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Get a snapshot of the client statistics
+     */
+    public RpcStats getStats() {
+        long requestCount = requests.get();
+        return new RpcStats(
+            requestCount,
+            calls.get(),
+            failures.get(),
+            rejected.get(),
+            inFlight.availablePermits(),
+            requestCount == 0 ? 0 : latencyNanosTotal.get() / requestCount / 1000
+        );
+    }
+
+    /**
+     * An error reported by the node, or a malformed response
+     */
+    public static class JsonRpcException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final int code;
+        private final int callIndex;
+
+        public JsonRpcException(int code, String message, int callIndex) {
+            super(message + " (code " + code + (callIndex >= 0 ? ", call " + callIndex : "") + ")");
+            this.code = code;
+            this.callIndex = callIndex;
+        }
+
+        public int getCode() { return code; }
+
+        /**
+         * The index of the failed call within its batch, or -1 for the whole request
+         */
+        public int getCallIndex() { return callIndex; }
+    }
+
+    /**
+     * Immutable snapshot of client statistics. Latencies are in microseconds.
+     */
+    public static class RpcStats {
+        private final long requests;
+        private final long calls;
+        private final long failures;
+        private final long rejected;
+        private final int freeSlots;
+        private final long averageLatencyMicros;
+
+        RpcStats(long requests, long calls, long failures, long rejected, int freeSlots, long averageLatencyMicros) {
+            this.requests = requests;
+            this.calls = calls;
+            this.failures = failures;
+            this.rejected = rejected;
+            this.freeSlots = freeSlots;
+            this.averageLatencyMicros = averageLatencyMicros;
+        }
+
+        public long getRequests() { return requests; }
+        public long getCalls() { return calls; }
+        public long getFailures() { return failures; }
+        public long getRejected() { return rejected; }
+        public int getFreeSlots() { return freeSlots; }
+        public long getAverageLatencyMicros() { return averageLatencyMicros; }
+
+        @Override
+        public String toString() {
+            return "requests=" + requests + ", calls=" + calls + ", failures=" + failures
+                + ", rejected=" + rejected + ", freeSlots=" + freeSlots
+                + ", latency(us) avg=" + averageLatencyMicros;
+        }
+    }
+}
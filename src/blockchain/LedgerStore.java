@@ -0,0 +1,735 @@
+package blockchain;
+
+import util.LoggerUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only, segmented file store for sealed blocks.
+ * Each block is one record in the active segment, a file mapped with
+ * MappedByteBuffer:
+ * <pre>
+ *   int payloadLength, int crc32c(payload),
+ *   payload: long height, long timestamp, int leafCount, byte[32] previousHash,
+ *            byte[32] merkleRoot, byte[32] blockHash,
+ *            byte[32] leaves..., BidRecord records...
+ * </pre>
+ * Segments are preallocated to segmentBytes, so a zero length marks the end
+ * of the data. When a record does not fit, the segment is trimmed to its
+ * data and a new one is started. Only the newest hotSegments closed segments
+ * stay mapped; older ones are gzipped into the archive directory by a
+ * background thread and inflated on demand.
+ * On open, records are checked in order; a torn or corrupt record at the
+ * end of the newest segment is what a crash mid-append leaves behind, so
+ * the segment is truncated there. A bad record with a valid one after it,
+ * or corruption anywhere else, is an error.
+ * The checksum only catches torn writes. readBlock also rebuilds the Merkle
+ * tree and the header hash and rejects a block that no longer matches the
+ * root and hash persisted when it was sealed.
+ * A mapping is released before its file is truncated or deleted, since
+ * Windows refuses both while a file is mapped.
+ * An in-memory open-addressing index maps each leaf hash to its block and
+ * position, so finding a bid's receipt is a hash probe plus one 32-byte
+ * comparison against the mapped segment.
+ */
+public class LedgerStore implements AutoCloseable {
+    private static final LoggerUtil logger = LoggerUtil.getLogger(LedgerStore.class);
+    private static final Pattern SEGMENT_NAME = Pattern.compile("ledger-(\\d{8})\\.seg(\\.gz)?");
+    private static final String ARCHIVE_DIRECTORY = "archive";
+    private static final int RECORD_HEADER = 2 * Integer.BYTES;
+    private static final int PREVIOUS_HASH = 2 * Long.BYTES + Integer.BYTES;
+    private static final int MERKLE_ROOT = PREVIOUS_HASH + Block.HASH_LENGTH;
+    private static final int BLOCK_HASH = MERKLE_ROOT + Block.HASH_LENGTH;
+    private static final int BLOCK_HEADER = BLOCK_HASH + Block.HASH_LENGTH;
+    private static final int MAX_LEAVES = 1 << 24;
+    private static final int BYTES_PER_BID = Block.HASH_LENGTH + BidRecord.LENGTH;
+
+    private final Path directory;
+    private final Path archiveDirectory;
+    private final int segmentBytes;
+    private final int hotSegments;
+    private final boolean forceOnAppend;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService archiver;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active;
+    private FileChannel activeChannel;
+
+    // blockPositions[height] = segment index << 32 | record offset
+    private long[] blockPositions = new long[1024];
+    // Kept in memory so callers can number leaves without reading blocks
+    private int[] leafCounts = new int[1024];
+    private int blockCount;
+
+    // Leaf index: key is the first 8 bytes of the leaf hash, value is height << 24 | leaf index
+    private long[] indexKeys = new long[1 << 12];
+    private long[] indexValues = new long[1 << 12];
+    private int indexSize;
+
+    /**
+     * A segment file, mapped while hot and inflated from the archive on demand
+     */
+    private static final class Segment {
+        final int id;
+        Path file;
+        int size;
+        ByteBuffer buffer;
+        SoftReference<ByteBuffer> inflated;
+
+        Segment(int id, Path file) {
+            this.id = id;
+            this.file = file;
+        }
+
+        boolean isArchived() {
+            return buffer == null;
+        }
+    }
+
+    private LedgerStore(Path directory, int segmentBytes, int hotSegments, boolean forceOnAppend) {
+        this.directory = directory;
+        this.archiveDirectory = directory.resolve(ARCHIVE_DIRECTORY);
+        this.segmentBytes = segmentBytes;
+        this.hotSegments = Math.max(1, hotSegments);
+        this.forceOnAppend = forceOnAppend;
+        this.archiver = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "ledger-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Open the store, recovering from a torn final record and rebuilding the index
+     *
+     * @param directory the directory holding the segments
+     * @param segmentBytes the size a new segment is preallocated to
+     * @param hotSegments how many closed segments stay mapped before older ones are archived
+     * @param forceOnAppend whether each append is forced to disk before it returns
+     * @throws IOException if the files cannot be read or a closed segment is corrupt
+     */
+    public static LedgerStore open(Path directory, int segmentBytes, int hotSegments, boolean forceOnAppend)
+            throws IOException {
+        LedgerStore store = new LedgerStore(directory, segmentBytes, hotSegments, forceOnAppend);
+        try {
+            store.load();
+        } catch (IOException | RuntimeException e) {
+            store.archiver.shutdownNow();
+            throw e;
+        }
+        return store;
+    }
+
+    private void load() throws IOException {
+        Files.createDirectories(archiveDirectory);
+        TreeMap<Integer, Path> files = new TreeMap<>();
+        listSegments(archiveDirectory, files);
+        // A hot file wins over an archive copy left by a crash mid-archive
+        listSegments(directory, files);
+
+        long start = System.nanoTime();
+        for (Path file : files.values()) {
+            Segment segment = new Segment(segmentId(file), file);
+            boolean archived = file.getFileName().toString().endsWith(".gz");
+            boolean last = !archived && segment.id == files.lastKey();
+            if (last) {
+                openActive(segment);
+            } else if (archived) {
+                inflate(segment);
+            } else {
+                mapReadOnly(segment, (int) Files.size(file));
+            }
+            segments.add(segment);
+            scan(segment, last);
+        }
+        if (active == null) {
+            int id = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).id + 1;
+            Segment segment = new Segment(id, directory.resolve(segmentName(id)));
+            openActive(segment);
+            segments.add(segment);
+        }
+        logger.info("Ledger store opened at " + directory + ": " + blockCount + " blocks, "
+            + indexSize + " bids in " + segments.size() + " segments ("
+            + (System.nanoTime() - start) / 1_000_000 + "ms)");
+        scheduleArchive();
+    }
+
+    // Check the records of a segment and index them; only the last segment may end torn
+    private void scan(Segment segment, boolean last) throws IOException {
+        ByteBuffer buffer = buffer(segment);
+        int segmentIndex = segments.size() - 1;
+        int limit = buffer.limit();
+        int offset = 0;
+        CRC32C crc = new CRC32C();
+        while (offset + RECORD_HEADER <= limit) {
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            String problem = null;
+            if (length < BLOCK_HEADER || offset + RECORD_HEADER + (long) length > limit) {
+                problem = "bad length " + length;
+            } else {
+                crc.reset();
+                crc.update(buffer.slice(offset + RECORD_HEADER, length));
+                if ((int) crc.getValue() != buffer.getInt(offset + Integer.BYTES)) {
+                    problem = "checksum mismatch";
+                } else if (buffer.getLong(offset + RECORD_HEADER) != blockCount) {
+                    problem = "expected block " + blockCount;
+                }
+            }
+            int leafCount = problem == null ? buffer.getInt(offset + RECORD_HEADER + 2 * Long.BYTES) : 0;
+            if (problem == null && length != BLOCK_HEADER + (long) leafCount * BYTES_PER_BID) {
+                // The checksum matched, so this is not a torn write; never truncate over it
+                throw new IOException("Ledger segment " + segment.file + " has an unknown record layout at offset "
+                    + offset);
+            }
+            if (problem != null) {
+                if (!last) {
+                    throw new IOException("Ledger segment " + segment.file + " is corrupt at offset " + offset
+                        + ": " + problem);
+                }
+                // A crash only tears the final record; sealed blocks after a bad one mean corruption
+                int next = findValidRecord(buffer, offset + Integer.BYTES, crc);
+                if (next >= 0) {
+                    throw new IOException("Ledger segment " + segment.file + " is corrupt at offset " + offset
+                        + " (" + problem + ") with a valid record following at offset " + next);
+                }
+                logger.warn("Truncating torn ledger record in " + segment.file + " at offset " + offset
+                    + " (" + problem + ")");
+                truncateActive(offset);
+                break;
+            }
+            addBlock(segmentIndex, offset, buffer);
+            offset += RECORD_HEADER + length;
+        }
+        segment.size = offset;
+        if (!last && segment.buffer != null && segment.buffer.capacity() != offset) {
+            mapReadOnly(segment, offset);
+        }
+    }
+
+    // Find a record with a plausible layout and a matching checksum at or after from.
+    // Records are all a multiple of four bytes long, so only aligned offsets can start one.
+    private static int findValidRecord(ByteBuffer buffer, int from, CRC32C crc) {
+        int limit = buffer.limit();
+        for (int offset = from; offset + RECORD_HEADER <= limit; offset += Integer.BYTES) {
+            int length = buffer.getInt(offset);
+            if (length < BLOCK_HEADER || offset + RECORD_HEADER + (long) length > limit
+                    || (length - BLOCK_HEADER) % BYTES_PER_BID != 0) {
+                continue;
+            }
+            crc.reset();
+            crc.update(buffer.slice(offset + RECORD_HEADER, length));
+            if ((int) crc.getValue() == buffer.getInt(offset + Integer.BYTES)) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    private void addBlock(int segmentIndex, int offset, ByteBuffer buffer) {
+        int height = blockCount;
+        if (height == blockPositions.length) {
+            blockPositions = Arrays.copyOf(blockPositions, height * 2);
+            leafCounts = Arrays.copyOf(leafCounts, height * 2);
+        }
+        int payload = offset + RECORD_HEADER;
+        int leafCount = buffer.getInt(payload + 2 * Long.BYTES);
+        blockPositions[height] = (long) segmentIndex << 32 | offset;
+        leafCounts[height] = leafCount;
+        blockCount++;
+
+        int leaves = payload + BLOCK_HEADER;
+        for (int i = 0; i < leafCount; i++) {
+            indexPut(buffer.getLong(leaves + i * Block.HASH_LENGTH), (long) height << 24 | i);
+        }
+    }
+
+    /**
+     * Append a sealed block
+     * Blocks must be appended in height order.
+     *
+     * @throws IOException if the block cannot be written
+     */
+    public void append(Block block) throws IOException {
+        MerkleTree tree = block.getTree();
+        byte[][] leaves = tree.levels().get(0);
+        if (leaves.length >= MAX_LEAVES) {
+            throw new IOException("Block " + block.getHeight() + " has too many bids to store");
+        }
+        int length = BLOCK_HEADER + leaves.length * BYTES_PER_BID;
+
+        lock.writeLock().lock();
+        try {
+            if (block.getHeight() != blockCount) {
+                throw new IOException("Expected block " + blockCount + ", got " + block.getHeight());
+            }
+            if (active.size + RECORD_HEADER + length > active.buffer.capacity()) {
+                roll(RECORD_HEADER + length);
+            }
+
+            ByteBuffer buffer = active.buffer;
+            int offset = active.size;
+            int payload = offset + RECORD_HEADER;
+            buffer.putLong(payload, block.getHeight());
+            buffer.putLong(payload + Long.BYTES, block.getTimestamp());
+            buffer.putInt(payload + 2 * Long.BYTES, leaves.length);
+            buffer.put(payload + PREVIOUS_HASH, block.getPreviousHash());
+            buffer.put(payload + MERKLE_ROOT, block.getMerkleRoot());
+            buffer.put(payload + BLOCK_HASH, block.getHash());
+            for (int i = 0; i < leaves.length; i++) {
+                buffer.put(payload + BLOCK_HEADER + i * Block.HASH_LENGTH, leaves[i]);
+            }
+            buffer.put(payload + BLOCK_HEADER + leaves.length * Block.HASH_LENGTH, block.records());
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(payload, length));
+            buffer.putInt(offset + Integer.BYTES, (int) crc.getValue());
+            // The length goes in last: until it is written the record reads as the end of the data
+            buffer.putInt(offset, length);
+            if (forceOnAppend) {
+                ((MappedByteBuffer) buffer).force();
+            }
+
+            active.size = payload + length;
+            addBlock(segments.size() - 1, offset, buffer);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Close the active segment, trimmed to its data, and start a new one
+    private void roll(int recordBytes) throws IOException {
+        Segment closed = active;
+        ((MappedByteBuffer) closed.buffer).force();
+        unmap(closed.buffer);
+        closed.buffer = null;
+        activeChannel.truncate(closed.size);
+        activeChannel.close();
+        mapReadOnly(closed, closed.size);
+
+        Segment segment = new Segment(closed.id + 1, directory.resolve(segmentName(closed.id + 1)));
+        openActive(segment, Math.max(segmentBytes, recordBytes));
+        segments.add(segment);
+        scheduleArchive();
+    }
+
+    // Archive in the background so appends never wait for gzip
+    private void scheduleArchive() {
+        try {
+            archiver.execute(() -> {
+                try {
+                    archiveColdSegments();
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Could not archive ledger segments; they stay hot until the next roll", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Closing; the next open archives them
+        }
+    }
+
+    // Gzip closed segments beyond the newest hotSegments into the archive directory
+    private void archiveColdSegments() throws IOException {
+        List<Segment> cold = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            int closedSegments = segments.size() - 1;
+            for (int i = 0; i < closedSegments - hotSegments; i++) {
+                if (!segments.get(i).isArchived()) {
+                    cold.add(segments.get(i));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        for (Segment segment : cold) {
+            // Closed segments never change and only this thread archives, so no lock is needed to copy
+            Path hot = segment.file;
+            Path archived = archiveDirectory.resolve(hot.getFileName() + ".gz");
+            Path temp = archiveDirectory.resolve(hot.getFileName() + ".gz.tmp");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+                Files.copy(hot, out);
+            }
+            Files.move(temp, archived, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            lock.writeLock().lock();
+            try {
+                if (activeChannel == null || !activeChannel.isOpen()) {
+                    // Closed meanwhile: the hot file wins on the next open, so leaving both is safe
+                    return;
+                }
+                unmap(segment.buffer);
+                segment.buffer = null;
+                segment.file = archived;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            Files.delete(hot);
+            logger.info("Archived ledger segment " + archived.getFileName());
+        }
+    }
+
+    /**
+     * Read a stored block, rebuilding its Merkle tree
+     *
+     * @param height the block height
+     * @return the block, or null if no block at that height is stored
+     * @throws IOException if an archived segment cannot be read, or the block
+     *         does not match the root and hash it was sealed with
+     */
+    public Block readBlock(long height) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (height < 0 || height >= blockCount) {
+                return null;
+            }
+            long position = blockPositions[(int) height];
+            ByteBuffer buffer = buffer(segments.get((int) (position >>> 32)));
+            int payload = (int) position + RECORD_HEADER;
+
+            long timestamp = buffer.getLong(payload + Long.BYTES);
+            int leafCount = buffer.getInt(payload + 2 * Long.BYTES);
+            byte[] previousHash = new byte[Block.HASH_LENGTH];
+            buffer.get(payload + PREVIOUS_HASH, previousHash);
+            byte[] merkleRoot = new byte[Block.HASH_LENGTH];
+            buffer.get(payload + MERKLE_ROOT, merkleRoot);
+            byte[] hash = new byte[Block.HASH_LENGTH];
+            buffer.get(payload + BLOCK_HASH, hash);
+            List<byte[]> leaves = new ArrayList<>(leafCount);
+            for (int i = 0; i < leafCount; i++) {
+                byte[] leaf = new byte[Block.HASH_LENGTH];
+                buffer.get(payload + BLOCK_HEADER + i * Block.HASH_LENGTH, leaf);
+                leaves.add(leaf);
+            }
+            byte[] records = new byte[leafCount * BidRecord.LENGTH];
+            buffer.get(payload + BLOCK_HEADER + leafCount * Block.HASH_LENGTH, records);
+            Block block = new Block(height, previousHash, MerkleTree.build(leaves), timestamp, records,
+                merkleRoot, hash);
+            if (!block.isSealIntact()) {
+                throw new IOException("Ledger block " + height
+                    + " does not match the Merkle root and hash it was sealed with");
+            }
+            return block;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the receipt for a recorded bid
+     *
+     * @param leafHash the bid's leaf hash
+     * @return the receipt, or null if no stored block holds the leaf
+     * @throws IOException if an archived segment cannot be read
+     */
+    public BidReceipt findReceipt(byte[] leafHash) throws IOException {
+        if (leafHash.length != Block.HASH_LENGTH) {
+            return null;
+        }
+        long key = indexKey(ByteBuffer.wrap(leafHash).getLong());
+        byte[] stored = new byte[Block.HASH_LENGTH];
+        lock.readLock().lock();
+        try {
+            int mask = indexKeys.length - 1;
+            for (int slot = mix(key) & mask; indexKeys[slot] != 0; slot = (slot + 1) & mask) {
+                if (indexKeys[slot] != key) {
+                    continue;
+                }
+                // Keys are hash prefixes, so compare the whole leaf
+                long value = indexValues[slot];
+                long height = value >>> 24;
+                int index = (int) (value & (MAX_LEAVES - 1));
+                long position = blockPositions[(int) height];
+                ByteBuffer buffer = buffer(segments.get((int) (position >>> 32)));
+                buffer.get((int) position + RECORD_HEADER + BLOCK_HEADER + index * Block.HASH_LENGTH, stored);
+                if (Arrays.equals(stored, leafHash)) {
+                    return new BidReceipt(height, index, stored);
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the number of bids in a stored block, without reading it
+     *
+     * @return the leaf count, or -1 if no block at that height is stored
+     */
+    public int getLeafCount(long height) {
+        lock.readLock().lock();
+        try {
+            return height >= 0 && height < blockCount ? leafCounts[(int) height] : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the number of stored blocks
+     */
+    public long getBlockCount() {
+        lock.readLock().lock();
+        try {
+            return blockCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get a snapshot of the store statistics
+     */
+    public StoreStats getStats() {
+        lock.readLock().lock();
+        try {
+            int archived = 0;
+            long bytes = 0;
+            for (Segment segment : segments) {
+                archived += segment.isArchived() ? 1 : 0;
+                bytes += segment.size;
+            }
+            return new StoreStats(blockCount, indexSize, segments.size(), archived, bytes);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Force the active segment to disk and release the files
+     */
+    @Override
+    public void close() throws IOException {
+        archiver.shutdown();
+        try {
+            if (!archiver.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Ledger archiving still running at close");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            if (activeChannel != null && activeChannel.isOpen()) {
+                ((MappedByteBuffer) active.buffer).force();
+                activeChannel.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void openActive(Segment segment) throws IOException {
+        openActive(segment, segmentBytes);
+    }
+
+    private void openActive(Segment segment, int capacity) throws IOException {
+        activeChannel = FileChannel.open(segment.file,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Mapping past the end extends the file with zeros
+        int mapped = (int) Math.max(capacity, activeChannel.size());
+        segment.buffer = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, mapped);
+        segment.size = 0;
+        active = segment;
+    }
+
+    // Cut the active segment at a torn record and zero what follows
+    private void truncateActive(int offset) throws IOException {
+        int capacity = active.buffer.capacity();
+        ((MappedByteBuffer) active.buffer).force();
+        unmap(active.buffer);
+        active.buffer = null;
+        activeChannel.truncate(offset);
+        active.buffer = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, segmentBytes));
+    }
+
+    private static void mapReadOnly(Segment segment, int size) throws IOException {
+        if (segment.buffer != null) {
+            unmap(segment.buffer);
+            segment.buffer = null;
+        }
+        try (FileChannel channel = FileChannel.open(segment.file, StandardOpenOption.READ)) {
+            segment.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            segment.size = size;
+        }
+    }
+
+    // Release a mapping now rather than when it is collected. The caller holds the write
+    // lock, or is loading, so no reader can still be using the buffer.
+    private static void unmap(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || Unmapper.INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            Unmapper.INVOKE_CLEANER.invoke(Unmapper.UNSAFE, buffer);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Could not release ledger segment mapping: " + e);
+        }
+    }
+
+    // sun.misc.Unsafe.invokeCleaner, looked up once; null where the JDK does not offer it
+    private static final class Unmapper {
+        static final Object UNSAFE;
+        static final Method INVOKE_CLEANER;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                logger.warn("Ledger segments will be unmapped only when collected: " + e);
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+        }
+    }
+
+    private static ByteBuffer buffer(Segment segment) throws IOException {
+        return segment.buffer != null ? segment.buffer : inflate(segment);
+    }
+
+    // Archived segments are decompressed on first use and kept while memory allows
+    private static ByteBuffer inflate(Segment segment) throws IOException {
+        synchronized (segment) {
+            ByteBuffer buffer = segment.inflated == null ? null : segment.inflated.get();
+            if (buffer == null) {
+                try (InputStream in = new GZIPInputStream(Files.newInputStream(segment.file))) {
+                    buffer = ByteBuffer.wrap(in.readAllBytes()).asReadOnlyBuffer();
+                }
+                segment.inflated = new SoftReference<>(buffer);
+            }
+            return buffer;
+        }
+    }
+
+    private void indexPut(long prefix, long value) {
+        if (2 * (indexSize + 1) > indexKeys.length) {
+            growIndex();
+        }
+        long key = indexKey(prefix);
+        int mask = indexKeys.length - 1;
+        int slot = mix(key) & mask;
+        while (indexKeys[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        indexKeys[slot] = key;
+        indexValues[slot] = value;
+        indexSize++;
+    }
+
+    private void growIndex() {
+        long[] oldKeys = indexKeys;
+        long[] oldValues = indexValues;
+        indexKeys = new long[oldKeys.length * 2];
+        indexValues = new long[oldKeys.length * 2];
+        int mask = indexKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (indexKeys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                indexKeys[slot] = oldKeys[i];
+                indexValues[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // Zero marks an empty slot, so a zero prefix is stored as one; lookups compare the full hash anyway
+    private static long indexKey(long prefix) {
+        return prefix == 0 ? 1 : prefix;
+    }
+
+    private static int mix(long key) {
+        return (int) (key ^ (key >>> 32));
+    }
+
+    private static void listSegments(Path dir, TreeMap<Integer, Path> files) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path file : stream) {
+                if (SEGMENT_NAME.matcher(file.getFileName().toString()).matches()) {
+                    files.put(segmentId(file), file);
+                }
+            }
+        }
+    }
+
+    private static int segmentId(Path file) {
+        Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a ledger segment: " + file);
+        }
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    private static String segmentName(int id) {
+        return String.format("ledger-%08d.seg", id);
+    }
+
+    /**
+     * Immutable snapshot of store statistics
+     */
+    public static class StoreStats {
+        private final long blocks;
+        private final long bids;
+        private final int segments;
+        private final int archivedSegments;
+        private final long bytes;
+
+        StoreStats(long blocks, long bids, int segments, int archivedSegments, long bytes) {
+            this.blocks = blocks;
+            this.bids = bids;
+            this.segments = segments;
+            this.archivedSegments = archivedSegments;
+            this.bytes = bytes;
+        }
+
+        public long getBlocks() { return blocks; }
+        public long getBids() { return bids; }
+        public int getSegments() { return segments; }
+        public int getArchivedSegments() { return archivedSegments; }
+        public long getBytes() { return bytes; }
+
+        @Override
+        public String toString() {
+            return "blocks=" + blocks + ", bids=" + bids + ", segments=" + segments
+                + " (" + archivedSegments + " archived), bytes=" + bytes;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package blockchain;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import util.Json;
+import util.LoggerUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the node at blockchain.endpoint, for tests and load runs.
+ * Speaks JSON-RPC 2.0 over HTTP, single and batch requests, and implements
+ * the methods RpcLedgerClient uses:
+ * <ul>
+ *   <li>ledger_getNonce [account] - the lowest nonce the account has not used</li>
+ *   <li>ledger_submitBid [{from, nonce, record}] - the transaction hash; record is a base64 BidRecord</li>
+ *   <li>web3_clientVersion - the node name</li>
+ * </ul>
+ * Like a real node it rejects a nonce that was already used, but accepts
+ * nonces out of order, since pipelined batches can arrive out of order.
+ * An artificial per-request latency makes it behave like a remote node.
+ */
+public class LocalRpcNode {
+    private static final LoggerUtil logger = LoggerUtil.getLogger(LocalRpcNode.class);
+    private static final String CLIENT_VERSION = "GridlockedCryptizer-LocalRpcNode/1.0";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMs;
+    private final Map<String, Account> accounts = new HashMap<>();
+
+    // Statistics
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong rejectedCalls = new AtomicLong();
+
+    /**
+     * Nonces used by one account: all below next, plus any above it that
+     * arrived early
+     */
+    private static final class Account {
+        long next;
+        final Set<Long> ahead = new HashSet<>();
+
+        boolean use(long nonce) {
+            if (nonce < next || !ahead.add(nonce)) {
+                return false;
+            }
+            while (ahead.remove(next)) {
+                next++;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @param port the port to listen on, or 0 for any free port
+     * @param threads the number of request handler threads
+     * @param latencyMs artificial delay added to every HTTP request
+     */
+    public LocalRpcNode(int port, int threads, long latencyMs) throws IOException {
+        this.latencyMs = latencyMs;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "local-rpc-node-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Start serving requests
+     */
+    public LocalRpcNode start() {
+        server.start();
+        logger.info("Local JSON-RPC node listening on " + getUri());
+        return this;
+    }
+
+    /**
+     * Stop serving requests
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public URI getUri() {
+        return URI.create("http://127.0.0.1:" + getPort() + "/");
+    }
+
+    public long getRequests() { return requests.get(); }
+    public long getCalls() { return calls.get(); }
+    public long getRejectedCalls() { return rejectedCalls.get(); }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            String reply;
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            try (InputStream in = exchange.getRequestBody()) {
+                reply = dispatch(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            if (latencyMs > 0) {
+                Thread.sleep(latencyMs);
+            }
+
+            byte[] body = reply.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String dispatch(String body) {
+        Object parsed;
+        try {
+            parsed = Json.parse(body);
+        } catch (IllegalArgumentException e) {
+            return Json.write(error(null, -32700, "Parse error: " + e.getMessage()));
+        }
+        if (!(parsed instanceof List)) {
+            return Json.write(invoke(parsed));
+        }
+        List<?> batch = (List<?>) parsed;
+        if (batch.isEmpty()) {
+            return Json.write(error(null, -32600, "Empty batch"));
+        }
+        List<Object> responses = new ArrayList<>(batch.size());
+        for (Object request : batch) {
+            responses.add(invoke(request));
+        }
+        return Json.write(responses);
+    }
+
+    private Map<String, Object> invoke(Object message) {
+        calls.incrementAndGet();
+        if (!(message instanceof Map)) {
+            rejectedCalls.incrementAndGet();
+            return error(null, -32600, "Invalid request");
+        }
+        Map<?, ?> request = (Map<?, ?>) message;
+        Object id = request.get("id");
+        Object params = request.get("params");
+        Object first = params instanceof List && !((List<?>) params).isEmpty() ? ((List<?>) params).get(0) : null;
+
+        try {
+            String method = String.valueOf(request.get("method"));
+            switch (method) {
+                case "web3_clientVersion":
+                    return result(id, CLIENT_VERSION);
+                case "ledger_getNonce":
+                    synchronized (accounts) {
+                        Account account = accounts.get(String.valueOf(first));
+                        return result(id, account == null ? 0L : account.next);
+                    }
+                case "ledger_submitBid":
+                    return submitBid(id, first);
+                default:
+                    rejectedCalls.incrementAndGet();
+                    return error(id, -32601, "Method not found: " + method);
+            }
+        } catch (ClassCastException | NullPointerException | IllegalArgumentException e) {
+            rejectedCalls.incrementAndGet();
+            return error(id, -32602, "Invalid params");
+        }
+    }
+
+    private Map<String, Object> submitBid(Object id, Object params) {
+        Map<?, ?> bid = (Map<?, ?>) params;
+        String from = (String) bid.get("from");
+        long nonce = ((Number) bid.get("nonce")).longValue();
+        String record = (String) bid.get("record");
+        BidRecord.fromBase64(record);
+
+        synchronized (accounts) {
+            if (!accounts.computeIfAbsent(from, a -> new Account()).use(nonce)) {
+                rejectedCalls.incrementAndGet();
+                return error(id, -32000, "Nonce " + nonce + " already used by " + from);
+            }
+        }
+        return result(id, transactionHash(from + ':' + nonce + ':' + record));
+    }
+
+    private static String transactionHash(String transaction) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(transaction.getBytes(StandardCharsets.UTF_8));
+            char[] hex = new char[2 + 2 * digest.length];
+            hex[0] = '0';
+            hex[1] = 'x';
+            for (int i = 0; i < digest.length; i++) {
+                hex[2 + 2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+                hex[3 + 2 * i] = HEX_DIGITS[digest[i] & 0xf];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static Map<String, Object> result(Object id, Object result) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("jsonrpc", "2.0");
+        response.put("id", id);
+        response.put("result", result);
+        return response;
+    }
+
+    private static Map<String, Object> error(Object id, int code, String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("code", (long) code);
+        error.put("message", message);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("jsonrpc", "2.0");
+        response.put("id", id);
+        response.put("error", error);
+        return response;
+    }
+
+    /**
+     * Run a node for load tests: LocalRpcNode [port] [latencyMs]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8545;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 0L;
+        LocalRpcNode node = new LocalRpcNode(port, Runtime.getRuntime().availableProcessors(), latency);
+        node.start();
+        System.out.println("Local JSON-RPC node listening on " + node.getUri()
+            + (latency > 0 ? " with " + latency + "ms latency" : ""));
+        // The handler threads are daemons, so keep the JVM alive here
+        Thread.currentThread().join();
+    }
+}
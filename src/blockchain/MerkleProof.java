@@ -0,0 +1,102 @@
+package blockchain;
+
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Inclusion proof for one leaf of a MerkleTree: the sibling hashes on the
+ * path from the leaf to the root, O(log n) of them. Which side each sibling
+ * sits on, and which levels carry an unpaired node up without a sibling,
+ * follow from the leaf index and leaf count, so a proof cannot be replayed
+ * for a different position.
+ */
+public final class MerkleProof {
+    private final int index;
+    private final int leafCount;
+    private final byte[][] siblings;
+
+    MerkleProof(int index, int leafCount, byte[][] siblings) {
+        this.index = index;
+        this.leafCount = leafCount;
+        this.siblings = siblings;
+    }
+
+    /**
+     * Build the proof for a leaf
+     *
+     * @param tree the tree containing the leaf
+     * @param index the leaf index
+     * @return the proof
+     */
+    public static MerkleProof of(MerkleTree tree, int index) {
+        int leafCount = tree.getLeafCount();
+        if (index < 0 || index >= leafCount) {
+            throw new IndexOutOfBoundsException("Leaf " + index + " of " + leafCount);
+        }
+
+        byte[][] path = new byte[tree.levels().size() - 1][];
+        int count = 0;
+        int position = index;
+        for (int level = 0; level < tree.levels().size() - 1; level++) {
+            byte[][] nodes = tree.levels().get(level);
+            int sibling = position ^ 1;
+            if (sibling < nodes.length) {
+                path[count++] = nodes[sibling];
+            }
+            position >>= 1;
+        }
+
+        byte[][] siblings = new byte[count][];
+        System.arraycopy(path, 0, siblings, 0, count);
+        return new MerkleProof(index, leafCount, siblings);
+    }
+
+    /**
+     * Check that a leaf hash sits at this proof's position under a root
+     *
+     * @param leafHash the leaf hash
+     * @param root the expected Merkle root
+     * @return true if the proof recomputes the root
+     */
+    public boolean verify(byte[] leafHash, byte[] root) {
+        byte[] hash = leafHash;
+        int position = index;
+        int width = leafCount;
+        int next = 0;
+
+        while (width > 1) {
+            int sibling = position ^ 1;
+            if (sibling < width) {
+                if (next == siblings.length) {
+                    return false;
+                }
+                byte[] siblingHash = siblings[next++];
+                hash = (position & 1) == 0
+                    ? MerkleTree.nodeHash(hash, siblingHash)
+                    : MerkleTree.nodeHash(siblingHash, hash);
+            }
+            position >>= 1;
+            width = (width + 1) / 2;
+        }
+        return next == siblings.length && MessageDigest.isEqual(hash, root);
+    }
+
+    public int getIndex() { return index; }
+    public int getLeafCount() { return leafCount; }
+
+    /**
+     * Get the number of sibling hashes in the proof
+     */
+    public int size() {
+        return siblings.length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("MerkleProof[leaf ").append(index).append(" of ").append(leafCount);
+        for (byte[] sibling : siblings) {
+            sb.append(", ").append(Base64.getEncoder().encodeToString(sibling));
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,102 @@
+package blockchain;
+
+import util.SecurityUtil;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Binary Merkle tree over SHA-256 leaf hashes.
+ * Leaves and inner nodes are hashed with different prefixes so a leaf can
+ * never be passed off as an inner node. An unpaired node at the end of a
+ * level is carried up unchanged rather than paired with itself, so no two
+ * different leaf lists share a root.
+ */
+public final class MerkleTree {
+    static final byte LEAF_PREFIX = 0x00;
+    static final byte NODE_PREFIX = 0x01;
+
+    // levels.get(0) holds the leaves, the last level holds the root
+    private final List<byte[][]> levels;
+
+    private MerkleTree(List<byte[][]> levels) {
+        this.levels = levels;
+    }
+
+    /**
+     * Build a tree over leaf hashes
+     *
+     * @param leaves leaf hashes, as returned by leafHash
+     * @return the tree
+     */
+    public static MerkleTree build(List<byte[]> leaves) {
+        if (leaves.isEmpty()) {
+            throw new IllegalArgumentException("A Merkle tree needs at least one leaf");
+        }
+        List<byte[][]> levels = new ArrayList<>();
+        byte[][] level = leaves.toArray(new byte[0][]);
+        levels.add(level);
+
+        while (level.length > 1) {
+            byte[][] parent = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < parent.length; i++) {
+                int left = 2 * i;
+                parent[i] = left + 1 < level.length ? nodeHash(level[left], level[left + 1]) : level[left];
+            }
+            levels.add(parent);
+            level = parent;
+        }
+        return new MerkleTree(Collections.unmodifiableList(levels));
+    }
+
+    /**
+     * Hash a leaf's data
+     */
+    public static byte[] leafHash(byte[] data) {
+        return leafHash(data, 0, data.length);
+    }
+
+    /**
+     * Hash a leaf's data held in part of an array
+     */
+    public static byte[] leafHash(byte[] data, int offset, int length) {
+        MessageDigest md = SecurityUtil.sha256();
+        md.update(LEAF_PREFIX);
+        md.update(data, offset, length);
+        return md.digest();
+    }
+
+    static byte[] nodeHash(byte[] left, byte[] right) {
+        MessageDigest md = SecurityUtil.sha256();
+        md.update(NODE_PREFIX);
+        md.update(left);
+        return md.digest(right);
+    }
+
+    /**
+     * Get the root hash
+     */
+    public byte[] getRoot() {
+        return levels.get(levels.size() - 1)[0].clone();
+    }
+
+    /**
+     * Get the number of leaves
+     */
+    public int getLeafCount() {
+        return levels.get(0).length;
+    }
+
+    /**
+     * Get a leaf hash
+     */
+    public byte[] getLeaf(int index) {
+        return levels.get(0)[index].clone();
+    }
+
+    List<byte[][]> levels() {
+        return levels;
+    }
+}
@@ -0,0 +1,157 @@
+package blockchain;
+
+import util.ConfigManager;
+import util.LoggerUtil;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Submits bids to the node at blockchain.endpoint.
+ * Bids are split into JSON-RPC batches of blockchain.rpc.max_batch calls and
+ * the batches are sent concurrently, up to blockchain.rpc.max_in_flight at a
+ * time. Nonces are assigned locally from a counter seeded by the node, so
+ * submitting does not cost a round trip per bid; after a failure the counter
+ * is re-seeded before the next submission, but never moves below nonces it
+ * already handed out, since out-of-order batches may have used them.
+ * Submission is at-least-once: a failed call fails the whole submission,
+ * and when the caller retries, bids from the batches that did land are
+ * sent again under new nonces, so the node may hold a bid more than once.
+ */
+public class RpcLedgerClient {
+    private static final LoggerUtil logger = LoggerUtil.getLogger(RpcLedgerClient.class);
+    private static final long UNKNOWN_NONCE = -1;
+
+    private final JsonRpcClient rpc;
+    private final String account;
+    private final int maxBatch;
+    private final long requestTimeoutMs;
+    private long nextNonce = UNKNOWN_NONCE;
+    private boolean reseed;
+
+    public RpcLedgerClient(JsonRpcClient rpc, String account, int maxBatch, long requestTimeoutMs) {
+        this.rpc = rpc;
+        this.account = account;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.requestTimeoutMs = requestTimeoutMs;
+    }
+
+    /**
+     * Create a client for blockchain.endpoint from the blockchain.rpc.* settings
+     */
+    public static RpcLedgerClient fromConfig() {
+        ConfigManager config = ConfigManager.getInstance();
+        long requestTimeoutMs = config.getLongProperty("blockchain.rpc.request_timeout_ms", 10000L);
+        JsonRpcClient rpc = new JsonRpcClient(
+            URI.create(config.getProperty("blockchain.endpoint", "http://localhost:8545")),
+            Math.max(1, config.getIntProperty("blockchain.rpc.max_in_flight", 4)),
+            config.getLongProperty("blockchain.rpc.acquire_timeout_ms", 5000L),
+            requestTimeoutMs);
+        return new RpcLedgerClient(rpc,
+            config.getProperty("blockchain.rpc.account", "gridlocked-cryptizer"),
+            config.getIntProperty("blockchain.rpc.max_batch", 100),
+            requestTimeoutMs);
+    }
+
+    /**
+     * Submit bids and wait until the node has accepted all of them
+     * If this throws, some of the bids may still have been accepted.
+     *
+     * @param records the bids' canonical records, packed back to back
+     * @param count the number of bids
+     * @return the node's transaction hash for each bid, in order
+     * @throws Exception if the node rejects any batch, times out or is saturated
+     */
+    public List<String> submitBids(byte[] records, int count) throws Exception {
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+
+        long firstNonce = reserveNonces(count);
+        List<CompletableFuture<List<Object>>> batches = new ArrayList<>();
+        try {
+            for (int from = 0; from < count; from += maxBatch) {
+                int to = Math.min(count, from + maxBatch);
+                List<JsonRpcClient.Call> calls = new ArrayList<>(to - from);
+                for (int i = from; i < to; i++) {
+                    calls.add(new JsonRpcClient.Call("ledger_submitBid",
+                        Collections.singletonList(toParams(records, i * BidRecord.LENGTH, firstNonce + i))));
+                }
+                // Blocks here when max_in_flight batches are already outstanding
+                batches.add(rpc.callBatch(calls));
+            }
+
+            List<String> hashes = new ArrayList<>(count);
+            for (CompletableFuture<List<Object>> batch : batches) {
+                for (Object result : batch.get(requestTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    hashes.add(String.valueOf(result));
+                }
+            }
+            return hashes;
+        } catch (ExecutionException | TimeoutException | RuntimeException e) {
+            // Some nonces may be used and others not; check with the node before the next submission
+            invalidateNonce();
+            for (CompletableFuture<List<Object>> batch : batches) {
+                batch.cancel(true);
+            }
+            if (e instanceof ExecutionException && e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // The bid travels as its canonical record, the same bytes the ledger hashed and stored
+    private Map<String, Object> toParams(byte[] records, int offset, long nonce) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("from", account);
+        params.put("nonce", nonce);
+        params.put("record", new String(Base64.getEncoder().encode(
+            ByteBuffer.wrap(records, offset, BidRecord.LENGTH)).array(), StandardCharsets.US_ASCII));
+        return params;
+    }
+
+    // Take a contiguous range of nonces, seeding the counter from the node when needed
+    private synchronized long reserveNonces(int count) throws Exception {
+        if (nextNonce == UNKNOWN_NONCE || reseed) {
+            Object result = rpc.call("ledger_getNonce", Collections.singletonList(account))
+                .get(requestTimeoutMs, TimeUnit.MILLISECONDS);
+            // The node reports its lowest unused nonce; batches that landed out of order used some above it
+            nextNonce = Math.max(((Number) result).longValue(), nextNonce);
+            reseed = false;
+            logger.info("Ledger nonce for " + account + " seeded at " + nextNonce);
+        }
+        long first = nextNonce;
+        nextNonce += count;
+        return first;
+    }
+
+    private synchronized void invalidateNonce() {
+        reseed = true;
+    }
+
+    /**
+     * Get the underlying client's statistics
+     */
+    public JsonRpcClient.RpcStats getStats() {
+        return rpc.getStats();
+    }
+
+    /**
+     * Stop the client's threads
+     */
+    public void close() {
+        rpc.close();
+    }
+}
@@ -0,0 +1,263 @@
+package dao;
+
+import model.Bidder;
+import model.Vehicle;
+import util.BidStageEvent;
+import util.ConfigManager;
+import util.LoggerUtil;
+import util.SessionManager;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Asynchronous facade over DatabaseConnection.
+ * Every call runs on a virtual thread when the runtime has them, otherwise on
+ * a cached pool of daemon threads, and returns a CompletableFuture that fails
+ * with a TimeoutException after db.async.timeout_ms. Cancelling a future, or
+ * letting it time out, interrupts the call if it is still running, which
+ * abandons a wait for a pooled connection.
+ */
+public class AsyncDatabaseConnection {
+    private static final LoggerUtil logger = LoggerUtil.getLogger(AsyncDatabaseConnection.class);
+    private static final ExecutorService executor = createExecutor();
+
+    private AsyncDatabaseConnection() {
+    }
+
+    // Prefer one virtual thread per call; fall back to platform threads on runtimes without them
+    private static ExecutorService createExecutor() {
+        try {
+            ExecutorService virtual = (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            logger.info("Database calls run on virtual threads");
+            return virtual;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.info("Virtual threads unavailable, database calls run on a cached thread pool");
+            AtomicInteger threadCount = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "db-async-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    private static long defaultTimeoutMs() {
+        return ConfigManager.getInstance().getLongProperty("db.async.timeout_ms", 10000L);
+    }
+
+    // Check that a connection can be opened and answers
+    public static CompletableFuture<Void> checkConnection() {
+        return supply(() -> {
+            try (Connection conn = DatabaseConnection.getConnection()) {
+                if (!conn.isValid(5)) {
+                    throw new SQLException("Database connection is not responding");
+                }
+                return null;
+            }
+        }, defaultTimeoutMs());
+    }
+
+    // Log in and return the session token with its bidder, or null if the credentials are wrong
+    public static CompletableFuture<SessionLogin> login(String username, String password) {
+        return supply(() -> {
+            String token = DatabaseConnection.login(username, password);
+            Bidder bidder = token != null ? DatabaseConnection.getSessionBidder(token) : null;
+            return bidder != null ? new SessionLogin(token, bidder) : null;
+        }, defaultTimeoutMs());
+    }
+
+    // End a session
+    public static CompletableFuture<Void> logout(String sessionToken) {
+        return supply(() -> {
+            DatabaseConnection.logout(sessionToken);
+            return null;
+        }, defaultTimeoutMs());
+    }
+
+    // Register a new bidder
+    public static CompletableFuture<Boolean> registerBidder(String username, String password, String email) {
+        return supply(() -> DatabaseConnection.registerBidder(username, password, email), defaultTimeoutMs());
+    }
+
+    // Get the bidder behind a session token, or null if the session is not valid
+    public static CompletableFuture<Bidder> getSessionBidder(String sessionToken) {
+        return supply(() -> DatabaseConnection.getSessionBidder(sessionToken), defaultTimeoutMs());
+    }
+
+    // Get all vehicles
+    public static CompletableFuture<List<Vehicle>> getVehicles() {
+        return getVehicles(defaultTimeoutMs());
+    }
+
+    // Get all vehicles, failing after timeoutMs
+    public static CompletableFuture<List<Vehicle>> getVehicles(long timeoutMs) {
+        return supply(DatabaseConnection::getVehicles, timeoutMs);
+    }
+
+    // Get the current highest bid for a vehicle
+    public static CompletableFuture<Double> getHighestBid(int vehicleId) {
+        return supply(() -> DatabaseConnection.getHighestBid(vehicleId), defaultTimeoutMs());
+    }
+
+    // Place a bid on behalf of a session
+    public static CompletableFuture<BidResult> placeBid(String sessionToken, int vehicleId, double bidAmount) {
+        return placeBid(sessionToken, vehicleId, bidAmount, defaultTimeoutMs());
+    }
+
+    /**
+     * Place a bid on behalf of a session, failing after timeoutMs.
+     * A bid that times out may still be written afterwards, so callers
+     * should refresh the highest bid rather than assume it was lost.
+     */
+    public static CompletableFuture<BidResult> placeBid(String sessionToken, int vehicleId, double bidAmount,
+                                                        long timeoutMs) {
+        return placeBid(BidStageEvent.nextCorrelationId(), sessionToken, vehicleId, bidAmount, timeoutMs);
+    }
+
+    // Place a bid whose flight recorder events carry the given correlation ID
+    public static CompletableFuture<BidResult> placeBid(long correlationId, String sessionToken, int vehicleId,
+                                                        double bidAmount) {
+        return placeBid(correlationId, sessionToken, vehicleId, bidAmount, defaultTimeoutMs());
+    }
+
+    /**
+     * Place a bid whose flight recorder events carry the given correlation ID, failing after timeoutMs
+     */
+    public static CompletableFuture<BidResult> placeBid(long correlationId, String sessionToken, int vehicleId,
+                                                        double bidAmount, long timeoutMs) {
+        // Group-commit bids complete when their batch is flushed, without holding a thread
+        CompletableFuture<CompletableFuture<BidResult>> submitted = supply(() -> {
+            SessionManager.Session session = SessionManager.getInstance().validate(sessionToken);
+            if (session == null) {
+                return CompletableFuture.completedFuture(BidResult.unauthorized(vehicleId, bidAmount));
+            }
+            return DatabaseConnection.submitBid(correlationId, session.getBidderId(), vehicleId, bidAmount);
+        }, timeoutMs);
+        return withTimeout(submitted.thenCompose(bid -> bid), timeoutMs, null);
+    }
+
+    /**
+     * Run a DAO call off the calling thread.
+     * The future fails with TimeoutException after timeoutMs, or with
+     * RejectedExecutionException if the facade has been shut down.
+     */
+    public static <T> CompletableFuture<T> supply(Callable<T> call, long timeoutMs) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        AtomicReference<Thread> worker = new AtomicReference<>();
+        try {
+            executor.execute(() -> {
+                // Cancelled or timed out while queued
+                if (future.isDone()) return;
+                worker.set(Thread.currentThread());
+                try {
+                    future.complete(call.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    synchronized (worker) {
+                        worker.set(null);
+                        // Clear an interrupt aimed at this call before the thread is reused
+                        Thread.interrupted();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        return withTimeout(future, timeoutMs, worker);
+    }
+
+    // Fail the future after timeoutMs and interrupt the worker if it gives up early
+    private static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeoutMs,
+                                                        AtomicReference<Thread> worker) {
+        if (timeoutMs > 0) {
+            future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        if (worker != null) {
+            future.whenComplete((result, error) -> {
+                if (isTimeoutOrCancel(error)) {
+                    synchronized (worker) {
+                        Thread running = worker.get();
+                        if (running != null) {
+                            running.interrupt();
+                        }
+                    }
+                }
+            });
+        }
+        return future;
+    }
+
+    private static boolean isTimeoutOrCancel(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof TimeoutException || cause instanceof CancellationException;
+    }
+
+    /**
+     * Unwrap the CompletionException around a failed call's cause
+     */
+    public static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * Describe a failed call for the user
+     */
+    public static String describe(Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof TimeoutException) {
+            return "The database did not respond in time.";
+        }
+        if (cause instanceof SQLException || cause instanceof RejectedExecutionException) {
+            return "The database is unavailable: " + cause.getMessage();
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.toString();
+    }
+
+    // Stop accepting calls and wait briefly for running ones
+    public static void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A successful login: the session token and the bidder it belongs to
+     */
+    public static class SessionLogin {
+        private final String sessionToken;
+        private final Bidder bidder;
+
+        SessionLogin(String sessionToken, Bidder bidder) {
+            this.sessionToken = sessionToken;
+            this.bidder = bidder;
+        }
+
+        public String getSessionToken() { return sessionToken; }
+        public Bidder getBidder() { return bidder; }
+    }
+}
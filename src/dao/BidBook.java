@@ -0,0 +1,279 @@
+package dao;
+
+import util.LoggerUtil;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory book of the highest bid per vehicle.
+ * Warmed from the bids table once and kept current by placeBid, so the
+ * current highest bid can be read without a database round trip.
+ * Bids queued for group commit are held as claims apart from the committed
+ * highest bid: a claim counts towards the highest bid until it is either
+ * committed or released, in whatever order its batch completes, and
+ * reconciliation only ever corrects the committed value.
+ */
+public class BidBook {
+    private static final LoggerUtil logger = LoggerUtil.getLogger(BidBook.class);
+
+    private static final String SNAPSHOT_SQL =
+        "SELECT v.*, b.highest_bid " +
+        "FROM vehicles v LEFT JOIN " +
+        "(SELECT vehicle_id, MAX(bid_amount) AS highest_bid FROM bids GROUP BY vehicle_id) b " +
+        "ON b.vehicle_id = v.vehicle_id";
+
+    private final Map<Integer, Double> startingBids = new ConcurrentHashMap<>();
+    private final Map<Integer, Double> highestBids = new ConcurrentHashMap<>();
+    // Amounts claimed but not yet committed, ascending; replaced whole on every change
+    private final Map<Integer, double[]> claims = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> auctionEnds = new ConcurrentHashMap<>();
+    private volatile boolean warm = false;
+    private ScheduledExecutorService reconciler;
+
+    /**
+     * Load the starting and highest bid of every vehicle
+     *
+     * @param conn the connection to read from
+     */
+    public void warm(Connection conn) throws SQLException {
+        long start = System.currentTimeMillis();
+        int count = 0;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(SNAPSHOT_SQL)) {
+            boolean hasAuctionEnd = hasColumn(rs, "auction_end");
+            while (rs.next()) {
+                int vehicleId = loadVehicle(rs, hasAuctionEnd);
+                double highestBid = rs.getDouble("highest_bid");
+                if (!rs.wasNull()) {
+                    highestBids.merge(vehicleId, highestBid, Math::max);
+                }
+                count++;
+            }
+        }
+        warm = true;
+        logger.info("Bid book warmed with " + count + " vehicles in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    // Load the starting bid and auction end of the current row
+    private int loadVehicle(ResultSet rs, boolean hasAuctionEnd) throws SQLException {
+        int vehicleId = rs.getInt("vehicle_id");
+        startingBids.put(vehicleId, rs.getDouble("starting_bid"));
+        if (hasAuctionEnd) {
+            Timestamp auctionEnd = rs.getTimestamp("auction_end");
+            if (auctionEnd != null) {
+                auctionEnds.put(vehicleId, auctionEnd.getTime());
+            } else {
+                auctionEnds.remove(vehicleId);
+            }
+        }
+        return vehicleId;
+    }
+
+    // Older schemas have no auction_end column
+    private static boolean hasColumn(ResultSet rs, String column) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (column.equalsIgnoreCase(metaData.getColumnLabel(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether the book has been loaded
+     */
+    public boolean isWarm() {
+        return warm;
+    }
+
+    /**
+     * Get the current highest bid, or the starting bid if there are no bids
+     *
+     * @param vehicleId the ID of the vehicle
+     * @return the highest bid, or null if the vehicle is unknown
+     */
+    public Double getHighestBid(int vehicleId) {
+        Double highestBid = getRecordedBid(vehicleId);
+        return highestBid != null ? highestBid : startingBids.get(vehicleId);
+    }
+
+    /**
+     * Check whether the vehicle is known to the book
+     */
+    public boolean containsVehicle(int vehicleId) {
+        return startingBids.containsKey(vehicleId);
+    }
+
+    /**
+     * Check whether bidding on the vehicle has ended
+     */
+    public boolean isAuctionClosed(int vehicleId) {
+        Long auctionEnd = auctionEnds.get(vehicleId);
+        return auctionEnd != null && System.currentTimeMillis() >= auctionEnd;
+    }
+
+    /**
+     * Register a vehicle and its starting bid
+     */
+    public void putVehicle(int vehicleId, double startingBid) {
+        startingBids.put(vehicleId, startingBid);
+    }
+
+    /**
+     * Record a committed bid. The highest bid only ever moves up.
+     */
+    public void recordBid(int vehicleId, double bidAmount) {
+        highestBids.merge(vehicleId, bidAmount, Math::max);
+    }
+
+    /**
+     * Claim the top spot for a bid ahead of its insert. The caller must have
+     * checked the bid against getHighestBid under the vehicle's lock.
+     */
+    public void claimBid(int vehicleId, double bidAmount) {
+        claims.compute(vehicleId, (id, amounts) -> {
+            if (amounts == null) {
+                return new double[] {bidAmount};
+            }
+            double[] grown = Arrays.copyOf(amounts, amounts.length + 1);
+            grown[amounts.length] = bidAmount;
+            return grown;
+        });
+    }
+
+    /**
+     * Turn a claim into a committed bid
+     */
+    public void commitClaim(int vehicleId, double bidAmount) {
+        // Record first so the highest bid never dips between the two steps
+        recordBid(vehicleId, bidAmount);
+        releaseClaim(vehicleId, bidAmount);
+    }
+
+    /**
+     * Drop a claim whose insert failed. The highest bid falls back to the
+     * best of the remaining claims and the committed bids.
+     */
+    public void releaseClaim(int vehicleId, double bidAmount) {
+        claims.computeIfPresent(vehicleId, (id, amounts) -> {
+            for (int i = 0; i < amounts.length; i++) {
+                if (amounts[i] == bidAmount) {
+                    if (amounts.length == 1) {
+                        return null;
+                    }
+                    double[] shrunk = new double[amounts.length - 1];
+                    System.arraycopy(amounts, 0, shrunk, 0, i);
+                    System.arraycopy(amounts, i + 1, shrunk, i, amounts.length - i - 1);
+                    return shrunk;
+                }
+            }
+            return amounts;
+        });
+    }
+
+    /**
+     * Get the highest recorded bid, including claims and ignoring the starting bid
+     *
+     * @return the highest bid, or null if there are no bids
+     */
+    public Double getRecordedBid(int vehicleId) {
+        Double committed = highestBids.get(vehicleId);
+        double[] amounts = claims.get(vehicleId);
+        if (amounts == null) {
+            return committed;
+        }
+        double claimed = amounts[amounts.length - 1];
+        return committed == null || claimed > committed ? claimed : committed;
+    }
+
+    /**
+     * Compare the committed bids in the book against the database and correct
+     * any drift. Claims still waiting for group commit are not touched.
+     * Entries that change while the snapshot is being read are left alone,
+     * since a concurrent bid is newer than the snapshot.
+     *
+     * @param conn the connection to read from
+     * @return the number of vehicles whose highest bid had drifted
+     */
+    public int reconcile(Connection conn) throws SQLException {
+        Map<Integer, Double> before = new HashMap<>(highestBids);
+        int drift = 0;
+
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(SNAPSHOT_SQL)) {
+            boolean hasAuctionEnd = hasColumn(rs, "auction_end");
+            while (rs.next()) {
+                int vehicleId = loadVehicle(rs, hasAuctionEnd);
+                double dbHighest = rs.getDouble("highest_bid");
+                boolean hasBids = !rs.wasNull();
+
+                Double seen = before.get(vehicleId);
+                if (!hasBids) {
+                    if (seen != null && highestBids.remove(vehicleId, seen)) {
+                        logger.warn("Bid book drift on vehicle " + vehicleId + ": book=" + seen + ", database=none");
+                        drift++;
+                    }
+                } else if (seen == null) {
+                    if (highestBids.putIfAbsent(vehicleId, dbHighest) == null) {
+                        logger.warn("Bid book drift on vehicle " + vehicleId + ": book=none, database=" + dbHighest);
+                        drift++;
+                    }
+                } else if (seen != dbHighest && highestBids.replace(vehicleId, seen, dbHighest)) {
+                    logger.warn("Bid book drift on vehicle " + vehicleId + ": book=" + seen + ", database=" + dbHighest);
+                    drift++;
+                }
+            }
+        }
+        return drift;
+    }
+
+    /**
+     * Periodically reconcile the book in the background
+     *
+     * @param connections supplies a connection for each pass
+     * @param intervalMs the time between passes
+     */
+    public synchronized void startReconciler(Callable<Connection> connections, long intervalMs) {
+        if (reconciler != null || intervalMs <= 0) return;
+
+        reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bid-book-reconciler");
+            t.setDaemon(true);
+            return t;
+        });
+        reconciler.scheduleWithFixedDelay(() -> {
+            try (Connection conn = connections.call()) {
+                int drift = reconcile(conn);
+                if (drift > 0) {
+                    logger.warn("Bid book reconciliation corrected " + drift + " vehicles");
+                }
+            } catch (Exception e) {
+                logger.error("Bid book reconciliation failed", e);
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop background reconciliation
+     */
+    public synchronized void stopReconciler() {
+        if (reconciler != null) {
+            reconciler.shutdownNow();
+            reconciler = null;
+        }
+    }
+}
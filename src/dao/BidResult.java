@@ -0,0 +1,83 @@
+package dao;
+
+/**
+ * Outcome of a bid placement.
+ * A rejected bid carries the current highest bid so callers can report it
+ * without another query.
+ */
+public class BidResult {
+    public enum Status {
+        ACCEPTED,
+        OUTBID,
+        AUCTION_CLOSED,
+        UNKNOWN_VEHICLE,
+        UNAUTHORIZED,
+        FAILED
+    }
+
+    private final Status status;
+    private final int vehicleId;
+    private final double bidAmount;
+    private final double highestBid;
+    private final String blockchainHash;
+    private final String message;
+
+    private BidResult(Status status, int vehicleId, double bidAmount, double highestBid,
+                      String blockchainHash, String message) {
+        this.status = status;
+        this.vehicleId = vehicleId;
+        this.bidAmount = bidAmount;
+        this.highestBid = highestBid;
+        this.blockchainHash = blockchainHash;
+        this.message = message;
+    }
+
+    // The ledger receipt is null while the bid is still waiting in the ledger outbox
+    public static BidResult accepted(int vehicleId, double bidAmount, String blockchainHash) {
+        return new BidResult(Status.ACCEPTED, vehicleId, bidAmount, bidAmount, blockchainHash, null);
+    }
+
+    public static BidResult outbid(int vehicleId, double bidAmount, double highestBid) {
+        return new BidResult(Status.OUTBID, vehicleId, bidAmount, highestBid, null, null);
+    }
+
+    public static BidResult auctionClosed(int vehicleId, double bidAmount, double highestBid) {
+        return new BidResult(Status.AUCTION_CLOSED, vehicleId, bidAmount, highestBid, null, null);
+    }
+
+    public static BidResult unknownVehicle(int vehicleId, double bidAmount) {
+        return new BidResult(Status.UNKNOWN_VEHICLE, vehicleId, bidAmount, 0.0, null, null);
+    }
+
+    public static BidResult unauthorized(int vehicleId, double bidAmount) {
+        return new BidResult(Status.UNAUTHORIZED, vehicleId, bidAmount, 0.0, null, "Session expired or invalid");
+    }
+
+    public static BidResult failed(int vehicleId, double bidAmount, String message) {
+        return new BidResult(Status.FAILED, vehicleId, bidAmount, 0.0, null, message);
+    }
+
+    public Status getStatus() { return status; }
+    public int getVehicleId() { return vehicleId; }
+    public double getBidAmount() { return bidAmount; }
+    public double getHighestBid() { return highestBid; }
+    public String getBlockchainHash() { return blockchainHash; }
+    public String getMessage() { return message; }
+
+    public boolean isAccepted() {
+        return status == Status.ACCEPTED;
+    }
+
+    /**
+     * How far the bid fell short of the current highest bid
+     */
+    public double getOutbidBy() {
+        return status == Status.OUTBID ? highestBid - bidAmount : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return "BidResult[" + status + ", vehicle=" + vehicleId + ", bid=" + bidAmount
+            + ", highest=" + highestBid + (message != null ? ", " + message : "") + "]";
+    }
+}
@@ -0,0 +1,300 @@
+package dao;
+
+import util.BidStageEvent;
+import util.LoggerUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Group-commit writer for accepted bids.
+ * Bids are queued and written by a single flusher thread in JDBC batches,
+ * one transaction per batch, when the batch is full or the delay expires.
+ * With rewriteBatchedStatements=true on the JDBC URL the driver sends each
+ * batch as a multi-row insert. Each batch also writes the bids' ledger
+ * outbox rows, so the ledger relay picks them up once the batch commits.
+ */
+public class BidWriter {
+    private static final LoggerUtil logger = LoggerUtil.getLogger(BidWriter.class);
+    private static final String INSERT_SQL =
+        "INSERT INTO bids (bidder_id, vehicle_id, bid_amount) VALUES (?, ?, ?)";
+
+    private final Callable<Connection> connections;
+    private final BlockingQueue<PendingBid> queue;
+    private volatile int maxBatchSize;
+    private final long maxDelayNanos;
+    private final long enqueueTimeoutMs;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    // Statistics
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong bidsWritten = new AtomicLong();
+    private final AtomicLong bidsFailed = new AtomicLong();
+    private final AtomicLong maxBatch = new AtomicLong();
+    private final AtomicLong flushNanosTotal = new AtomicLong();
+    private final AtomicLong flushNanosMax = new AtomicLong();
+
+    /**
+     * @param connections supplies a connection for each flush
+     * @param queueCapacity the maximum number of bids waiting to be written
+     * @param maxBatchSize the number of bids that triggers a flush
+     * @param maxDelayMs how long the first bid in a batch may wait for company
+     * @param enqueueTimeoutMs how long submit blocks when the queue is full
+     */
+    public BidWriter(Callable<Connection> connections, int queueCapacity, int maxBatchSize,
+                     long maxDelayMs, long enqueueTimeoutMs) {
+        this.connections = connections;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.enqueueTimeoutMs = enqueueTimeoutMs;
+
+        flusher = new Thread(this::run, "bid-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+        logger.info("Group commit enabled (batch=" + maxBatchSize + ", delay=" + maxDelayMs + "ms)");
+    }
+
+    /**
+     * Queue a bid for insertion
+     *
+     * @return a future that completes once the bid has been committed
+     */
+    public CompletableFuture<Void> submit(long correlationId, int bidderId, int vehicleId, double bidAmount) {
+        PendingBid bid = new PendingBid(correlationId, bidderId, vehicleId, bidAmount);
+        if (!running) {
+            bid.durable.completeExceptionally(new SQLException("Bid writer is shut down"));
+            return bid.durable;
+        }
+        try {
+            if (!queue.offer(bid, enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                bidsFailed.incrementAndGet();
+                bid.durable.completeExceptionally(new SQLException("Bid queue is full"));
+            } else if (!running && queue.remove(bid)) {
+                // Shut down while offering: the flusher may already have exited, so nobody else will write it
+                bid.durable.completeExceptionally(new SQLException("Bid writer is shut down"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            bid.durable.completeExceptionally(e);
+        }
+        return bid.durable;
+    }
+
+    /**
+     * Change the number of bids that triggers a flush, from the next batch on
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch size: " + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    private void run() {
+        List<PendingBid> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingBid first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+
+                batch.add(first);
+                int maxBatchSize = this.maxBatchSize;
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) continue;
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || !running) break;
+                    PendingBid next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                // Shutdown requested; keep draining until the queue is empty
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Write one batch in a single transaction
+    private void flush(List<PendingBid> batch) {
+        long start = System.nanoTime();
+        BidStageEvent[] events = BidStageEvent.isRecording() ? new BidStageEvent[batch.size()] : new BidStageEvent[0];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = BidStageEvent.start(BidStageEvent.DB_INSERT, batch.get(i).correlationId);
+        }
+        List<Integer> bidIds = new ArrayList<>(batch.size());
+        try (Connection conn = connections.call()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (PendingBid bid : batch) {
+                    stmt.setInt(1, bid.bidderId);
+                    stmt.setInt(2, bid.vehicleId);
+                    stmt.setDouble(3, bid.bidAmount);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    while (keys.next()) {
+                        bidIds.add(keys.getInt(1));
+                    }
+                }
+                if (bidIds.size() != batch.size()) {
+                    throw new SQLException("Expected " + batch.size() + " bid IDs, got " + bidIds.size());
+                }
+                LedgerOutbox.enqueue(conn, bidIds);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+            recordFlush(batch.size(), System.nanoTime() - start);
+            finishEvents(events, batch, bidIds, BidResult.Status.ACCEPTED.name());
+            for (PendingBid bid : batch) {
+                bid.durable.complete(null);
+            }
+        } catch (Exception e) {
+            logger.error("Error writing batch of " + batch.size() + " bids", e);
+            bidsFailed.addAndGet(batch.size());
+            finishEvents(events, batch, null, BidResult.Status.FAILED.name());
+            for (PendingBid bid : batch) {
+                bid.durable.completeExceptionally(e);
+            }
+        }
+    }
+
+    // Each bid in the batch gets its own db_insert event spanning the whole flush
+    private static void finishEvents(BidStageEvent[] events, List<PendingBid> batch, List<Integer> bidIds,
+                                     String outcome) {
+        for (int i = 0; i < events.length; i++) {
+            PendingBid bid = batch.get(i);
+            events[i].finish(bid.vehicleId, bid.bidderId, bidIds != null ? bidIds.get(i) : 0, outcome);
+        }
+    }
+
+    private void recordFlush(int size, long nanos) {
+        batches.incrementAndGet();
+        bidsWritten.addAndGet(size);
+        maxBatch.accumulateAndGet(size, Math::max);
+        flushNanosTotal.addAndGet(nanos);
+        flushNanosMax.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Stop accepting bids and wait for the queue to drain
+     */
+    public void shutdown(long timeoutMs) {
+        running = false;
+        try {
+            flusher.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive()) {
+            logger.warn("Bid writer did not drain within " + timeoutMs + "ms, " + queue.size() + " bids pending");
+            return;
+        }
+        // Bids that slipped in after the flusher's last look at the queue
+        List<PendingBid> stranded = new ArrayList<>();
+        queue.drainTo(stranded);
+        for (PendingBid bid : stranded) {
+            bidsFailed.incrementAndGet();
+            bid.durable.completeExceptionally(new SQLException("Bid writer is shut down"));
+        }
+        logger.info("Bid writer drained: " + getStats());
+    }
+
+    /**
+     * Get a snapshot of the writer statistics
+     */
+    public WriterStats getStats() {
+        long batchCount = batches.get();
+        return new WriterStats(
+            batchCount,
+            bidsWritten.get(),
+            bidsFailed.get(),
+            queue.size(),
+            batchCount == 0 ? 0.0 : (double) bidsWritten.get() / batchCount,
+            maxBatch.get(),
+            batchCount == 0 ? 0 : flushNanosTotal.get() / batchCount / 1000,
+            flushNanosMax.get() / 1000
+        );
+    }
+
+    private static final class PendingBid {
+        private final long correlationId;
+        private final int bidderId;
+        private final int vehicleId;
+        private final double bidAmount;
+        private final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        PendingBid(long correlationId, int bidderId, int vehicleId, double bidAmount) {
+            this.correlationId = correlationId;
+            this.bidderId = bidderId;
+            this.vehicleId = vehicleId;
+            this.bidAmount = bidAmount;
+        }
+    }
+
+    /**
+     * Immutable snapshot of writer statistics. Latencies are in microseconds.
+     */
+    public static class WriterStats {
+        private final long batches;
+        private final long bidsWritten;
+        private final long bidsFailed;
+        private final int queueDepth;
+        private final double averageBatchSize;
+        private final long maxBatchSize;
+        private final long averageFlushMicros;
+        private final long maxFlushMicros;
+
+        WriterStats(long batches, long bidsWritten, long bidsFailed, int queueDepth, double averageBatchSize,
+                    long maxBatchSize, long averageFlushMicros, long maxFlushMicros) {
+            this.batches = batches;
+            this.bidsWritten = bidsWritten;
+            this.bidsFailed = bidsFailed;
+            this.queueDepth = queueDepth;
+            this.averageBatchSize = averageBatchSize;
+            this.maxBatchSize = maxBatchSize;
+            this.averageFlushMicros = averageFlushMicros;
+            this.maxFlushMicros = maxFlushMicros;
+        }
+
+        public long getBatches() { return batches; }
+        public long getBidsWritten() { return bidsWritten; }
+        public long getBidsFailed() { return bidsFailed; }
+        public int getQueueDepth() { return queueDepth; }
+        public double getAverageBatchSize() { return averageBatchSize; }
+        public long getMaxBatchSize() { return maxBatchSize; }
+        public long getAverageFlushMicros() { return averageFlushMicros; }
+        public long getMaxFlushMicros() { return maxFlushMicros; }
+
+        @Override
+        public String toString() {
+            return "batches=" + batches + ", written=" + bidsWritten + ", failed=" + bidsFailed
+                + ", queued=" + queueDepth + ", batchSize avg=" + String.format("%.1f", averageBatchSize)
+                + " max=" + maxBatchSize + ", flush(us) avg=" + averageFlushMicros + " max=" + maxFlushMicros;
+        }
+    }
+}
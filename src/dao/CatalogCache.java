@@ -0,0 +1,300 @@
+package dao;
+
+import model.Vehicle;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of the vehicle catalog.
+ * Vehicles are cached individually with a TTL and an LRU size bound, and the
+ * catalog keeps the list of vehicle IDs in order. A successful bid
+ * invalidates only the vehicle it was placed on. Concurrent misses for the
+ * same data share a single load.
+ */
+public class CatalogCache {
+    /**
+     * Loads vehicles from the database
+     */
+    public interface Loader {
+        List<Vehicle> loadAll() throws SQLException;
+
+        List<Vehicle> load(Collection<Integer> vehicleIds) throws SQLException;
+    }
+
+    private interface Query {
+        List<Vehicle> run() throws SQLException;
+    }
+
+    private final Loader loader;
+    private volatile long ttlMs;
+    private final int maxEntries;
+    private final Map<Integer, Entry> entries;
+    private volatile Catalog catalog;
+
+    // Invalidation epochs: a load may only cache vehicles not invalidated since it started
+    private final AtomicLong epoch = new AtomicLong();
+    private final Map<Integer, Long> invalidatedAt = new ConcurrentHashMap<>();
+    private final Map<Object, CompletableFuture<List<Vehicle>>> inFlight = new ConcurrentHashMap<>();
+
+    // Statistics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    /**
+     * @param loader loads vehicles on a miss
+     * @param ttlMs how long a loaded vehicle may be served
+     * @param maxEntries the maximum number of vehicles kept
+     */
+    public CatalogCache(Loader loader, long ttlMs, int maxEntries) {
+        this.loader = loader;
+        this.ttlMs = ttlMs;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Integer, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Change how long loaded vehicles may be served; applies to entries
+     * already cached as well
+     */
+    public void setTtlMs(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Get every vehicle in catalog order, loading whatever is missing or expired
+     */
+    public List<Vehicle> getAll() throws SQLException {
+        long now = System.currentTimeMillis();
+        long ttlMs = this.ttlMs;
+        Catalog snapshot = catalog;
+
+        // A catalog larger than the cache can only be served by the loader
+        if (snapshot != null && now - snapshot.loadedAt < ttlMs && snapshot.vehicleIds.length <= maxEntries) {
+            List<Vehicle> vehicles = new ArrayList<>(snapshot.vehicleIds.length);
+            List<Integer> missing = new ArrayList<>();
+            synchronized (entries) {
+                for (int vehicleId : snapshot.vehicleIds) {
+                    Entry entry = entries.get(vehicleId);
+                    if (entry == null || now - entry.loadedAt >= ttlMs) {
+                        missing.add(vehicleId);
+                    } else {
+                        vehicles.add(copy(entry.vehicle));
+                    }
+                }
+            }
+
+            if (missing.isEmpty()) {
+                hits.incrementAndGet();
+                return vehicles;
+            }
+
+            // Only some vehicles were invalidated: reload just those
+            misses.incrementAndGet();
+            load(missing, () -> loader.load(missing));
+            return assemble(snapshot.vehicleIds);
+        }
+
+        misses.incrementAndGet();
+        return loadCatalog(now);
+    }
+
+    // Reload the whole catalog and its order
+    private List<Vehicle> loadCatalog(long now) throws SQLException {
+        List<Vehicle> loaded = load("all", loader::loadAll);
+        int[] vehicleIds = new int[loaded.size()];
+        for (int i = 0; i < vehicleIds.length; i++) {
+            vehicleIds[i] = loaded.get(i).getVehicleId();
+        }
+        catalog = new Catalog(vehicleIds, now);
+
+        List<Vehicle> vehicles = new ArrayList<>(loaded.size());
+        for (Vehicle vehicle : loaded) {
+            vehicles.add(copy(vehicle));
+        }
+        return vehicles;
+    }
+
+    // Build the catalog from cached entries after a partial reload
+    private List<Vehicle> assemble(int[] vehicleIds) throws SQLException {
+        List<Vehicle> vehicles = new ArrayList<>(vehicleIds.length);
+        synchronized (entries) {
+            for (int vehicleId : vehicleIds) {
+                Entry entry = entries.get(vehicleId);
+                if (entry != null) {
+                    vehicles.add(copy(entry.vehicle));
+                }
+            }
+        }
+        if (vehicles.size() < vehicleIds.length) {
+            // Evicted or invalidated again while loading; reload everything
+            return loadCatalog(System.currentTimeMillis());
+        }
+        return vehicles;
+    }
+
+    /**
+     * Drop a vehicle so the next read reloads it
+     */
+    public void invalidate(int vehicleId) {
+        invalidatedAt.put(vehicleId, epoch.incrementAndGet());
+        synchronized (entries) {
+            entries.remove(vehicleId);
+        }
+    }
+
+    /**
+     * Drop everything, including the catalog order
+     */
+    public void invalidateAll() {
+        epoch.incrementAndGet();
+        catalog = null;
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    // Load through the in-flight map so concurrent misses share one query.
+    // The key includes the epoch so callers never join a load that started
+    // before an invalidation they observed.
+    private List<Vehicle> load(Object what, Query query) throws SQLException {
+        long startEpoch = epoch.get();
+        List<Object> key = List.of(what, startEpoch);
+
+        CompletableFuture<List<Vehicle>> mine = new CompletableFuture<>();
+        CompletableFuture<List<Vehicle>> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        long start = System.nanoTime();
+        try {
+            List<Vehicle> loaded = query.run();
+            long now = System.currentTimeMillis();
+            synchronized (entries) {
+                for (Vehicle vehicle : loaded) {
+                    Long invalidated = invalidatedAt.get(vehicle.getVehicleId());
+                    if (invalidated == null || invalidated <= startEpoch) {
+                        entries.put(vehicle.getVehicleId(), new Entry(vehicle, now));
+                    }
+                }
+            }
+            loads.incrementAndGet();
+            loadNanos.addAndGet(System.nanoTime() - start);
+            mine.complete(loaded);
+            return loaded;
+        } catch (SQLException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private static List<Vehicle> await(CompletableFuture<List<Vehicle>> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for catalog load", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Catalog load failed", e.getCause());
+        }
+    }
+
+    // Cached vehicles are never handed out directly since Vehicle is mutable
+    private static Vehicle copy(Vehicle vehicle) {
+        Vehicle copy = new Vehicle(vehicle.getVehicleId(), vehicle.getMake(), vehicle.getModel(),
+            vehicle.getYear(), vehicle.getDescription(), vehicle.getStartingBid(),
+            vehicle.getHighestBid(), vehicle.getAuctionEnd());
+        copy.setBlockchainVerificationHash(vehicle.getBlockchainVerificationHash());
+        return copy;
+    }
+
+    /**
+     * Get a snapshot of the cache statistics
+     */
+    public CacheStats getStats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        long loadCount = loads.get();
+        return new CacheStats(hits.get(), misses.get(), loadCount, size,
+            loadCount == 0 ? 0 : loadNanos.get() / loadCount / 1000);
+    }
+
+    private static final class Entry {
+        private final Vehicle vehicle;
+        private final long loadedAt;
+
+        Entry(Vehicle vehicle, long loadedAt) {
+            this.vehicle = vehicle;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private static final class Catalog {
+        private final int[] vehicleIds;
+        private final long loadedAt;
+
+        Catalog(int[] vehicleIds, long loadedAt) {
+            this.vehicleIds = vehicleIds;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * Immutable snapshot of cache statistics. Load time is in microseconds.
+     */
+    public static class CacheStats {
+        private final long hits;
+        private final long misses;
+        private final long loads;
+        private final int size;
+        private final long averageLoadMicros;
+
+        CacheStats(long hits, long misses, long loads, int size, long averageLoadMicros) {
+            this.hits = hits;
+            this.misses = misses;
+            this.loads = loads;
+            this.size = size;
+            this.averageLoadMicros = averageLoadMicros;
+        }
+
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getLoads() { return loads; }
+        public int getSize() { return size; }
+        public long getAverageLoadMicros() { return averageLoadMicros; }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + ", misses=" + misses + ", hitRate=" + String.format("%.2f", getHitRate())
+                + ", loads=" + loads + ", size=" + size + ", avgLoad(us)=" + averageLoadMicros;
+        }
+    }
+}
@@ -0,0 +1,487 @@
+package dao;
+
+import util.ConfigManager;
+import util.LoggerUtil;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded JDBC connection pool.
+ * Connections are opened once and handed out as proxies whose close() returns
+ * them to the pool instead of closing the physical connection. With
+ * db.trace.enabled each physical connection is wrapped by a JdbcTracer.
+ * A connection held past db.pool.leak_threshold_ms is reported with the
+ * borrowing thread; db.pool.leak_trace also captures the borrower's stack,
+ * at the cost of a stack walk on every borrow.
+ */
+public class ConnectionPool {
+    private static final LoggerUtil logger = LoggerUtil.getLogger(ConnectionPool.class);
+    private static final int LATENCY_SAMPLES = 1024;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private volatile int minSize;
+    private volatile int maxSize;
+    private final long idleTimeoutMs;
+    private final long borrowTimeoutMs;
+    private final long validationIntervalMs;
+    private final int validationTimeoutSeconds;
+    private final long leakThresholdMs;
+    private final boolean leakTrace;
+    private final JdbcTracer tracer;
+
+    private final Permits permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> active = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed = false;
+
+    // Statistics
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowTimeouts = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong leaksDetected = new AtomicLong();
+    private final long[] borrowLatencyNanos = new long[LATENCY_SAMPLES];
+    private final AtomicLong latencyCursor = new AtomicLong();
+
+    /**
+     * Create a pool from the db.* and db.pool.* properties in config.properties
+     */
+    public static ConnectionPool fromConfig() {
+        ConfigManager config = ConfigManager.getInstance();
+        return new ConnectionPool(
+            config.getProperty("db.url"),
+            config.getProperty("db.user"),
+            config.getProperty("db.password"),
+            config.getIntProperty("db.pool.min_size", 2),
+            config.getIntProperty("db.pool.max_size", 10),
+            config.getLongProperty("db.pool.idle_timeout_ms", 300000L),
+            config.getLongProperty("db.pool.borrow_timeout_ms", 5000L),
+            config.getLongProperty("db.pool.validation_interval_ms", 500L),
+            config.getIntProperty("db.pool.validation_timeout_s", 2),
+            config.getLongProperty("db.pool.leak_threshold_ms", 30000L),
+            Boolean.parseBoolean(config.getProperty("db.pool.leak_trace", "false").trim()),
+            JdbcTracer.fromConfig()
+        );
+    }
+
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                          long idleTimeoutMs, long borrowTimeoutMs, long validationIntervalMs,
+                          int validationTimeoutSeconds, long leakThresholdMs, boolean leakTrace,
+                          JdbcTracer tracer) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.validationIntervalMs = validationIntervalMs;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.leakThresholdMs = leakThresholdMs;
+        this.leakTrace = leakTrace;
+        this.tracer = tracer;
+        this.permits = new Permits(maxSize);
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000L, Math.min(idleTimeoutMs, leakThresholdMs) / 2);
+        housekeeper.scheduleAtFixedRate(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+
+        logger.info("Connection pool created (min=" + minSize + ", max=" + maxSize + ")"
+            + (tracer != null ? ", tracing statements" : ""));
+    }
+
+    /**
+     * Borrow a connection from the pool. Closing the returned connection
+     * hands it back to the pool.
+     *
+     * @return a pooled connection
+     * @throws SQLException if no connection becomes available within the borrow timeout
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                borrowTimeouts.incrementAndGet();
+                throw new SQLException("Timed out after " + borrowTimeoutMs + "ms waiting for a database connection"
+                    + " (active=" + active.size() + ", max=" + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            PooledConnection pooled = takeValidIdle();
+            if (pooled == null) {
+                pooled = open();
+            }
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowThread = Thread.currentThread().getName();
+            pooled.borrowSite = leakTrace && leakThresholdMs > 0 ? new Throwable("Connection borrowed here") : null;
+            pooled.leakReported = false;
+            active.add(pooled);
+
+            recordBorrowLatency(System.nanoTime() - start);
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // Take the most recently used idle connection, discarding any that fail validation
+    private PooledConnection takeValidIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - pooled.lastReturnedAt < validationIntervalMs) {
+                return pooled;
+            }
+            try {
+                if (pooled.physical.isValid(validationTimeoutSeconds)) {
+                    return pooled;
+                }
+            } catch (SQLException e) {
+                logger.warn("Connection validation failed: " + e.getMessage());
+            }
+            validationFailures.incrementAndGet();
+            discard(pooled);
+        }
+        return null;
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, user, password);
+        if (tracer != null) {
+            physical = tracer.wrap(physical);
+        }
+        totalConnections.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    // Return a leased connection to the pool
+    private void release(PooledConnection pooled) {
+        active.remove(pooled);
+        try {
+            // Connections beyond a reduced maximum are closed as they come back
+            if (closed || pooled.physical.isClosed() || totalConnections.get() > maxSize) {
+                discard(pooled);
+                return;
+            }
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            pooled.lastReturnedAt = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            logger.warn("Discarding connection that could not be reset: " + e.getMessage());
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            logger.warn("Error closing pooled connection: " + e.getMessage());
+        }
+    }
+
+    // Evict idle connections, keep the minimum warm and report leaks
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && totalConnections.get() > minSize) {
+                PooledConnection pooled = it.next();
+                if (now - pooled.lastReturnedAt > idleTimeoutMs && idle.remove(pooled)) {
+                    discard(pooled);
+                }
+            }
+
+            refill(now);
+
+            if (leakThresholdMs > 0) {
+                for (PooledConnection pooled : active) {
+                    if (!pooled.leakReported && now - pooled.borrowedAt > leakThresholdMs) {
+                        pooled.leakReported = true;
+                        leaksDetected.incrementAndGet();
+                        String message = "Possible connection leak: connection held for "
+                            + (now - pooled.borrowedAt) + "ms by thread " + pooled.borrowThread;
+                        if (pooled.borrowSite != null) {
+                            logger.error(message, pooled.borrowSite);
+                        } else {
+                            logger.error(message + " (set db.pool.leak_trace=true to capture where)");
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("Could not refill connection pool: " + e.getMessage());
+        } catch (RuntimeException e) {
+            logger.error("Connection pool housekeeping failed", e);
+        }
+    }
+
+    /**
+     * Change the pool size while it is in use. Growing takes effect at once;
+     * when shrinking, idle connections above the new maximum are closed now
+     * and borrowed ones as they are returned. Connections up to a raised
+     * minimum are opened by the next housekeeping run.
+     */
+    public synchronized void resize(int newMinSize, int newMaxSize) {
+        if (newMaxSize < 1 || newMinSize < 0 || newMinSize > newMaxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + newMinSize + ", max=" + newMaxSize);
+        }
+        int delta = newMaxSize - maxSize;
+        if (delta > 0) {
+            permits.release(delta);
+        } else if (delta < 0) {
+            permits.reducePermits(-delta);
+        }
+        minSize = newMinSize;
+        maxSize = newMaxSize;
+
+        PooledConnection pooled;
+        while (totalConnections.get() > newMaxSize && (pooled = idle.pollLast()) != null) {
+            discard(pooled);
+        }
+        logger.info("Connection pool resized (min=" + newMinSize + ", max=" + newMaxSize + ")");
+    }
+
+    public int getMinSize() { return minSize; }
+    public int getMaxSize() { return maxSize; }
+
+    /**
+     * Open connections up to the minimum size now instead of waiting for housekeeping
+     */
+    public void warm() throws SQLException {
+        refill(System.currentTimeMillis());
+    }
+
+    private void refill(long now) throws SQLException {
+        while (!closed && totalConnections.get() < minSize && permits.tryAcquire()) {
+            try {
+                PooledConnection pooled = open();
+                pooled.lastReturnedAt = now;
+                idle.offerLast(pooled);
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private void recordBorrowLatency(long nanos) {
+        borrowCount.incrementAndGet();
+        int slot = (int) (latencyCursor.getAndIncrement() % LATENCY_SAMPLES);
+        borrowLatencyNanos[slot] = nanos;
+    }
+
+    /**
+     * Get a snapshot of the pool statistics
+     */
+    public PoolStats getStats() {
+        int samples = (int) Math.min(latencyCursor.get(), LATENCY_SAMPLES);
+        long[] latencies = Arrays.copyOf(borrowLatencyNanos, samples);
+        Arrays.sort(latencies);
+        return new PoolStats(
+            totalConnections.get(),
+            active.size(),
+            idle.size(),
+            permits.getQueueLength(),
+            borrowCount.get(),
+            borrowTimeouts.get(),
+            validationFailures.get(),
+            leaksDetected.get(),
+            percentile(latencies, 0.50),
+            percentile(latencies, 0.95),
+            percentile(latencies, 0.99)
+        );
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1000;
+    }
+
+    /**
+     * Close the pool and all idle connections. Connections still in use are
+     * closed when they are returned.
+     */
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        if (tracer != null) {
+            tracer.shutdown();
+        }
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+        logger.info("Connection pool closed");
+    }
+
+    // A fair semaphore whose permit count can be lowered while connections are out
+    private static final class Permits extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        Permits(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    /**
+     * A physical connection owned by the pool
+     */
+    private final class PooledConnection {
+        private final Connection physical;
+        private volatile long borrowedAt;
+        private volatile long lastReturnedAt;
+        private volatile String borrowThread;
+        private volatile Throwable borrowSite;
+        private volatile boolean leakReported;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.lastReturnedAt = System.currentTimeMillis();
+        }
+
+        // Each borrow gets its own proxy so a stale reference cannot touch the next borrower's lease
+        Connection lease() {
+            AtomicBoolean returned = new AtomicBoolean(false);
+            InvocationHandler handler = (proxy, method, args) -> invoke(returned, proxy, method, args);
+            return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+        }
+
+        private Object invoke(AtomicBoolean returned, Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) {
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned.get() || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical + "]";
+                default:
+                    if (returned.get()) {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+
+    /**
+     * Get the statement tracer, or null if db.trace.enabled is off
+     */
+    public JdbcTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Immutable snapshot of pool statistics. Latencies are in microseconds.
+     */
+    public static class PoolStats {
+        private final int total;
+        private final int active;
+        private final int idle;
+        private final int waiters;
+        private final long borrowCount;
+        private final long borrowTimeouts;
+        private final long validationFailures;
+        private final long leaksDetected;
+        private final long borrowP50Micros;
+        private final long borrowP95Micros;
+        private final long borrowP99Micros;
+
+        PoolStats(int total, int active, int idle, int waiters, long borrowCount, long borrowTimeouts,
+                  long validationFailures, long leaksDetected,
+                  long borrowP50Micros, long borrowP95Micros, long borrowP99Micros) {
+            this.total = total;
+            this.active = active;
+            this.idle = idle;
+            this.waiters = waiters;
+            this.borrowCount = borrowCount;
+            this.borrowTimeouts = borrowTimeouts;
+            this.validationFailures = validationFailures;
+            this.leaksDetected = leaksDetected;
+            this.borrowP50Micros = borrowP50Micros;
+            this.borrowP95Micros = borrowP95Micros;
+            this.borrowP99Micros = borrowP99Micros;
+        }
+
+        public int getTotal() { return total; }
+        public int getActive() { return active; }
+        public int getIdle() { return idle; }
+        public int getWaiters() { return waiters; }
+        public long getBorrowCount() { return borrowCount; }
+        public long getBorrowTimeouts() { return borrowTimeouts; }
+        public long getValidationFailures() { return validationFailures; }
+        public long getLeaksDetected() { return leaksDetected; }
+        public long getBorrowP50Micros() { return borrowP50Micros; }
+        public long getBorrowP95Micros() { return borrowP95Micros; }
+        public long getBorrowP99Micros() { return borrowP99Micros; }
+
+        @Override
+        public String toString() {
+            return "total=" + total + ", active=" + active + ", idle=" + idle + ", waiters=" + waiters
+                + ", borrows=" + borrowCount + ", timeouts=" + borrowTimeouts
+                + ", validationFailures=" + validationFailures + ", leaks=" + leaksDetected
+                + ", borrowLatency(us) p50=" + borrowP50Micros + " p95=" + borrowP95Micros
+                + " p99=" + borrowP99Micros;
+        }
+    }
+}
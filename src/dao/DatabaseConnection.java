@@ -2,117 +2,158 @@ package dao;
 
 import model.Bidder;
 import model.Vehicle;
+import util.PasswordHasher;
 import util.SecurityUtil;
+import util.StoredCredential;
 import util.ConfigManager;
+import util.ConfigSnapshot;
 import util.LoggerUtil;
+import util.MetricsRegistry;
+import util.MetricsRegistry.Outcome;
+import util.BidStageEvent;
+import util.SessionManager;
+import blockchain.BidReceipt;
+import blockchain.BidRecord;
 import blockchain.BlockchainService;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class DatabaseConnection {
-    private static boolean driverLoaded = false;
-    private static boolean databaseInitialized = false;
+    private static volatile boolean databaseInitialized = false;
+    private static final Object initLock = new Object();
+    private static volatile ConnectionPool pool;
+    private static final BidBook bidBook = new BidBook();
+    private static final Lock[] bidStripes = createBidStripes();
+    private static volatile BidWriter bidWriter;
+    private static volatile LedgerOutbox ledgerOutbox;
+    private static volatile CatalogCache catalogCache;
+    private static final Map<Integer, Bidder> bidderCache = createBidderCache();
     private static final LoggerUtil logger = LoggerUtil.getLogger(DatabaseConnection.class);
+    private static final MetricsRegistry.Timer authenticateTimer = MetricsRegistry.timer("dao.authenticateBidder");
+    private static final MetricsRegistry.Timer vehiclesTimer = MetricsRegistry.timer("dao.getVehicles");
+    private static final MetricsRegistry.Timer highestBidTimer = MetricsRegistry.timer("dao.getHighestBid");
+    private static final MetricsRegistry.Timer placeBidTimer = MetricsRegistry.timer("dao.placeBid");
+    private static final MetricsRegistry.Counter[] bidStatusCounters = createBidStatusCounters();
 
-    // Load the JDBC driver
     static {
-        try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            driverLoaded = true;
-            logger.info("MySQL JDBC Driver loaded successfully");
+        ConfigManager.getInstance().addListener(DatabaseConnection::applyConfig);
+    }
+
+    // Loads the JDBC driver on first use; class initialization makes this thread-safe
+    private static final class Driver {
+        static final boolean LOADED = load();
 
-            // Try to initialize the database
+        private static boolean load() {
             try {
-                initializeDatabase();
-            } catch (SQLException | IOException e) {
-                logger.error("Warning: Could not initialize database", e);
+                Class.forName("com.mysql.cj.jdbc.Driver");
+                logger.info("MySQL JDBC Driver loaded successfully");
+                return true;
+            } catch (ClassNotFoundException e) {
+                logger.error("Error loading MySQL JDBC Driver", e);
+                return false;
             }
-        } catch (ClassNotFoundException e) {
-            logger.error("Error loading MySQL JDBC Driver", e);
         }
     }
 
-    // Initialize the database if it doesn't exist
+    // Load the JDBC driver; returns false if it is not on the classpath
+    public static boolean loadDriver() {
+        return Driver.LOADED;
+    }
+
+    // Load the driver and bring the schema up to date. Safe to call more than once.
+    public static void initialize() throws SQLException, IOException {
+        if (!Driver.LOADED) {
+            throw new SQLException("MySQL JDBC Driver not loaded");
+        }
+        initializeDatabase();
+    }
+
+    // Bring the database schema up to date
     private static void initializeDatabase() throws SQLException, IOException {
         if (databaseInitialized) return;
 
+        synchronized (initLock) {
+            if (databaseInitialized) return;
+            migrate();
+            databaseInitialized = true;
+        }
+    }
+
+    private static void migrate() throws SQLException, IOException {
+
         ConfigManager config = ConfigManager.getInstance();
         String baseUrl = config.getProperty("db.base_url");
         String user = config.getProperty("db.user");
         String password = config.getProperty("db.password");
 
-        // First try to connect to the server without specifying a database
-        try (Connection conn = DriverManager.getConnection(baseUrl, user, password)) {
-            // Check if the database exists
-            try (Statement stmt = conn.createStatement()) {
-                // Try to create the database if it doesn't exist
-                stmt.executeUpdate("CREATE DATABASE IF NOT EXISTS gridlocked_cryptizer");
-                logger.info("Database 'gridlocked_cryptizer' created or already exists");
-
-                // Use the database
-                stmt.executeUpdate("USE gridlocked_cryptizer");
-
-                // Check if tables exist by querying information_schema
-                ResultSet rs = stmt.executeQuery(
-                    "SELECT COUNT(*) FROM information_schema.tables " +
-                    "WHERE table_schema = 'gridlocked_cryptizer' AND table_name IN ('bidders', 'vehicles', 'bids')");
-                rs.next();
-                int tableCount = rs.getInt(1);
-
-                // If tables don't exist, run the SQL script
-                if (tableCount < 3) {
-                    logger.info("Tables don't exist. Creating tables from SQL script...");
-                    executeSqlScript(conn, "src/database_schema.sql");
-                } else {
-                    logger.info("Tables already exist");
-                }
+        SchemaMigrator migrator = new SchemaMigrator(
+            "gridlocked_cryptizer",
+            Paths.get(config.getProperty("db.migrations.path", "src/db/migration")),
+            config.getIntProperty("db.migrations.lock_timeout_s", 60));
+
+        // The pooled connection serves the fast path; the server connection can create the database
+        migrator.migrate(() -> pool().getConnection(), () -> DriverManager.getConnection(baseUrl, user, password));
+    }
 
-                databaseInitialized = true;
+    // Retune the pool, cache and writers that are running when config.properties changes
+    private static void applyConfig(ConfigSnapshot previous, ConfigSnapshot current, Set<String> changedKeys) {
+        try {
+            ConnectionPool p = pool;
+            if (p != null && (changedKeys.contains("db.pool.min_size") || changedKeys.contains("db.pool.max_size"))) {
+                p.resize(current.getInt("db.pool.min_size", 2), current.getInt("db.pool.max_size", 10));
             }
+            CatalogCache cache = catalogCache;
+            if (cache != null && changedKeys.contains("catalog.cache.ttl_ms")) {
+                cache.setTtlMs(current.getLong("catalog.cache.ttl_ms", 5000L));
+            }
+            BidWriter writer = bidWriter;
+            if (writer != null && changedKeys.contains("bid.group_commit.max_batch")) {
+                writer.setMaxBatchSize(current.getInt("bid.group_commit.max_batch", 100));
+            }
+            LedgerOutbox outbox = ledgerOutbox;
+            if (outbox != null && changedKeys.contains("ledger.outbox.batch_size")) {
+                outbox.setBatchSize(current.getInt("ledger.outbox.batch_size", 100));
+            }
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring configuration change: " + e.getMessage());
         }
     }
 
-    // Execute SQL script from file
-    private static void executeSqlScript(Connection conn, String scriptPath) throws SQLException, IOException {
-        StringBuilder sb = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new FileReader(scriptPath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Skip comments and empty lines
-                if (line.startsWith("--") || line.trim().isEmpty() || line.startsWith("USE ")) {
-                    continue;
-                }
-                sb.append(line);
-
-                // Execute statement when semicolon is found
-                if (line.trim().endsWith(";")) {
-                    try (Statement stmt = conn.createStatement()) {
-                        stmt.execute(sb.toString());
-                    }
-                    sb.setLength(0);
+    // Lazily create the shared connection pool
+    private static ConnectionPool pool() {
+        ConnectionPool p = pool;
+        if (p == null) {
+            synchronized (DatabaseConnection.class) {
+                p = pool;
+                if (p == null) {
+                    p = ConnectionPool.fromConfig();
+                    pool = p;
                 }
             }
         }
-        logger.info("SQL script executed successfully");
+        return p;
     }
 
     // Get a connection to the database
     public static Connection getConnection() throws SQLException {
-        if (!driverLoaded) {
+        if (!Driver.LOADED) {
             throw new SQLException("MySQL JDBC Driver not loaded");
         }
 
-        ConfigManager config = ConfigManager.getInstance();
-        String url = config.getProperty("db.url");
-        String user = config.getProperty("db.user");
-        String password = config.getProperty("db.password");
-
         try {
             // Try to initialize the database if not already done
             if (!databaseInitialized) {
@@ -123,16 +164,81 @@ public class DatabaseConnection {
                 }
             }
 
-            return DriverManager.getConnection(url, user, password);
+            return pool().getConnection();
         } catch (SQLException e) {
             logger.error("Error connecting to database", e);
             throw e;
         }
     }
 
+    // Warm the bid book on first use; returns null while it cannot be loaded
+    private static BidBook bidBook() {
+        if (bidBook.isWarm()) return bidBook;
+
+        synchronized (bidBook) {
+            if (!bidBook.isWarm()) {
+                try (Connection conn = getConnection()) {
+                    bidBook.warm(conn);
+                } catch (SQLException e) {
+                    logger.error("Could not warm bid book", e);
+                    return null;
+                }
+                long interval = ConfigManager.getInstance().getLongProperty("bidbook.reconcile_interval_ms", 60000L);
+                bidBook.startReconciler(DatabaseConnection::getConnection, interval);
+            }
+        }
+        return bidBook;
+    }
+
+    // Open the pool's minimum connections ahead of the first request
+    public static void warmPool() throws SQLException {
+        getConnection().close();
+        pool().warm();
+    }
+
+    // Load the bid book ahead of the first bid; returns false if it could not be loaded
+    public static boolean warmBidBook() {
+        return Driver.LOADED && bidBook() != null;
+    }
+
+    // Compare the bid book with the database and correct drift
+    public static int reconcileBidBook() throws SQLException {
+        try (Connection conn = getConnection()) {
+            return bidBook.reconcile(conn);
+        }
+    }
+
+    // Get connection pool statistics
+    public static ConnectionPool.PoolStats getPoolStats() {
+        return pool().getStats();
+    }
+
+    // Get the most expensive SQL statements, or an empty list if db.trace.enabled is off
+    public static List<JdbcTracer.StatementStats> getTopStatements(int limit) {
+        JdbcTracer tracer = pool().getTracer();
+        return tracer != null ? tracer.getTopStatements(limit) : new ArrayList<>();
+    }
+
+    // Drain queued bids, stop the ledger relay and close the connection pool
+    public static synchronized void shutdown() {
+        bidBook.stopReconciler();
+        if (bidWriter != null) {
+            bidWriter.shutdown(10000L);
+            bidWriter = null;
+        }
+        if (ledgerOutbox != null) {
+            ledgerOutbox.shutdown(10000L);
+            ledgerOutbox = null;
+        }
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+
     // Register a new bidder
     public static boolean registerBidder(String username, String password, String email) {
-        if (!driverLoaded) {
+        if (!Driver.LOADED) {
             logger.error("Cannot register bidder: MySQL JDBC Driver not loaded");
             return false;
         }
@@ -148,13 +254,21 @@ public class DatabaseConnection {
             return false;
         }
 
+        String hashedPassword;
+        try {
+            hashedPassword = PasswordHasher.getInstance().hashPassword(password);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Password hashing unavailable during registration: " + e.getMessage());
+            return false;
+        }
+
         String sql = "INSERT INTO bidders (username, password, email) VALUES (?, ?, ?)";
 
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, SecurityUtil.sanitizeInput(username));
-            stmt.setString(2, SecurityUtil.hashPassword(password));
+            stmt.setString(2, hashedPassword);
             stmt.setString(3, SecurityUtil.sanitizeInput(email));
 
             int rowsAffected = stmt.executeUpdate();
@@ -167,90 +281,234 @@ public class DatabaseConnection {
 
     // Authenticate a bidder
     public static Bidder authenticateBidder(String username, String password) {
-        if (!driverLoaded) {
-            logger.error("Cannot authenticate bidder: MySQL JDBC Driver not loaded");
-            // For demo purposes, allow login with a test account when database is unavailable
-            if ("demo".equals(username) && "demo".equals(password)) {
-                return new Bidder(999, "demo", "demo@example.com");
+        long start = authenticateTimer.start();
+        Outcome outcome = Outcome.ERROR;
+        try {
+            if (!Driver.LOADED) {
+                logger.error("Cannot authenticate bidder: MySQL JDBC Driver not loaded");
+                // For demo purposes, allow login with a test account when database is unavailable
+                outcome = Outcome.FALLBACK;
+                return demoBidder(username, password);
+            }
+
+            String sql = "SELECT * FROM bidders WHERE username = ?";
+
+            // Copy the credential row out so the connection goes back to the pool before hashing
+            int bidderId = 0;
+            String storedPassword = null;
+            String storedUsername = null;
+            String email = null;
+            try (Connection conn = getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+                stmt.setString(1, username);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        bidderId = rs.getInt("bidder_id");
+                        storedPassword = rs.getString("password");
+                        storedUsername = rs.getString("username");
+                        email = rs.getString("email");
+                    }
+                }
+            } catch (SQLException e) {
+                logger.error("Error authenticating bidder", e);
+                outcome = Outcome.SQL_ERROR;
+
+                // For demo purposes, allow login with a test account when database is unavailable
+                return demoBidder(username, password);
+            }
+
+            try {
+                StoredCredential credential = storedPassword != null ? StoredCredential.parse(storedPassword) : null;
+
+                // Verify password on the bounded hashing executor
+                PasswordHasher hasher = PasswordHasher.getInstance();
+                if (credential != null && hasher.checkPassword(password, credential)) {
+                    if (hasher.needsRehash(credential)) {
+                        rehashPassword(bidderId, password, storedPassword);
+                    }
+                    outcome = Outcome.SUCCESS;
+                    return new Bidder(bidderId, storedUsername, email);
+                }
+
+                // For demo purposes, allow login with a test account when no matching user found
+                Bidder demo = demoBidder(username, password);
+                outcome = demo != null ? Outcome.FALLBACK : Outcome.REJECTED;
+                return demo;
+            } catch (RejectedExecutionException e) {
+                logger.warn("Login rejected, password hashing is saturated: " + e.getMessage());
+                outcome = Outcome.REJECTED;
+                return null;
+            }
+        } finally {
+            authenticateTimer.stop(start, outcome);
+        }
+    }
+
+    // The test account that works without a database, or null if these are not its credentials
+    private static Bidder demoBidder(String username, String password) {
+        if ("demo".equals(username) && "demo".equals(password)) {
+            return new Bidder(999, "demo", "demo@example.com");
+        }
+        return null;
+    }
+
+    // Upgrade a legacy or under-iterated password hash in the background after a successful login.
+    // The update only applies if the stored hash is still the one that was verified.
+    private static void rehashPassword(int bidderId, String password, String oldStoredPassword) {
+        PasswordHasher.getInstance().hashPasswordAsync(password).thenAccept(newStoredPassword -> {
+            String sql = "UPDATE bidders SET password = ? WHERE bidder_id = ? AND password = ?";
+
+            try (Connection conn = getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+                stmt.setString(1, newStoredPassword);
+                stmt.setInt(2, bidderId);
+                stmt.setString(3, oldStoredPassword);
+                if (stmt.executeUpdate() > 0) {
+                    logger.info("Upgraded password hash for bidder " + bidderId);
+                }
+            } catch (SQLException e) {
+                logger.error("Error upgrading password hash", e);
+            }
+        }).exceptionally(e -> {
+            logger.warn("Skipped password hash upgrade for bidder " + bidderId + ": " + e.getMessage());
+            return null;
+        });
+    }
+
+    // Log in and start a session; returns the session token, or null if the credentials are wrong
+    public static String login(String username, String password) {
+        Bidder bidder = authenticateBidder(username, password);
+        if (bidder == null) {
+            return null;
+        }
+        cacheBidder(bidder);
+        return SessionManager.getInstance().createSession(bidder.getBidderId());
+    }
+
+    // End a session
+    public static void logout(String sessionToken) {
+        SessionManager.getInstance().revoke(sessionToken);
+    }
+
+    // Get the bidder behind a session token, or null if the session is not valid.
+    // Validation happens in memory; the bidder profile comes from the profile cache.
+    public static Bidder getSessionBidder(String sessionToken) {
+        SessionManager.Session session = SessionManager.getInstance().validate(sessionToken);
+        if (session == null) {
+            return null;
+        }
+        return getBidder(session.getBidderId());
+    }
+
+    // Get a bidder profile by ID, from the profile cache when possible
+    public static Bidder getBidder(int bidderId) {
+        synchronized (bidderCache) {
+            Bidder cached = bidderCache.get(bidderId);
+            if (cached != null) {
+                return cached;
             }
+        }
+
+        if (!Driver.LOADED) {
             return null;
         }
 
-        String sql = "SELECT * FROM bidders WHERE username = ?";
+        String sql = "SELECT bidder_id, username, email FROM bidders WHERE bidder_id = ?";
 
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            stmt.setString(1, username);
+            stmt.setInt(1, bidderId);
 
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    String storedPassword = rs.getString("password");
-
-                    // Verify password
-                    if (SecurityUtil.checkPassword(password, storedPassword)) {
-                        return new Bidder(
-                            rs.getInt("bidder_id"),
-                            rs.getString("username"),
-                            rs.getString("email")
-                        );
-                    }
+                    Bidder bidder = new Bidder(
+                        rs.getInt("bidder_id"),
+                        rs.getString("username"),
+                        rs.getString("email")
+                    );
+                    cacheBidder(bidder);
+                    return bidder;
                 }
             }
-
-            // For demo purposes, allow login with a test account when no matching user found
-            if ("demo".equals(username) && "demo".equals(password)) {
-                return new Bidder(999, "demo", "demo@example.com");
-            }
-
-            return null;
         } catch (SQLException e) {
-            logger.error("Error authenticating bidder", e);
+            logger.error("Error getting bidder", e);
+        }
+        return null;
+    }
 
-            // For demo purposes, allow login with a test account when database is unavailable
-            if ("demo".equals(username) && "demo".equals(password)) {
-                return new Bidder(999, "demo", "demo@example.com");
+    private static void cacheBidder(Bidder bidder) {
+        synchronized (bidderCache) {
+            bidderCache.put(bidder.getBidderId(), bidder);
+        }
+    }
+
+    private static Map<Integer, Bidder> createBidderCache() {
+        int maxEntries = ConfigManager.getInstance().getIntProperty("bidder.cache.max_entries", 10000);
+        return new LinkedHashMap<Integer, Bidder>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Bidder> eldest) {
+                return size() > maxEntries;
             }
+        };
+    }
 
-            return null;
+    // Lazily create the catalog cache
+    private static CatalogCache catalogCache() {
+        CatalogCache cache = catalogCache;
+        if (cache == null) {
+            synchronized (DatabaseConnection.class) {
+                cache = catalogCache;
+                if (cache == null) {
+                    ConfigManager config = ConfigManager.getInstance();
+                    CatalogCache.Loader loader = new CatalogCache.Loader() {
+                        @Override
+                        public List<Vehicle> loadAll() throws SQLException {
+                            return loadVehicles(null);
+                        }
+
+                        @Override
+                        public List<Vehicle> load(Collection<Integer> vehicleIds) throws SQLException {
+                            return loadVehicles(vehicleIds);
+                        }
+                    };
+                    cache = new CatalogCache(loader,
+                        config.getLongProperty("catalog.cache.ttl_ms", 5000L),
+                        config.getIntProperty("catalog.cache.max_entries", 10000));
+                    catalogCache = cache;
+                }
+            }
         }
+        return cache;
+    }
+
+    // Get catalog cache statistics
+    public static CatalogCache.CacheStats getCatalogCacheStats() {
+        return catalogCache().getStats();
     }
 
     // Get all vehicles
     public static List<Vehicle> getVehicles() {
+        long start = vehiclesTimer.start();
         List<Vehicle> vehicles = new ArrayList<>();
 
-        if (!driverLoaded) {
+        if (!Driver.LOADED) {
             logger.error("Cannot get vehicles: MySQL JDBC Driver not loaded");
             // Return some sample vehicles for demo purposes
             vehicles.add(new Vehicle(1, "Toyota", "Camry", 2020, 15000.0, 15000.0));
             vehicles.add(new Vehicle(2, "Honda", "Accord", 2021, 18000.0, 18500.0));
             vehicles.add(new Vehicle(3, "Ford", "Mustang", 2019, 25000.0, 26000.0));
+            vehiclesTimer.stop(start, Outcome.FALLBACK);
             return vehicles;
         }
 
-        String sql = "SELECT v.*, " +
-                    "(SELECT MAX(bid_amount) FROM bids WHERE vehicle_id = v.vehicle_id) AS highest_bid " +
-                    "FROM vehicles v";
-
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                int vehicleId = rs.getInt("vehicle_id");
-                String make = rs.getString("make");
-                String model = rs.getString("model");
-                int year = rs.getInt("year");
-                double startingBid = rs.getDouble("starting_bid");
-                double highestBid = rs.getDouble("highest_bid");
-
-                if (rs.wasNull()) {
-                    highestBid = startingBid;
-                }
-
-                vehicles.add(new Vehicle(vehicleId, make, model, year, startingBid, highestBid));
-            }
+        try {
+            List<Vehicle> catalog = catalogCache().getAll();
+            vehiclesTimer.stop(start, Outcome.SUCCESS);
+            return catalog;
         } catch (SQLException e) {
             logger.error("Error getting vehicles", e);
 
@@ -258,93 +516,495 @@ public class DatabaseConnection {
             vehicles.add(new Vehicle(1, "Toyota", "Camry", 2020, 15000.0, 15000.0));
             vehicles.add(new Vehicle(2, "Honda", "Accord", 2021, 18000.0, 18500.0));
             vehicles.add(new Vehicle(3, "Ford", "Mustang", 2019, 25000.0, 26000.0));
+            vehiclesTimer.stop(start, Outcome.SQL_ERROR);
         }
 
         return vehicles;
     }
 
-    // Place a bid
-    public static boolean placeBid(int bidderId, int vehicleId, double bidAmount) {
-        if (!driverLoaded) {
+    // Load vehicles from the database, either all of them or the given IDs
+    private static List<Vehicle> loadVehicles(Collection<Integer> vehicleIds) throws SQLException {
+        List<Vehicle> vehicles = new ArrayList<>();
+
+        // Take highest bids from the bid book when it is loaded
+        BidBook book = bidBook();
+        StringBuilder sql = new StringBuilder(book != null ? "SELECT * FROM vehicles v" :
+                    "SELECT v.*, " +
+                    "(SELECT MAX(bid_amount) FROM bids WHERE vehicle_id = v.vehicle_id) AS highest_bid " +
+                    "FROM vehicles v");
+        if (vehicleIds != null) {
+            if (vehicleIds.isEmpty()) {
+                return vehicles;
+            }
+            sql.append(" WHERE v.vehicle_id IN (");
+            for (int i = 0; i < vehicleIds.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(")");
+        }
+        sql.append(" ORDER BY v.vehicle_id");
+
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+
+            if (vehicleIds != null) {
+                int index = 1;
+                for (int vehicleId : vehicleIds) {
+                    stmt.setInt(index++, vehicleId);
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int vehicleId = rs.getInt("vehicle_id");
+                    String make = rs.getString("make");
+                    String model = rs.getString("model");
+                    int year = rs.getInt("year");
+                    double startingBid = rs.getDouble("starting_bid");
+                    double highestBid;
+
+                    if (book != null) {
+                        if (!book.containsVehicle(vehicleId)) {
+                            book.putVehicle(vehicleId, startingBid);
+                        }
+                        highestBid = book.getHighestBid(vehicleId);
+                    } else {
+                        highestBid = rs.getDouble("highest_bid");
+                        if (rs.wasNull()) {
+                            highestBid = startingBid;
+                        }
+                    }
+
+                    vehicles.add(new Vehicle(vehicleId, make, model, year, startingBid, highestBid));
+                }
+            }
+        }
+
+        return vehicles;
+    }
+
+    // Get the lock stripe that sequences bids on a vehicle
+    private static Lock bidStripe(int vehicleId) {
+        return bidStripes[(vehicleId & 0x7fffffff) % bidStripes.length];
+    }
+
+    private static Lock[] createBidStripes() {
+        int stripes = Math.max(1, ConfigManager.getInstance().getIntProperty("bid.lock_stripes", 64));
+        Lock[] locks = new Lock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    // Lazily start the group-commit writer when bid.group_commit.enabled is set
+    private static BidWriter bidWriter() {
+        BidWriter writer = bidWriter;
+        if (writer == null) {
+            synchronized (DatabaseConnection.class) {
+                writer = bidWriter;
+                if (writer == null) {
+                    ConfigManager config = ConfigManager.getInstance();
+                    if (!Boolean.parseBoolean(config.getProperty("bid.group_commit.enabled", "false"))) {
+                        return null;
+                    }
+                    writer = new BidWriter(
+                        DatabaseConnection::getConnection,
+                        config.getIntProperty("bid.group_commit.queue_capacity", 10000),
+                        config.getIntProperty("bid.group_commit.max_batch", 100),
+                        config.getLongProperty("bid.group_commit.max_delay_ms", 5L),
+                        config.getLongProperty("bid.group_commit.enqueue_timeout_ms", 1000L)
+                    );
+                    bidWriter = writer;
+                }
+            }
+        }
+        return writer;
+    }
+
+    // Lazily start the relay that records committed bids on the ledger
+    private static LedgerOutbox ledgerOutbox() {
+        LedgerOutbox outbox = ledgerOutbox;
+        if (outbox == null) {
+            synchronized (DatabaseConnection.class) {
+                outbox = ledgerOutbox;
+                if (outbox == null) {
+                    ConfigManager config = ConfigManager.getInstance();
+                    outbox = new LedgerOutbox(
+                        DatabaseConnection::getConnection,
+                        DatabaseConnection::recordOnLedger,
+                        config.getIntProperty("ledger.outbox.batch_size", 100),
+                        config.getLongProperty("ledger.outbox.poll_ms", 500L),
+                        config.getLongProperty("ledger.outbox.claim_timeout_ms", 30000L),
+                        config.getLongProperty("ledger.outbox.retry_base_ms", 1000L),
+                        config.getLongProperty("ledger.outbox.retry_max_ms", 60000L)
+                    );
+                    ledgerOutbox = outbox;
+                }
+            }
+        }
+        return outbox;
+    }
+
+    // Start the ledger relay so bids left in the outbox by an earlier run are recorded
+    public static void startLedgerRelay() {
+        ledgerOutbox();
+    }
+
+    // Get ledger relay statistics, including the outbox backlog and its age
+    public static LedgerOutbox.OutboxStats getLedgerOutboxStats() throws SQLException {
+        return ledgerOutbox().getStats();
+    }
+
+    // Get group-commit statistics, or null if group commit is disabled
+    public static BidWriter.WriterStats getBidWriterStats() {
+        BidWriter writer = bidWriter;
+        return writer != null ? writer.getStats() : null;
+    }
+
+    // Place a bid on behalf of a session
+    public static BidResult placeBid(String sessionToken, int vehicleId, double bidAmount) {
+        SessionManager.Session session = SessionManager.getInstance().validate(sessionToken);
+        if (session == null) {
+            return BidResult.unauthorized(vehicleId, bidAmount);
+        }
+        return placeBid(session.getBidderId(), vehicleId, bidAmount);
+    }
+
+    // Place a bid if it beats the current highest bid
+    public static BidResult placeBid(int bidderId, int vehicleId, double bidAmount) {
+        return submitBid(bidderId, vehicleId, bidAmount).join();
+    }
+
+    // Place a bid, completing once it is durable
+    public static CompletableFuture<BidResult> submitBid(int bidderId, int vehicleId, double bidAmount) {
+        return submitBid(BidStageEvent.nextCorrelationId(), bidderId, vehicleId, bidAmount);
+    }
+
+    // Place a bid, completing once it is durable; its flight recorder events carry the correlation ID.
+    // Bids on the same vehicle are serialized through a lock stripe. In group-commit
+    // mode the bid book is authoritative and the insert is queued; otherwise the insert
+    // itself is conditional so other application nodes cannot slip under it.
+    public static CompletableFuture<BidResult> submitBid(long correlationId, int bidderId, int vehicleId,
+                                                         double bidAmount) {
+        long start = placeBidTimer.start();
+        if (!Driver.LOADED) {
             logger.error("Cannot place bid: MySQL JDBC Driver not loaded");
-            return false;
+            return CompletableFuture.completedFuture(
+                recordBidResult(start, BidResult.failed(vehicleId, bidAmount, "Database unavailable")));
         }
 
-        // Record the bid on the blockchain
-        BlockchainService blockchainService = BlockchainService.getInstance();
-        String blockchainHash = blockchainService.recordBid(bidderId, vehicleId, bidAmount);
+        BidBook book = bidBook();
+        BidWriter writer = bidWriter();
+        if (writer != null && book != null && book.containsVehicle(vehicleId)) {
+            return submitGroupCommitBid(correlationId, writer, book, bidderId, vehicleId, bidAmount)
+                .thenApply(result -> recordBidResult(start, result));
+        }
+        return CompletableFuture.completedFuture(
+            recordBidResult(start, placeBidDirect(correlationId, book, bidderId, vehicleId, bidAmount)));
+    }
 
-        if (blockchainHash == null) {
-            logger.error("Failed to record bid on blockchain");
-            return false;
+    // Time a bid from submission until its result is known, by outcome
+    private static BidResult recordBidResult(long start, BidResult result) {
+        Outcome outcome;
+        switch (result.getStatus()) {
+            case ACCEPTED:
+                outcome = Outcome.SUCCESS;
+                break;
+            case FAILED:
+                outcome = Driver.LOADED ? Outcome.SQL_ERROR : Outcome.ERROR;
+                break;
+            default:
+                outcome = Outcome.REJECTED;
+                break;
         }
+        placeBidTimer.stop(start, outcome);
+        bidStatusCounters[result.getStatus().ordinal()].increment();
+        return result;
+    }
 
-        String sql = "INSERT INTO bids (bidder_id, vehicle_id, bid_amount, blockchain_hash) VALUES (?, ?, ?, ?)";
+    private static MetricsRegistry.Counter[] createBidStatusCounters() {
+        BidResult.Status[] statuses = BidResult.Status.values();
+        MetricsRegistry.Counter[] counters = new MetricsRegistry.Counter[statuses.length];
+        for (BidResult.Status status : statuses) {
+            counters[status.ordinal()] = MetricsRegistry.counter("dao.bids." + status.name().toLowerCase(Locale.ROOT));
+        }
+        return counters;
+    }
 
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+    private static CompletableFuture<BidResult> submitGroupCommitBid(long correlationId, BidWriter writer,
+                                                                     BidBook book, int bidderId, int vehicleId,
+                                                                     double bidAmount) {
+        Lock stripe = bidStripe(vehicleId);
+        stripe.lock();
+        try {
+            BidStageEvent check = BidStageEvent.start(BidStageEvent.HIGHEST_BID_CHECK, correlationId);
+            double highestBid = book.getHighestBid(vehicleId);
+            if (book.isAuctionClosed(vehicleId)) {
+                check.finish(vehicleId, bidderId, 0, BidResult.Status.AUCTION_CLOSED.name());
+                return CompletableFuture.completedFuture(BidResult.auctionClosed(vehicleId, bidAmount, highestBid));
+            }
+            if (bidAmount <= highestBid) {
+                check.finish(vehicleId, bidderId, 0, BidResult.Status.OUTBID.name());
+                return CompletableFuture.completedFuture(BidResult.outbid(vehicleId, bidAmount, highestBid));
+            }
+            check.finish(vehicleId, bidderId, 0, BidResult.Status.ACCEPTED.name());
+
+            // Claim the top spot before releasing the stripe so the next bid sees it
+            book.claimBid(vehicleId, bidAmount);
+            catalogCache().invalidate(vehicleId);
+        } finally {
+            stripe.unlock();
+        }
 
+        // Enqueue outside the stripe: a full queue may block submit, and that must not stall every
+        // bidder hashing to this stripe. A bid that cannot be queued fails below and releases its claim.
+        CompletableFuture<Void> durable = writer.submit(correlationId, bidderId, vehicleId, bidAmount);
+        return durable.handle((ignored, error) -> {
+            if (error == null) {
+                book.commitClaim(vehicleId, bidAmount);
+                ledgerOutbox().signal();
+                return BidResult.accepted(vehicleId, bidAmount, null);
+            }
+            logger.error("Error placing bid", error);
+            book.releaseClaim(vehicleId, bidAmount);
+            catalogCache().invalidate(vehicleId);
+            return BidResult.failed(vehicleId, bidAmount, error.getMessage());
+        });
+    }
+
+    private static BidResult placeBidDirect(long correlationId, BidBook book, int bidderId, int vehicleId,
+                                            double bidAmount) {
+        Lock stripe = bidStripe(vehicleId);
+        stripe.lock();
+        try {
+            // Reject from memory when the bid book already knows the answer
+            if (book != null && book.containsVehicle(vehicleId)) {
+                BidStageEvent check = BidStageEvent.start(BidStageEvent.HIGHEST_BID_CHECK, correlationId);
+                double highestBid = book.getHighestBid(vehicleId);
+                if (book.isAuctionClosed(vehicleId)) {
+                    check.finish(vehicleId, bidderId, 0, BidResult.Status.AUCTION_CLOSED.name());
+                    return BidResult.auctionClosed(vehicleId, bidAmount, highestBid);
+                }
+                if (bidAmount <= highestBid) {
+                    check.finish(vehicleId, bidderId, 0, BidResult.Status.OUTBID.name());
+                    return BidResult.outbid(vehicleId, bidAmount, highestBid);
+                }
+                check.finish(vehicleId, bidderId, 0, BidResult.Status.ACCEPTED.name());
+            }
+
+            // The bid and its ledger outbox row commit together; the relay records it on the ledger
+            String sql = "INSERT INTO bids (bidder_id, vehicle_id, bid_amount) " +
+                        "SELECT ?, ?, ? FROM vehicles v " +
+                        "WHERE v.vehicle_id = ? " +
+                        "AND (v.auction_end IS NULL OR v.auction_end > NOW(3)) " +
+                        "AND ? > COALESCE((SELECT MAX(bid_amount) FROM bids WHERE vehicle_id = ?), v.starting_bid)";
+
+            try (Connection conn = getConnection()) {
+                // The guarded insert is also the database's highest-bid check
+                BidStageEvent insert = BidStageEvent.start(BidStageEvent.DB_INSERT, correlationId);
+                int bidId;
+                try {
+                    bidId = insertBid(conn, sql, bidderId, vehicleId, bidAmount);
+                } catch (SQLException e) {
+                    insert.finish(vehicleId, bidderId, 0, BidResult.Status.FAILED.name());
+                    throw e;
+                }
+                insert.finish(vehicleId, bidderId, bidId,
+                    bidId > 0 ? BidResult.Status.ACCEPTED.name() : BidResult.Status.OUTBID.name());
+                if (bidId > 0) {
+                    bidBook.recordBid(vehicleId, bidAmount);
+                    catalogCache().invalidate(vehicleId);
+                    ledgerOutbox().signal();
+                    return BidResult.accepted(vehicleId, bidAmount, null);
+                }
+
+                // The guard rejected the bid: report whether the auction had ended, or the highest bid that beat it
+                BidStageEvent check = BidStageEvent.start(BidStageEvent.HIGHEST_BID_CHECK, correlationId);
+                Double highestBid = queryHighestBid(conn, vehicleId);
+                if (highestBid == null) {
+                    check.finish(vehicleId, bidderId, 0, BidResult.Status.UNKNOWN_VEHICLE.name());
+                    return BidResult.unknownVehicle(vehicleId, bidAmount);
+                }
+                boolean closed = queryAuctionClosed(conn, vehicleId);
+                check.finish(vehicleId, bidderId, 0,
+                    closed ? BidResult.Status.AUCTION_CLOSED.name() : BidResult.Status.OUTBID.name());
+                bidBook.recordBid(vehicleId, highestBid);
+                catalogCache().invalidate(vehicleId);
+                return closed ? BidResult.auctionClosed(vehicleId, bidAmount, highestBid)
+                    : BidResult.outbid(vehicleId, bidAmount, highestBid);
+            }
+        } catch (SQLException e) {
+            logger.error("Error placing bid", e);
+            return BidResult.failed(vehicleId, bidAmount, e.getMessage());
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    // Run the conditional bid insert and its outbox insert in one transaction; returns the new bid's ID, or 0 if the guard rejected the bid
+    private static int insertBid(Connection conn, String sql, int bidderId, int vehicleId, double bidAmount)
+            throws SQLException {
+        conn.setAutoCommit(false);
+        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             stmt.setInt(1, bidderId);
             stmt.setInt(2, vehicleId);
             stmt.setDouble(3, bidAmount);
-            stmt.setString(4, blockchainHash);
+            stmt.setInt(4, vehicleId);
+            stmt.setDouble(5, bidAmount);
+            stmt.setInt(6, vehicleId);
 
-            int rowsAffected = stmt.executeUpdate();
-            return rowsAffected > 0;
+            if (stmt.executeUpdate() == 0) {
+                conn.rollback();
+                return 0;
+            }
+            int bidId;
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("Bid insert returned no ID");
+                }
+                bidId = keys.getInt(1);
+                LedgerOutbox.enqueue(conn, bidId);
+            }
+            conn.commit();
+            return bidId;
         } catch (SQLException e) {
-            logger.error("Error placing bid", e);
-            return false;
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
         }
     }
 
-    // Get highest bid for a vehicle
-    public static double getHighestBid(int vehicleId) {
-        if (!driverLoaded) {
-            logger.error("Cannot get highest bid: MySQL JDBC Driver not loaded");
-            // Return a default value based on vehicle ID for demo purposes
-            return vehicleId * 5000.0;
+    // Record a batch of relayed bids on the ledger; returns the receipt text for each
+    private static List<String> recordOnLedger(List<LedgerOutbox.OutboxEntry> entries) throws Exception {
+        List<BidRecord> bids = new ArrayList<>(entries.size());
+        for (LedgerOutbox.OutboxEntry entry : entries) {
+            bids.add(entry.getRecord());
         }
+        // The relay only knows bid IDs; the db_insert events map them back to correlation IDs
+        BidStageEvent[] events = BidStageEvent.isRecording() ? new BidStageEvent[entries.size()] : new BidStageEvent[0];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = BidStageEvent.start(BidStageEvent.LEDGER, 0);
+        }
+        String outcome = "ERROR";
+        try {
+            List<String> receipts = new ArrayList<>(entries.size());
+            for (BidReceipt receipt : BlockchainService.getInstance().recordBids(bids)) {
+                receipts.add(receipt.toString());
+            }
+            outcome = "RECORDED";
+            return receipts;
+        } finally {
+            for (int i = 0; i < events.length; i++) {
+                BidRecord bid = bids.get(i);
+                events[i].finish(bid.getVehicleId(), bid.getBidderId(), entries.get(i).getBidId(), outcome);
+            }
+        }
+    }
 
-        String sql = "SELECT MAX(bid_amount) AS highest_bid FROM bids WHERE vehicle_id = ?";
-
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+    // Read the highest bid, or the starting bid if there are none, in one query.
+    // Returns null if the vehicle does not exist.
+    private static Double queryHighestBid(Connection conn, int vehicleId) throws SQLException {
+        String sql = "SELECT v.starting_bid, " +
+                    "(SELECT MAX(bid_amount) FROM bids WHERE vehicle_id = v.vehicle_id) AS highest_bid " +
+                    "FROM vehicles v WHERE v.vehicle_id = ?";
 
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, vehicleId);
 
             try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    double highestBid = rs.getDouble("highest_bid");
-                    if (!rs.wasNull()) {
-                        return highestBid;
-                    }
+                if (!rs.next()) {
+                    return null;
                 }
+                double highestBid = rs.getDouble("highest_bid");
+                return rs.wasNull() ? rs.getDouble("starting_bid") : highestBid;
             }
-        } catch (SQLException e) {
-            logger.error("Error getting highest bid", e);
-            // Return a default value based on vehicle ID for demo purposes
-            return vehicleId * 5000.0;
         }
+    }
 
-        // If no bids, get starting bid
-        sql = "SELECT starting_bid FROM vehicles WHERE vehicle_id = ?";
-
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+    // Check the auction end against the database clock, as the guarded bid insert does
+    private static boolean queryAuctionClosed(Connection conn, int vehicleId) throws SQLException {
+        String sql = "SELECT auction_end IS NOT NULL AND auction_end <= NOW(3) FROM vehicles WHERE vehicle_id = ?";
 
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, vehicleId);
 
             try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getDouble("starting_bid");
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    // Verify every recorded bid on a vehicle against the ledger.
+    // Bids still in the ledger outbox, or stored before the ledger kept receipts, are skipped.
+    public static BlockchainService.BatchVerification verifyAuction(int vehicleId) throws SQLException {
+        List<BidReceipt> receipts = new ArrayList<>();
+        int unverifiable = 0;
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT blockchain_hash FROM bids WHERE vehicle_id = ?")) {
+            stmt.setInt(1, vehicleId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    BidReceipt receipt = BidReceipt.parse(rs.getString(1));
+                    if (receipt != null) {
+                        receipts.add(receipt);
+                    } else {
+                        unverifiable++;
+                    }
                 }
             }
+        }
+        if (unverifiable > 0) {
+            logger.warn(unverifiable + " bids on vehicle " + vehicleId + " have no ledger receipt yet");
+        }
+        return BlockchainService.getInstance().verifyBids(receipts);
+    }
+
+    // Audit every bid's ledger receipt against the ledger, resuming from the last checkpoint if asked
+    public static LedgerAudit.AuditReport auditLedger(boolean resume) throws Exception {
+        LedgerAudit audit = LedgerAudit.fromConfig(DatabaseConnection::getConnection, BlockchainService.getInstance());
+        try {
+            return audit.run(resume);
+        } finally {
+            audit.shutdown();
+        }
+    }
+
+    // Get highest bid for a vehicle
+    public static double getHighestBid(int vehicleId) {
+        long start = highestBidTimer.start();
+        if (!Driver.LOADED) {
+            logger.error("Cannot get highest bid: MySQL JDBC Driver not loaded");
+            // Return a default value based on vehicle ID for demo purposes
+            highestBidTimer.stop(start, Outcome.FALLBACK);
+            return vehicleId * 5000.0;
+        }
+
+        // Serve from the bid book when the vehicle is known
+        BidBook book = bidBook();
+        if (book != null) {
+            Double highestBid = book.getHighestBid(vehicleId);
+            if (highestBid != null) {
+                highestBidTimer.stop(start, Outcome.SUCCESS);
+                return highestBid;
+            }
+        }
+
+        try (Connection conn = getConnection()) {
+            Double highestBid = queryHighestBid(conn, vehicleId);
+            highestBidTimer.stop(start, Outcome.SUCCESS);
+            return highestBid != null ? highestBid : 0.0;
         } catch (SQLException e) {
-            logger.error("Error getting starting bid", e);
+            logger.error("Error getting highest bid", e);
             // Return a default value based on vehicle ID for demo purposes
+            highestBidTimer.stop(start, Outcome.SQL_ERROR);
             return vehicleId * 5000.0;
         }
+    }
 
-        return 0.0;
+    // Format the operation latency histograms and counters as a text table
+    public static String getMetricsDump() {
+        return MetricsRegistry.getInstance().dump();
     }
 }
@@ -0,0 +1,448 @@
+package dao;
+
+import util.ConfigManager;
+import util.LatencyHistogram;
+import util.LoggerUtil;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Tracing layer for JDBC connections.
+ * Wrapped connections hand out statement and result set proxies that time
+ * each execution, split into execute (the execute* call) and fetch (the
+ * ResultSet.next calls), and count the rows returned or updated. Statistics
+ * are kept per SQL shape: the statement text with literals replaced by ?,
+ * IN lists collapsed and whitespace normalized, so the same query with
+ * different parameters is one entry. An execution slower than
+ * db.trace.slow_ms is logged with the types of its bind values, never the
+ * values themselves, and every db.trace.report_interval_ms the
+ * db.trace.top_n most expensive shapes are logged.
+ */
+public class JdbcTracer {
+    private static final LoggerUtil logger = LoggerUtil.getLogger(JdbcTracer.class);
+    // Raw SQL texts remembered per shape; beyond this each execution re-normalizes
+    private static final int MAX_CACHED_SQL = 4096;
+    private static final int MAX_SHAPE_LENGTH = 120;
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)+\\s*\\)");
+
+    private final long slowNanos;
+    private final int topN;
+    private final ConcurrentMap<String, ShapeStats> shapes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ShapeStats> bySql = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reporter;
+
+    /**
+     * @param slowMs executions taking at least this long are logged, or 0 for none
+     * @param topN the number of shapes in the periodic report
+     * @param reportIntervalMs how often to log the report, or 0 for never
+     */
+    public JdbcTracer(long slowMs, int topN, long reportIntervalMs) {
+        this.slowNanos = slowMs > 0 ? TimeUnit.MILLISECONDS.toNanos(slowMs) : Long.MAX_VALUE;
+        this.topN = Math.max(1, topN);
+        if (reportIntervalMs > 0) {
+            reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "jdbc-trace-report");
+                t.setDaemon(true);
+                return t;
+            });
+            reporter.scheduleAtFixedRate(() -> logger.info("Most expensive statements\n" + report(this.topN)),
+                reportIntervalMs, reportIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            reporter = null;
+        }
+    }
+
+    /**
+     * Create a tracer from the db.trace.* properties, or null if db.trace.enabled is off
+     */
+    public static JdbcTracer fromConfig() {
+        ConfigManager config = ConfigManager.getInstance();
+        if (!Boolean.parseBoolean(config.getProperty("db.trace.enabled", "false").trim())) {
+            return null;
+        }
+        return new JdbcTracer(
+            config.getLongProperty("db.trace.slow_ms", 200L),
+            config.getIntProperty("db.trace.top_n", 10),
+            config.getLongProperty("db.trace.report_interval_ms", 300000L));
+    }
+
+    /**
+     * Wrap a connection so its statements are traced
+     */
+    public Connection wrap(Connection connection) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            Object result = call(connection, method, args);
+            String name = method.getName();
+            if (result instanceof Statement && (name.startsWith("prepare") || name.equals("createStatement"))) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                return new TracedStatement((Statement) result, sql).proxy(method.getReturnType());
+            }
+            return result;
+        };
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Look up the statistics for a statement text, normalizing it the first time
+    private ShapeStats statsFor(String sql) {
+        ShapeStats stats = bySql.get(sql);
+        if (stats == null) {
+            stats = shapes.computeIfAbsent(normalize(sql), ShapeStats::new);
+            if (bySql.size() < MAX_CACHED_SQL) {
+                bySql.putIfAbsent(sql, stats);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Reduce a statement to its shape: literals become ?, comments are
+     * dropped, whitespace collapses and IN lists of any length look alike
+     */
+    static String normalize(String sql) {
+        StringBuilder shape = new StringBuilder(sql.length());
+        int n = sql.length();
+        int i = 0;
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                // String literal, with doubled or backslash-escaped quotes inside
+                i++;
+                while (i < n) {
+                    char d = sql.charAt(i++);
+                    if (d == '\\') {
+                        i++;
+                    } else if (d == c) {
+                        if (i < n && sql.charAt(i) == c) {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                }
+                shape.append('?');
+            } else if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+                while (i < n && sql.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+            } else if (Character.isWhitespace(c)) {
+                while (i < n && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                if (shape.length() > 0 && shape.charAt(shape.length() - 1) != ' ') {
+                    shape.append(' ');
+                }
+            } else if (Character.isDigit(c) && (shape.length() == 0 || !isIdentifierPart(shape.charAt(shape.length() - 1)))) {
+                while (i < n && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                shape.append('?');
+            } else {
+                shape.append(c);
+                i++;
+            }
+        }
+        int end = shape.length();
+        while (end > 0 && (shape.charAt(end - 1) == ' ' || shape.charAt(end - 1) == ';')) {
+            end--;
+        }
+        shape.setLength(end);
+        return IN_LIST.matcher(shape).replaceAll("(?, ...)");
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '`';
+    }
+
+    /**
+     * Get the statistics of the shapes that took the most total time
+     */
+    public List<StatementStats> getTopStatements(int limit) {
+        List<StatementStats> all = new ArrayList<>(shapes.size());
+        for (ShapeStats stats : shapes.values()) {
+            all.add(stats.snapshot());
+        }
+        all.sort(Comparator.comparingLong(StatementStats::getTotalNanos).reversed());
+        return all.size() > limit ? new ArrayList<>(all.subList(0, limit)) : all;
+    }
+
+    /**
+     * Format the most expensive shapes as a text table
+     */
+    public String report(int limit) {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%10s %10s %10s %10s %10s %9s %9s %6s  %s%n",
+            "calls", "rows", "total_ms", "exec_ms", "fetch_ms", "mean_ms", "p99_ms", "errors", "statement"));
+        for (StatementStats stats : getTopStatements(limit)) {
+            String shape = stats.getShape();
+            text.append(String.format("%10d %10d %10.1f %10.1f %10.1f %9.2f %9.2f %6d  %s%n",
+                stats.getCalls(), stats.getRows(), stats.getTotalNanos() / 1e6, stats.getExecuteNanos() / 1e6,
+                stats.getFetchNanos() / 1e6, stats.getMeanMillis(), stats.getP99Nanos() / 1e6, stats.getErrors(),
+                shape.length() > MAX_SHAPE_LENGTH ? shape.substring(0, MAX_SHAPE_LENGTH) + "..." : shape));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Stop the periodic report
+     */
+    public void shutdown() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+    }
+
+    /**
+     * A statement and its execution in progress. Statements are used by one
+     * thread at a time, like the connection they came from.
+     */
+    private final class TracedStatement implements InvocationHandler {
+        private final Statement statement;
+        private String sql;
+        private String[] bindTypes = new String[8];
+        private int bindCount;
+
+        // The execution in progress, if any
+        private ShapeStats current;
+        private long executeNanos;
+        private long fetchNanos;
+        private long rows;
+        private boolean failed;
+        private String[] currentBinds;
+
+        TracedStatement(Statement statement, String sql) {
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        Object proxy(Class<?> type) {
+            return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer
+                    && method.getDeclaringClass() != Statement.class) {
+                bind((Integer) args[0], name.equals("setNull") ? "null" : name.substring(3).toLowerCase(Locale.ROOT));
+            } else if (name.equals("clearParameters")) {
+                bindCount = 0;
+            } else if (name.equals("addBatch")) {
+                if (args != null && args.length == 1 && sql == null) {
+                    sql = (String) args[0];
+                }
+            } else if (name.equals("close")) {
+                finish();
+            }
+
+            Object result = call(statement, method, args);
+            if (result instanceof ResultSet && current != null) {
+                // Generated keys and the like: their fetch time is the execution's, their rows are not
+                return traced((ResultSet) result, false);
+            }
+            return result;
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            finish();
+            String text = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            if (text == null) {
+                return call(statement, method, args);
+            }
+            current = statsFor(text);
+            currentBinds = Arrays.copyOf(bindTypes, bindCount);
+            executeNanos = 0;
+            fetchNanos = 0;
+            rows = 0;
+            failed = false;
+
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = call(statement, method, args);
+            } catch (Throwable e) {
+                executeNanos = System.nanoTime() - start;
+                failed = true;
+                finish();
+                throw e;
+            }
+            executeNanos = System.nanoTime() - start;
+
+            if (result instanceof ResultSet) {
+                return traced((ResultSet) result, true);
+            }
+            if (result instanceof int[]) {
+                for (int count : (int[]) result) {
+                    rows += Math.max(0, count);
+                }
+            } else if (result instanceof long[]) {
+                for (long count : (long[]) result) {
+                    rows += Math.max(0, count);
+                }
+            } else if (result instanceof Number) {
+                rows = ((Number) result).longValue();
+            }
+            // Finished on the next execution or on close, so getGeneratedKeys counts as fetch time
+            return result;
+        }
+
+        private void bind(int index, String type) {
+            if (index > bindTypes.length) {
+                bindTypes = Arrays.copyOf(bindTypes, Math.max(index, bindTypes.length * 2));
+            }
+            bindTypes[index - 1] = type;
+            bindCount = Math.max(bindCount, index);
+        }
+
+        private ResultSet traced(ResultSet resultSet, boolean countRows) {
+            InvocationHandler handler = (proxy, method, args) -> {
+                String name = method.getName();
+                if (name.equals("next")) {
+                    long start = System.nanoTime();
+                    Object more = call(resultSet, method, args);
+                    fetchNanos += System.nanoTime() - start;
+                    if (countRows && Boolean.TRUE.equals(more)) {
+                        rows++;
+                    }
+                    return more;
+                }
+                Object result = call(resultSet, method, args);
+                if (name.equals("close") && countRows) {
+                    finish();
+                }
+                return result;
+            };
+            return (ResultSet) Proxy.newProxyInstance(
+                ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, handler);
+        }
+
+        // Record the execution in progress, if any
+        private void finish() {
+            if (current == null) {
+                return;
+            }
+            ShapeStats stats = current;
+            current = null;
+            long total = executeNanos + fetchNanos;
+            stats.record(executeNanos, fetchNanos, rows, failed);
+            if (total >= slowNanos) {
+                logger.warn(String.format("Slow query: %.1fms (execute %.1fms, fetch %.1fms), %d rows%s: %s, binds %s",
+                    total / 1e6, executeNanos / 1e6, fetchNanos / 1e6, rows, failed ? ", failed" : "",
+                    stats.shape, Arrays.toString(currentBinds)));
+            }
+        }
+    }
+
+    /**
+     * Running totals for one SQL shape
+     */
+    private static final class ShapeStats {
+        final String shape;
+        final LongAdder calls = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LongAdder executeNanos = new LongAdder();
+        final LongAdder fetchNanos = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        ShapeStats(String shape) {
+            this.shape = shape;
+        }
+
+        void record(long execute, long fetch, long rowCount, boolean failed) {
+            calls.increment();
+            rows.add(rowCount);
+            executeNanos.add(execute);
+            fetchNanos.add(fetch);
+            if (failed) {
+                errors.increment();
+            }
+            latency.record(execute + fetch);
+        }
+
+        StatementStats snapshot() {
+            LatencyHistogram.Snapshot histogram = latency.snapshot();
+            return new StatementStats(shape, calls.sum(), rows.sum(), executeNanos.sum(), fetchNanos.sum(),
+                errors.sum(), histogram.getPercentile(99), histogram.getMax());
+        }
+    }
+
+    /**
+     * Immutable snapshot of one SQL shape's statistics. Times are in nanoseconds.
+     */
+    public static class StatementStats {
+        private final String shape;
+        private final long calls;
+        private final long rows;
+        private final long executeNanos;
+        private final long fetchNanos;
+        private final long errors;
+        private final long p99Nanos;
+        private final long maxNanos;
+
+        StatementStats(String shape, long calls, long rows, long executeNanos, long fetchNanos,
+                       long errors, long p99Nanos, long maxNanos) {
+            this.shape = shape;
+            this.calls = calls;
+            this.rows = rows;
+            this.executeNanos = executeNanos;
+            this.fetchNanos = fetchNanos;
+            this.errors = errors;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public String getShape() { return shape; }
+        public long getCalls() { return calls; }
+        public long getRows() { return rows; }
+        public long getExecuteNanos() { return executeNanos; }
+        public long getFetchNanos() { return fetchNanos; }
+        public long getTotalNanos() { return executeNanos + fetchNanos; }
+        public long getErrors() { return errors; }
+        public long getP99Nanos() { return p99Nanos; }
+        public long getMaxNanos() { return maxNanos; }
+
+        public double getMeanMillis() {
+            return calls == 0 ? 0.0 : getTotalNanos() / 1e6 / calls;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("StatementStats[calls=%d, rows=%d, total=%.1fms, execute=%.1fms, fetch=%.1fms, "
+                + "p99=%.2fms, max=%.2fms, errors=%d, %s]", calls, rows, getTotalNanos() / 1e6,
+                executeNanos / 1e6, fetchNanos / 1e6, p99Nanos / 1e6, maxNanos / 1e6, errors, shape);
+        }
+    }
+}
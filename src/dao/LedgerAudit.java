@@ -0,0 +1,576 @@
+package dao;
+
+import blockchain.BidReceipt;
+import blockchain.BidRecord;
+import blockchain.Block;
+import blockchain.BlockchainService;
+import util.ConfigManager;
+import util.LoggerUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Audits bids.blockchain_hash against the ledger.
+ * The bids table is read in keyset chunks of bid_id while a fork/join pool
+ * verifies the previous chunk, so the database and the CPUs stay busy at
+ * the same time. Each bid's leaf is recomputed from its row's BidRecord;
+ * the receipt must carry that leaf and name a sealed position holding it,
+ * and no two bids may share a receipt. Once every bid has been seen,
+ * ledger leaves that no bid references are reported as orphans.
+ * The chain's hashes and roots are verified once up front, so checking a
+ * bid is a probe of the ledger store's leaf index. Blocks are never held
+ * for the whole run: leaves are numbered from the store's per-block leaf
+ * counts, and the orphan scan reads, uncached, only blocks with an
+ * unreferenced leaf. Progress is checkpointed to a file every
+ * checkpointIntervalMs and a later run resumes from it, so a nightly audit
+ * over a very large table survives being stopped.
+ *
+ * Run with: java -cp out:lib/* dao.LedgerAudit [--restart]
+ * The ledger store is opened by this process too, so run it while the
+ * application is stopped or with blockchain.store.path pointing at a copy.
+ */
+public class LedgerAudit {
+    private static final LoggerUtil logger = LoggerUtil.getLogger(LedgerAudit.class);
+
+    private static final String MAX_BID_SQL = "SELECT COALESCE(MAX(bid_id), 0) FROM bids";
+    private static final String CHUNK_SQL =
+        "SELECT b.bid_id, b.blockchain_hash, b.bidder_id, b.vehicle_id, b.bid_amount, b.bid_time, " +
+        "EXISTS (SELECT 1 FROM ledger_outbox o WHERE o.bid_id = b.bid_id) AS queued " +
+        "FROM bids b WHERE b.bid_id > ? AND b.bid_id <= ? ORDER BY b.bid_id LIMIT ?";
+    private static final int CHECKPOINT_MAGIC = 0x4C415544;
+    private static final int CHECKPOINT_VERSION = 1;
+    private static final int SPLIT_THRESHOLD = 2048;
+    private static final int MAX_SAMPLES = 100;
+
+    private final Callable<Connection> connections;
+    private final BlockchainService ledger;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+    private final Path checkpointFile;
+    private final long checkpointIntervalMs;
+
+    // State of the current run
+    private int snapshotBlocks;
+    private long[] blockStart;
+    private AtomicLongArray referenced;
+    private final LongAdder verified = new LongAdder();
+    private final LongAdder pending = new LongAdder();
+    private final LongAdder missing = new LongAdder();
+    private final LongAdder mismatched = new LongAdder();
+    private final Queue<Problem> samples = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger sampleCount = new AtomicInteger();
+
+    public enum Finding {
+        /** The bid has no receipt and is not waiting in the outbox, or its block is not on the ledger */
+        MISSING,
+        /**
+         * The ledger holds a different leaf at the receipt's position, the bid row no longer
+         * matches what was recorded, or another bid has the same receipt
+         */
+        MISMATCHED,
+        /** A ledger leaf that no bid references */
+        ORPHANED
+    }
+
+    /**
+     * @param connections supplies the connection for each chunk
+     * @param ledger the ledger to audit against
+     * @param chunkSize the number of bids read per query
+     * @param parallelism the number of verifier threads
+     * @param checkpointFile where progress is saved between runs
+     * @param checkpointIntervalMs how often progress is saved
+     */
+    public LedgerAudit(Callable<Connection> connections, BlockchainService ledger, int chunkSize, int parallelism,
+                       Path checkpointFile, long checkpointIntervalMs) {
+        this.connections = connections;
+        this.ledger = ledger;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+        this.checkpointFile = checkpointFile;
+        this.checkpointIntervalMs = checkpointIntervalMs;
+    }
+
+    /**
+     * Create an audit from the audit.* settings
+     */
+    public static LedgerAudit fromConfig(Callable<Connection> connections, BlockchainService ledger) {
+        ConfigManager config = ConfigManager.getInstance();
+        int parallelism = config.getIntProperty("audit.parallelism", 0);
+        return new LedgerAudit(connections, ledger,
+            config.getIntProperty("audit.chunk_size", 10000),
+            parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+            Paths.get(config.getProperty("audit.checkpoint.path", "ledger/audit.checkpoint")),
+            config.getLongProperty("audit.checkpoint.interval_ms", 30000L));
+    }
+
+    /**
+     * A chunk of bids, held in parallel arrays
+     */
+    private static final class Chunk {
+        final int[] bidIds;
+        final String[] hashes;
+        final BidRecord[] records;
+        final boolean[] queued;
+        int size;
+
+        Chunk(int capacity) {
+            bidIds = new int[capacity];
+            hashes = new String[capacity];
+            records = new BidRecord[capacity];
+            queued = new boolean[capacity];
+        }
+
+        int lastBidId() {
+            return bidIds[size - 1];
+        }
+    }
+
+    /**
+     * Run the audit to completion
+     *
+     * @param resume whether to continue from a checkpoint left by an earlier run
+     * @return the report
+     * @throws Exception if the bids cannot be read
+     */
+    public AuditReport run(boolean resume) throws Exception {
+        long start = System.nanoTime();
+        Checkpoint checkpoint = resume ? readCheckpoint() : null;
+        long snapshotHeight = checkpoint != null ? checkpoint.snapshotHeight : ledger.getHeight();
+        if (!snapshot(snapshotHeight, checkpoint)) {
+            checkpoint = null;
+            snapshotHeight = ledger.getHeight();
+            snapshot(snapshotHeight, null);
+        }
+        long maxBidId;
+        if (checkpoint != null) {
+            maxBidId = checkpoint.maxBidId;
+            logger.info("Resuming ledger audit after bid " + checkpoint.lastBidId + " of " + maxBidId);
+        } else {
+            try (Connection conn = connections.call();
+                 PreparedStatement stmt = conn.prepareStatement(MAX_BID_SQL);
+                 ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                maxBidId = rs.getLong(1);
+            }
+            logger.info("Starting ledger audit of bids up to " + maxBidId + " against " + snapshotHeight + " blocks");
+        }
+
+        boolean chainIntact = ledger.verifyChain();
+        if (!chainIntact) {
+            logger.error("Ledger chain is broken; receipts in the damaged blocks will not verify");
+        }
+
+        long lastBidId = checkpoint != null ? checkpoint.lastBidId : 0;
+        long rows = checkpoint != null ? checkpoint.rows : 0;
+        long priorElapsedMs = checkpoint != null ? checkpoint.elapsedMs : 0;
+        long rowsThisRun = 0;
+        long lastCheckpoint = System.nanoTime();
+
+        // Read the next chunk while the fork/join pool verifies the current one
+        Chunk current = readChunk(lastBidId, maxBidId);
+        while (current.size > 0) {
+            ForkJoinTask<Void> verifying = pool.submit(new VerifyRange(current, 0, current.size));
+            Chunk next = readChunk(current.lastBidId(), maxBidId);
+            verifying.join();
+
+            lastBidId = current.lastBidId();
+            rows += current.size;
+            rowsThisRun += current.size;
+            if (System.nanoTime() - lastCheckpoint >= checkpointIntervalMs * 1_000_000) {
+                long elapsedMs = priorElapsedMs + (System.nanoTime() - start) / 1_000_000;
+                writeCheckpoint(new Checkpoint(maxBidId, snapshotHeight, lastBidId, rows, elapsedMs));
+                logger.info("Ledger audit at bid " + lastBidId + " of " + maxBidId + ": " + rows + " rows, "
+                    + rowsPerSecond(rowsThisRun, System.nanoTime() - start) + " rows/s");
+                lastCheckpoint = System.nanoTime();
+            }
+            current = next;
+        }
+
+        long orphaned = findOrphans();
+        long elapsedNanos = System.nanoTime() - start;
+        AuditReport report = new AuditReport(rows, verified.sum(), pending.sum(), missing.sum(), mismatched.sum(),
+            orphaned, chainIntact, priorElapsedMs + elapsedNanos / 1_000_000,
+            rowsPerSecond(rowsThisRun, elapsedNanos), new ArrayList<>(samples));
+        Files.deleteIfExists(checkpointFile);
+        if (report.isClean()) {
+            logger.info("Ledger audit passed: " + report);
+        } else {
+            logger.warn("Ledger audit found problems: " + report);
+        }
+        return report;
+    }
+
+    // Capture the sealed height and leaf numbering; false if a checkpoint no longer fits the ledger
+    private boolean snapshot(long height, Checkpoint checkpoint) {
+        if (height > ledger.getHeight()) {
+            logger.warn("Ledger is shorter than when the audit checkpoint was written; starting over");
+            return false;
+        }
+        snapshotBlocks = (int) height;
+        blockStart = new long[snapshotBlocks + 1];
+        for (int h = 0; h < snapshotBlocks; h++) {
+            blockStart[h + 1] = blockStart[h] + ledger.getLeafCount(h);
+        }
+        int words = (int) ((blockStart[snapshotBlocks] + 63) >>> 6);
+
+        samples.clear();
+        sampleCount.set(0);
+        verified.reset();
+        pending.reset();
+        missing.reset();
+        mismatched.reset();
+        if (checkpoint == null) {
+            referenced = new AtomicLongArray(words);
+            return true;
+        }
+        if (checkpoint.referenced.length != words) {
+            logger.warn("Audit checkpoint does not match the ledger; starting over");
+            return false;
+        }
+        referenced = new AtomicLongArray(checkpoint.referenced);
+        verified.add(checkpoint.verified);
+        pending.add(checkpoint.pending);
+        missing.add(checkpoint.missing);
+        mismatched.add(checkpoint.mismatched);
+        return true;
+    }
+
+    private Chunk readChunk(long afterBidId, long maxBidId) throws Exception {
+        Chunk chunk = new Chunk(chunkSize);
+        try (Connection conn = connections.call();
+             PreparedStatement stmt = conn.prepareStatement(CHUNK_SQL)) {
+            stmt.setLong(1, afterBidId);
+            stmt.setLong(2, maxBidId);
+            stmt.setInt(3, chunkSize);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int bidId = rs.getInt(1);
+                    chunk.bidIds[chunk.size] = bidId;
+                    chunk.hashes[chunk.size] = rs.getString(2);
+                    chunk.records[chunk.size] = new BidRecord(rs.getInt(3), rs.getInt(4),
+                        BidRecord.toCents(rs.getBigDecimal(5)), rs.getTimestamp(6).getTime(), bidId);
+                    chunk.queued[chunk.size] = rs.getBoolean(7);
+                    chunk.size++;
+                }
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Verifies a range of a chunk, splitting it across the pool
+     */
+    private final class VerifyRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Chunk chunk;
+        private final int from;
+        private final int to;
+
+        VerifyRange(Chunk chunk, int from, int to) {
+            this.chunk = chunk;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new VerifyRange(chunk, from, middle), new VerifyRange(chunk, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                verify(chunk.bidIds[i], chunk.records[i], chunk.hashes[i], chunk.queued[i]);
+            }
+        }
+    }
+
+    private void verify(int bidId, BidRecord record, String hash, boolean queued) {
+        BidReceipt receipt = BidReceipt.parse(hash);
+        if (receipt == null) {
+            if (queued) {
+                pending.increment();
+            } else {
+                report(missing, Finding.MISSING, bidId, hash == null ? "no ledger receipt" : "not a ledger receipt");
+            }
+            return;
+        }
+
+        long height = receipt.getBlockHeight();
+        long sealedHeight = ledger.getHeight();
+        BidReceipt stored;
+        if (height >= sealedHeight) {
+            if (height == sealedHeight) {
+                pending.increment();
+            } else {
+                report(missing, Finding.MISSING, bidId, "block " + height + " is not on the ledger");
+            }
+        } else if ((stored = ledger.findReceipt(receipt.getLeafHash())) == null
+                || stored.getBlockHeight() != height || stored.getIndex() != receipt.getIndex()) {
+            report(mismatched, Finding.MISMATCHED, bidId, "ledger holds a different bid at " + receipt);
+        } else if (!MessageDigest.isEqual(record.leafHash(), receipt.getLeafHash())) {
+            // Only this path needs the recorded bid; read its block without caching it
+            report(mismatched, Finding.MISMATCHED, bidId, "bid row differs from the recorded "
+                + ledger.readBlock(height).getRecord(receipt.getIndex()));
+        } else if (height < snapshotBlocks && !markReferenced(blockStart[(int) height] + receipt.getIndex())) {
+            report(mismatched, Finding.MISMATCHED, bidId, "another bid has receipt " + receipt);
+        } else {
+            verified.increment();
+        }
+    }
+
+    // Set a leaf's bit; false if it was already set
+    private boolean markReferenced(long leaf) {
+        int word = (int) (leaf >>> 6);
+        long bit = 1L << leaf;
+        long previous;
+        do {
+            previous = referenced.get(word);
+            if ((previous & bit) != 0) {
+                return false;
+            }
+        } while (!referenced.compareAndSet(word, previous, previous | bit));
+        return true;
+    }
+
+    // Walk the referenced bits block by block, reading a block only to describe its orphans
+    private long findOrphans() {
+        long orphaned = 0;
+        for (int h = 0; h < snapshotBlocks; h++) {
+            Block block = null;
+            for (long leaf = blockStart[h]; leaf < blockStart[h + 1]; leaf++) {
+                if ((referenced.get((int) (leaf >>> 6)) & (1L << leaf)) != 0) {
+                    continue;
+                }
+                orphaned++;
+                if (sampleCount.get() < MAX_SAMPLES) {
+                    if (block == null) {
+                        block = ledger.readBlock(h);
+                    }
+                    int index = (int) (leaf - blockStart[h]);
+                    addSample(Finding.ORPHANED, 0,
+                        "no bid references " + new BidReceipt(h, index, block.getLeafHash(index)));
+                }
+            }
+        }
+        return orphaned;
+    }
+
+    private void report(LongAdder counter, Finding finding, int bidId, String detail) {
+        counter.increment();
+        addSample(finding, bidId, detail);
+    }
+
+    private void addSample(Finding finding, int bidId, String detail) {
+        if (sampleCount.incrementAndGet() <= MAX_SAMPLES) {
+            samples.add(new Problem(finding, bidId, detail));
+            logger.warn("Ledger audit: " + finding + (bidId > 0 ? " bid " + bidId : "") + ": " + detail);
+        }
+    }
+
+    private static long rowsPerSecond(long rows, long elapsedNanos) {
+        return elapsedNanos <= 0 ? 0 : rows * 1_000_000_000L / elapsedNanos;
+    }
+
+    /**
+     * Progress saved between runs
+     */
+    private static final class Checkpoint {
+        final long maxBidId;
+        final long snapshotHeight;
+        final long lastBidId;
+        final long rows;
+        final long elapsedMs;
+        long verified;
+        long pending;
+        long missing;
+        long mismatched;
+        long[] referenced;
+
+        Checkpoint(long maxBidId, long snapshotHeight, long lastBidId, long rows, long elapsedMs) {
+            this.maxBidId = maxBidId;
+            this.snapshotHeight = snapshotHeight;
+            this.lastBidId = lastBidId;
+            this.rows = rows;
+            this.elapsedMs = elapsedMs;
+        }
+    }
+
+    // Write to a temporary file and move it into place, so a crash leaves the previous checkpoint intact
+    private void writeCheckpoint(Checkpoint checkpoint) throws IOException {
+        Path dir = checkpointFile.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path temp = dir.resolve(checkpointFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeLong(checkpoint.maxBidId);
+            out.writeLong(checkpoint.snapshotHeight);
+            out.writeLong(checkpoint.lastBidId);
+            out.writeLong(checkpoint.rows);
+            out.writeLong(checkpoint.elapsedMs);
+            out.writeLong(verified.sum());
+            out.writeLong(pending.sum());
+            out.writeLong(missing.sum());
+            out.writeLong(mismatched.sum());
+            out.writeInt(referenced.length());
+            for (int i = 0; i < referenced.length(); i++) {
+                out.writeLong(referenced.get(i));
+            }
+        }
+        Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Checkpoint readCheckpoint() {
+        if (!Files.exists(checkpointFile)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpointFile)))) {
+            if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION) {
+                logger.warn("Ignoring unreadable audit checkpoint " + checkpointFile);
+                return null;
+            }
+            Checkpoint checkpoint = new Checkpoint(in.readLong(), in.readLong(), in.readLong(), in.readLong(),
+                in.readLong());
+            checkpoint.verified = in.readLong();
+            checkpoint.pending = in.readLong();
+            checkpoint.missing = in.readLong();
+            checkpoint.mismatched = in.readLong();
+            checkpoint.referenced = new long[in.readInt()];
+            for (int i = 0; i < checkpoint.referenced.length; i++) {
+                checkpoint.referenced[i] = in.readLong();
+            }
+            return checkpoint;
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable audit checkpoint " + checkpointFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stop the verifier threads
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * A problem found by the audit; bidId is 0 for orphaned ledger leaves
+     */
+    public static class Problem {
+        private final Finding finding;
+        private final int bidId;
+        private final String detail;
+
+        Problem(Finding finding, int bidId, String detail) {
+            this.finding = finding;
+            this.bidId = bidId;
+            this.detail = detail;
+        }
+
+        public Finding getFinding() { return finding; }
+        public int getBidId() { return bidId; }
+        public String getDetail() { return detail; }
+
+        @Override
+        public String toString() {
+            return finding + (bidId > 0 ? " bid " + bidId : "") + ": " + detail;
+        }
+    }
+
+    /**
+     * Immutable audit result. The sample holds the first problems found by
+     * this run; earlier runs of a resumed audit only contribute to the counts.
+     */
+    public static class AuditReport {
+        private final long rows;
+        private final long verified;
+        private final long pending;
+        private final long missing;
+        private final long mismatched;
+        private final long orphaned;
+        private final boolean chainIntact;
+        private final long elapsedMs;
+        private final long rowsPerSecond;
+        private final List<Problem> sample;
+
+        AuditReport(long rows, long verified, long pending, long missing, long mismatched, long orphaned,
+                    boolean chainIntact, long elapsedMs, long rowsPerSecond, List<Problem> sample) {
+            this.rows = rows;
+            this.verified = verified;
+            this.pending = pending;
+            this.missing = missing;
+            this.mismatched = mismatched;
+            this.orphaned = orphaned;
+            this.chainIntact = chainIntact;
+            this.elapsedMs = elapsedMs;
+            this.rowsPerSecond = rowsPerSecond;
+            this.sample = Collections.unmodifiableList(sample);
+        }
+
+        public long getRows() { return rows; }
+        public long getVerified() { return verified; }
+        public long getPending() { return pending; }
+        public long getMissing() { return missing; }
+        public long getMismatched() { return mismatched; }
+        public long getOrphaned() { return orphaned; }
+        public boolean isChainIntact() { return chainIntact; }
+        public long getElapsedMs() { return elapsedMs; }
+        public long getRowsPerSecond() { return rowsPerSecond; }
+        public List<Problem> getSample() { return sample; }
+
+        public boolean isClean() {
+            return chainIntact && missing == 0 && mismatched == 0 && orphaned == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "rows=" + rows + ", verified=" + verified + ", pending=" + pending
+                + ", missing=" + missing + ", mismatched=" + mismatched + ", orphaned=" + orphaned
+                + ", chain " + (chainIntact ? "intact" : "BROKEN")
+                + ", elapsed=" + elapsedMs + "ms, rows/s=" + rowsPerSecond;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean resume = args.length == 0 || !"--restart".equals(args[0]);
+        LedgerAudit audit = fromConfig(DatabaseConnection::getConnection, BlockchainService.getInstance());
+        AuditReport report;
+        try {
+            report = audit.run(resume);
+        } finally {
+            audit.shutdown();
+            DatabaseConnection.shutdown();
+            BlockchainService.getInstance().shutdown();
+        }
+        System.out.println(report);
+        for (Problem problem : report.getSample()) {
+            System.out.println("  " + problem);
+        }
+        System.exit(report.isClean() ? 0 : 1);
+    }
+}
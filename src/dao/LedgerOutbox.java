@@ -0,0 +1,389 @@
+package dao;
+
+import blockchain.BidRecord;
+import util.LoggerUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transactional outbox between the bids table and the ledger.
+ * A bid and its outbox row commit in the same transaction, so placing a bid
+ * never waits for the ledger. A relay thread claims due rows in batches,
+ * records them on the ledger, then stores each receipt in bids.blockchain_hash
+ * and deletes the outbox rows in one transaction. Failed batches are retried
+ * with exponential backoff. Claims are leases: rows claimed by a relay that
+ * dies become due again after claimTimeoutMs, so delivery is at least once.
+ */
+public class LedgerOutbox {
+    private static final LoggerUtil logger = LoggerUtil.getLogger(LedgerOutbox.class);
+
+    private static final String ENQUEUE_SQL = "INSERT INTO ledger_outbox (bid_id) VALUES (?)";
+    private static final String CLAIM_SQL =
+        "UPDATE ledger_outbox SET claimed_by = ?, attempts = attempts + 1, " +
+        "next_attempt_at = NOW(3) + INTERVAL ? MICROSECOND " +
+        "WHERE next_attempt_at <= NOW(3) ORDER BY next_attempt_at, outbox_id LIMIT ?";
+    private static final String CLAIMED_SQL =
+        "SELECT o.outbox_id, o.bid_id, b.bidder_id, b.vehicle_id, b.bid_amount, b.bid_time, " +
+        "TIMESTAMPDIFF(MICROSECOND, o.created_at, NOW(3)) AS age_us " +
+        "FROM ledger_outbox o JOIN bids b ON b.bid_id = o.bid_id " +
+        "WHERE o.claimed_by = ? ORDER BY o.outbox_id";
+    private static final String COMPLETE_BID_SQL = "UPDATE bids SET blockchain_hash = ? WHERE bid_id = ?";
+    private static final String COMPLETE_OUTBOX_SQL = "DELETE FROM ledger_outbox WHERE outbox_id = ? AND claimed_by = ?";
+    private static final String RETRY_SQL =
+        "UPDATE ledger_outbox SET claimed_by = NULL, last_error = ?, " +
+        "next_attempt_at = NOW(3) + INTERVAL LEAST(?, ? * POW(2, LEAST(attempts - 1, 20))) * 1000 MICROSECOND " +
+        "WHERE claimed_by = ?";
+    private static final String BACKLOG_SQL =
+        "SELECT COUNT(*), TIMESTAMPDIFF(MICROSECOND, MIN(created_at), NOW(3)) FROM ledger_outbox";
+
+    /**
+     * Records a batch of bids on the ledger
+     */
+    public interface Ledger {
+        /**
+         * @param entries the bids to record, in outbox order
+         * @return the receipt text for each entry, in the same order
+         */
+        List<String> record(List<OutboxEntry> entries) throws Exception;
+    }
+
+    private final Callable<Connection> connections;
+    private final Ledger ledger;
+    private volatile int batchSize;
+    private final long pollMs;
+    private final long claimTimeoutMs;
+    private final long retryBaseMs;
+    private final long retryMaxMs;
+    private final String relayId = UUID.randomUUID().toString();
+    private final AtomicLong claimSequence = new AtomicLong();
+    private final Semaphore wakeUp = new Semaphore(0);
+    private final Thread relay;
+    private volatile boolean running = true;
+
+    // Statistics
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong bidsRelayed = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong lagMicrosTotal = new AtomicLong();
+    private final AtomicLong lagMicrosMax = new AtomicLong();
+
+    /**
+     * @param connections supplies a connection for each relay step
+     * @param ledger records claimed bids on the ledger
+     * @param batchSize the most bids claimed at once
+     * @param pollMs how long the relay sleeps when the outbox is drained
+     * @param claimTimeoutMs how long a claim lasts before other relays may retry it
+     * @param retryBaseMs the delay before the first retry; doubles with each attempt
+     * @param retryMaxMs the longest delay between retries
+     */
+    public LedgerOutbox(Callable<Connection> connections, Ledger ledger, int batchSize, long pollMs,
+                        long claimTimeoutMs, long retryBaseMs, long retryMaxMs) {
+        this.connections = connections;
+        this.ledger = ledger;
+        this.batchSize = batchSize;
+        this.pollMs = pollMs;
+        this.claimTimeoutMs = claimTimeoutMs;
+        this.retryBaseMs = retryBaseMs;
+        this.retryMaxMs = retryMaxMs;
+
+        relay = new Thread(this::run, "ledger-relay");
+        relay.setDaemon(true);
+        relay.start();
+        logger.info("Ledger relay started (batch=" + batchSize + ", poll=" + pollMs + "ms)");
+    }
+
+    /**
+     * Add outbox rows for bids, on the connection and in the transaction that inserted them
+     */
+    static void enqueue(Connection conn, List<Integer> bidIds) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(ENQUEUE_SQL)) {
+            for (int bidId : bidIds) {
+                stmt.setInt(1, bidId);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Add the outbox row for one bid, in the transaction that inserted it
+     */
+    static void enqueue(Connection conn, int bidId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(ENQUEUE_SQL)) {
+            stmt.setInt(1, bidId);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Change the most bids claimed at once, from the next claim on
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Wake the relay after new bids were committed
+     */
+    public void signal() {
+        if (wakeUp.availablePermits() == 0) {
+            wakeUp.release();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            int relayed = 0;
+            try {
+                relayed = relayOnce();
+            } catch (Exception e) {
+                logger.error("Ledger relay failed", e);
+            }
+            // A full batch suggests more is due; otherwise wait for new bids or the next poll
+            if (relayed < batchSize) {
+                try {
+                    wakeUp.tryAcquire(pollMs, TimeUnit.MILLISECONDS);
+                    wakeUp.drainPermits();
+                } catch (InterruptedException e) {
+                    running = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Claim one batch of due bids, record it on the ledger and store the receipts
+     *
+     * @return the number of bids relayed
+     */
+    public int relayOnce() throws Exception {
+        String claim = relayId + ":" + claimSequence.incrementAndGet();
+        List<OutboxEntry> entries = claim(claim);
+        if (entries.isEmpty()) {
+            return 0;
+        }
+
+        List<String> receipts;
+        try {
+            receipts = ledger.record(entries);
+            if (receipts.size() != entries.size()) {
+                throw new IllegalStateException("Ledger returned " + receipts.size()
+                    + " receipts for " + entries.size() + " bids");
+            }
+        } catch (Exception e) {
+            failedBatches.incrementAndGet();
+            logger.warn("Ledger rejected a batch of " + entries.size() + " bids, will retry: " + e.getMessage());
+            release(claim, e);
+            return 0;
+        }
+
+        complete(claim, entries, receipts);
+        batches.incrementAndGet();
+        bidsRelayed.addAndGet(entries.size());
+        return entries.size();
+    }
+
+    private List<OutboxEntry> claim(String claim) throws Exception {
+        List<OutboxEntry> entries = new ArrayList<>();
+        try (Connection conn = connections.call()) {
+            try (PreparedStatement stmt = conn.prepareStatement(CLAIM_SQL)) {
+                stmt.setString(1, claim);
+                stmt.setLong(2, TimeUnit.MILLISECONDS.toMicros(claimTimeoutMs));
+                stmt.setInt(3, batchSize);
+                if (stmt.executeUpdate() == 0) {
+                    return entries;
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(CLAIMED_SQL)) {
+                stmt.setString(1, claim);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        entries.add(new OutboxEntry(
+                            rs.getLong("outbox_id"),
+                            rs.getInt("bid_id"),
+                            new BidRecord(
+                                rs.getInt("bidder_id"),
+                                rs.getInt("vehicle_id"),
+                                BidRecord.toCents(rs.getBigDecimal("bid_amount")),
+                                rs.getTimestamp("bid_time").getTime(),
+                                rs.getInt("bid_id")),
+                            rs.getLong("age_us")));
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    // Store the receipts and remove the outbox rows in one transaction
+    private void complete(String claim, List<OutboxEntry> entries, List<String> receipts) throws Exception {
+        long start = System.nanoTime();
+        try (Connection conn = connections.call()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement bids = conn.prepareStatement(COMPLETE_BID_SQL);
+                 PreparedStatement outbox = conn.prepareStatement(COMPLETE_OUTBOX_SQL)) {
+                for (int i = 0; i < entries.size(); i++) {
+                    OutboxEntry entry = entries.get(i);
+                    bids.setString(1, receipts.get(i));
+                    bids.setInt(2, entry.bidId);
+                    bids.addBatch();
+                    outbox.setLong(1, entry.outboxId);
+                    outbox.setString(2, claim);
+                    outbox.addBatch();
+                }
+                bids.executeBatch();
+                outbox.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+
+        long elapsedMicros = (System.nanoTime() - start) / 1000;
+        for (OutboxEntry entry : entries) {
+            long lag = entry.ageMicros + elapsedMicros;
+            lagMicrosTotal.addAndGet(lag);
+            lagMicrosMax.accumulateAndGet(lag, Math::max);
+        }
+    }
+
+    // Give the claimed rows back with a backoff before the next attempt
+    private void release(String claim, Exception cause) {
+        String message = String.valueOf(cause.getMessage());
+        try (Connection conn = connections.call();
+             PreparedStatement stmt = conn.prepareStatement(RETRY_SQL)) {
+            stmt.setString(1, message.length() > 255 ? message.substring(0, 255) : message);
+            stmt.setLong(2, retryMaxMs);
+            stmt.setLong(3, retryBaseMs);
+            stmt.setString(4, claim);
+            stmt.executeUpdate();
+        } catch (Exception e) {
+            // The claim lease expires on its own
+            logger.error("Could not release outbox claim " + claim, e);
+        }
+    }
+
+    /**
+     * Stop the relay after its current batch
+     */
+    public void shutdown(long timeoutMs) {
+        running = false;
+        wakeUp.release();
+        try {
+            relay.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (relay.isAlive()) {
+            logger.warn("Ledger relay did not stop within " + timeoutMs + "ms");
+        }
+    }
+
+    /**
+     * Get a snapshot of the relay statistics, including the current backlog
+     */
+    public OutboxStats getStats() throws SQLException {
+        long backlog = 0;
+        long oldestAgeMs = 0;
+        try (Connection conn = connections.call();
+             PreparedStatement stmt = conn.prepareStatement(BACKLOG_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                backlog = rs.getLong(1);
+                oldestAgeMs = rs.getLong(2) / 1000;
+            }
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException("Could not read outbox backlog", e);
+        }
+
+        long relayed = bidsRelayed.get();
+        return new OutboxStats(
+            backlog,
+            oldestAgeMs,
+            batches.get(),
+            relayed,
+            failedBatches.get(),
+            relayed == 0 ? 0 : lagMicrosTotal.get() / relayed / 1000,
+            lagMicrosMax.get() / 1000
+        );
+    }
+
+    /**
+     * A claimed outbox row with the record of the bid it refers to
+     */
+    public static final class OutboxEntry {
+        private final long outboxId;
+        private final int bidId;
+        private final BidRecord record;
+        private final long ageMicros;
+
+        OutboxEntry(long outboxId, int bidId, BidRecord record, long ageMicros) {
+            this.outboxId = outboxId;
+            this.bidId = bidId;
+            this.record = record;
+            this.ageMicros = ageMicros;
+        }
+
+        public long getOutboxId() { return outboxId; }
+        public int getBidId() { return bidId; }
+        public BidRecord getRecord() { return record; }
+    }
+
+    /**
+     * Immutable snapshot of relay statistics. Lag is the time from a bid's
+     * commit to its receipt being stored, in milliseconds.
+     */
+    public static class OutboxStats {
+        private final long backlog;
+        private final long oldestAgeMs;
+        private final long batches;
+        private final long bidsRelayed;
+        private final long failedBatches;
+        private final long averageLagMs;
+        private final long maxLagMs;
+
+        OutboxStats(long backlog, long oldestAgeMs, long batches, long bidsRelayed, long failedBatches,
+                    long averageLagMs, long maxLagMs) {
+            this.backlog = backlog;
+            this.oldestAgeMs = oldestAgeMs;
+            this.batches = batches;
+            this.bidsRelayed = bidsRelayed;
+            this.failedBatches = failedBatches;
+            this.averageLagMs = averageLagMs;
+            this.maxLagMs = maxLagMs;
+        }
+
+        public long getBacklog() { return backlog; }
+        public long getOldestAgeMs() { return oldestAgeMs; }
+        public long getBatches() { return batches; }
+        public long getBidsRelayed() { return bidsRelayed; }
+        public long getFailedBatches() { return failedBatches; }
+        public long getAverageLagMs() { return averageLagMs; }
+        public long getMaxLagMs() { return maxLagMs; }
+
+        @Override
+        public String toString() {
+            return "backlog=" + backlog + ", oldest=" + oldestAgeMs + "ms, batches=" + batches
+                + ", relayed=" + bidsRelayed + ", failedBatches=" + failedBatches
+                + ", lag(ms) avg=" + averageLagMs + " max=" + maxLagMs;
+        }
+    }
+}
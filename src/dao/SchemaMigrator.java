@@ -0,0 +1,295 @@
+package dao;
+
+import util.LoggerUtil;
+import util.SecurityUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Versioned schema migrations.
+ * Migrations are files named V{version}__{description}.sql. Applied versions
+ * are recorded with a checksum in the schema_version table. When the schema
+ * is current, startup costs one query; otherwise one node at a time applies
+ * the pending migrations under a MySQL advisory lock.
+ */
+public class SchemaMigrator {
+    private static final LoggerUtil logger = LoggerUtil.getLogger(SchemaMigrator.class);
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+    private static final String LOCK_NAME = "gridlocked_cryptizer.schema_migration";
+
+    // MySQL errors meaning the change is already there, e.g. on databases created by the old schema script
+    private static final int ER_TABLE_EXISTS = 1050;
+    private static final int ER_DUP_FIELDNAME = 1060;
+    private static final int ER_DUP_KEYNAME = 1061;
+
+    private static final String CREATE_VERSION_TABLE =
+        "CREATE TABLE IF NOT EXISTS schema_version (" +
+        "version INT PRIMARY KEY, " +
+        "description VARCHAR(200) NOT NULL, " +
+        "checksum VARCHAR(64) NOT NULL, " +
+        "installed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+        "execution_ms INT NOT NULL)";
+
+    private final String databaseName;
+    private final Path migrationsDir;
+    private final int lockTimeoutSeconds;
+
+    public SchemaMigrator(String databaseName, Path migrationsDir, int lockTimeoutSeconds) {
+        this.databaseName = databaseName;
+        this.migrationsDir = migrationsDir;
+        this.lockTimeoutSeconds = lockTimeoutSeconds;
+    }
+
+    /**
+     * Bring the schema up to date
+     *
+     * @param databaseConnections connections to the application database, used for the fast path
+     * @param serverConnections connections to the server without a default database,
+     *                          used when the database may not exist yet
+     * @return the number of migrations applied
+     */
+    public int migrate(Callable<Connection> databaseConnections, Callable<Connection> serverConnections)
+            throws SQLException, IOException {
+        long start = System.currentTimeMillis();
+        List<Migration> migrations = loadMigrations();
+
+        // Fast path: one query against the existing database
+        try (Connection conn = call(databaseConnections)) {
+            if (isCurrent(readApplied(conn), migrations)) {
+                logger.info("Schema is current at version " + latestVersion(migrations)
+                    + " (checked in " + (System.currentTimeMillis() - start) + "ms)");
+                return 0;
+            }
+        } catch (SQLException e) {
+            // Database or version table missing; the slow path creates them
+            logger.info("Schema version unavailable (" + e.getMessage() + "), running migrations");
+        }
+
+        try (Connection conn = call(serverConnections);
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE DATABASE IF NOT EXISTS " + databaseName);
+            conn.setCatalog(databaseName);
+            stmt.executeUpdate(CREATE_VERSION_TABLE);
+
+            acquireLock(conn);
+            try {
+                // Another node may have migrated while we waited for the lock
+                Map<Integer, String> applied = readApplied(conn);
+                int count = 0;
+                for (Migration migration : migrations) {
+                    String checksum = applied.get(migration.version);
+                    if (checksum == null) {
+                        apply(conn, migration);
+                        count++;
+                    } else if (!checksum.equals(migration.checksum)) {
+                        throw new SQLException("Checksum mismatch for applied migration " + migration.fileName
+                            + ": the file was changed after it was applied");
+                    }
+                }
+                logger.info("Applied " + count + " migrations in " + (System.currentTimeMillis() - start) + "ms");
+                return count;
+            } finally {
+                releaseLock(conn);
+            }
+        }
+    }
+
+    // Check that every migration is applied with a matching checksum
+    private static boolean isCurrent(Map<Integer, String> applied, List<Migration> migrations) throws SQLException {
+        for (Migration migration : migrations) {
+            String checksum = applied.get(migration.version);
+            if (checksum == null) {
+                return false;
+            }
+            if (!checksum.equals(migration.checksum)) {
+                throw new SQLException("Checksum mismatch for applied migration " + migration.fileName
+                    + ": the file was changed after it was applied");
+            }
+        }
+        return true;
+    }
+
+    private static Map<Integer, String> readApplied(Connection conn) throws SQLException {
+        Map<Integer, String> applied = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) {
+                applied.put(rs.getInt("version"), rs.getString("checksum"));
+            }
+        }
+        return applied;
+    }
+
+    // Run a migration's statements as one batch and record it
+    private void apply(Connection conn, Migration migration) throws SQLException {
+        long start = System.currentTimeMillis();
+        logger.info("Applying migration " + migration.fileName);
+
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : migration.statements) {
+                stmt.addBatch(sql);
+            }
+            stmt.executeBatch();
+        } catch (BatchUpdateException e) {
+            if (!isAlreadyApplied(e)) {
+                throw e;
+            }
+            // Part of the migration already exists: replay statement by statement, skipping those
+            runIndividually(conn, migration);
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO schema_version (version, description, checksum, execution_ms) VALUES (?, ?, ?, ?)")) {
+            stmt.setInt(1, migration.version);
+            stmt.setString(2, migration.description);
+            stmt.setString(3, migration.checksum);
+            stmt.setLong(4, System.currentTimeMillis() - start);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static void runIndividually(Connection conn, Migration migration) throws SQLException {
+        for (String sql : migration.statements) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(sql);
+            } catch (SQLException e) {
+                if (!isAlreadyApplied(e)) {
+                    throw e;
+                }
+                logger.warn("Skipping statement in " + migration.fileName + ", already applied: " + e.getMessage());
+            }
+        }
+    }
+
+    private static boolean isAlreadyApplied(SQLException e) {
+        int code = e.getErrorCode();
+        return code == ER_TABLE_EXISTS || code == ER_DUP_FIELDNAME || code == ER_DUP_KEYNAME;
+    }
+
+    private void acquireLock(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            stmt.setString(1, LOCK_NAME);
+            stmt.setInt(2, lockTimeoutSeconds);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new SQLException("Timed out after " + lockTimeoutSeconds
+                        + "s waiting for another node to finish migrating");
+                }
+            }
+        }
+    }
+
+    private static void releaseLock(Connection conn) {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            stmt.setString(1, LOCK_NAME);
+            stmt.executeQuery().close();
+        } catch (SQLException e) {
+            logger.warn("Could not release migration lock: " + e.getMessage());
+        }
+    }
+
+    // Read and checksum the migration files in version order
+    private List<Migration> loadMigrations() throws IOException {
+        List<Migration> migrations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(migrationsDir, "V*__*.sql")) {
+            for (Path file : files) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (!matcher.matches()) {
+                    continue;
+                }
+                String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).replace("\r\n", "\n");
+                migrations.add(new Migration(
+                    Integer.parseInt(matcher.group(1)),
+                    matcher.group(2).replace('_', ' '),
+                    file.getFileName().toString(),
+                    checksum(content),
+                    splitStatements(content)));
+            }
+        }
+        migrations.sort((a, b) -> Integer.compare(a.version, b.version));
+
+        for (int i = 1; i < migrations.size(); i++) {
+            if (migrations.get(i).version == migrations.get(i - 1).version) {
+                throw new IOException("Duplicate migration version " + migrations.get(i).version);
+            }
+        }
+        return migrations;
+    }
+
+    // Split a script into statements on trailing semicolons, skipping comment lines
+    private static List<String> splitStatements(String content) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        for (String line : content.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("--") || trimmed.isEmpty()) {
+                continue;
+            }
+            sb.append(line).append('\n');
+
+            if (trimmed.endsWith(";")) {
+                sb.setLength(sb.lastIndexOf(";"));
+                statements.add(sb.toString().trim());
+                sb.setLength(0);
+            }
+        }
+        if (sb.toString().trim().length() > 0) {
+            statements.add(sb.toString().trim());
+        }
+        return statements;
+    }
+
+    private static String checksum(String content) {
+        MessageDigest md = SecurityUtil.sha256();
+        return Base64.getEncoder().encodeToString(md.digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static int latestVersion(List<Migration> migrations) {
+        return migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).version;
+    }
+
+    private static Connection call(Callable<Connection> connections) throws SQLException {
+        try {
+            return connections.call();
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException("Could not open connection", e);
+        }
+    }
+
+    private static final class Migration {
+        private final int version;
+        private final String description;
+        private final String fileName;
+        private final String checksum;
+        private final List<String> statements;
+
+        Migration(int version, String description, String fileName, String checksum, List<String> statements) {
+            this.version = version;
+            this.description = description;
+            this.fileName = fileName;
+            this.checksum = checksum;
+            this.statements = statements;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package dao;
+
+import model.Vehicle;
+import util.ConfigManager;
+import util.LoggerUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Paged and streaming access to the vehicle catalog.
+ * Memory use depends on the page size, not on the size of the catalog.
+ */
+public class VehicleCatalog {
+    private static final LoggerUtil logger = LoggerUtil.getLogger(VehicleCatalog.class);
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final String PAGE_BY_ID_SQL =
+        "SELECT v.*, " +
+        "(SELECT MAX(bid_amount) FROM bids WHERE vehicle_id = v.vehicle_id) AS highest_bid " +
+        "FROM vehicles v WHERE v.vehicle_id > ? ORDER BY v.vehicle_id LIMIT ?";
+
+    private static final String PAGE_BY_HIGHEST_BID_SQL =
+        "SELECT * FROM (" +
+        "SELECT v.*, COALESCE(" +
+        "(SELECT MAX(bid_amount) FROM bids WHERE vehicle_id = v.vehicle_id), v.starting_bid) AS highest_bid " +
+        "FROM vehicles v) c " +
+        "WHERE c.highest_bid < ? OR (c.highest_bid = ? AND c.vehicle_id > ?) " +
+        "ORDER BY c.highest_bid DESC, c.vehicle_id LIMIT ?";
+
+    private static final String STREAM_SQL =
+        "SELECT v.*, b.highest_bid FROM vehicles v LEFT JOIN " +
+        "(SELECT vehicle_id, MAX(bid_amount) AS highest_bid FROM bids GROUP BY vehicle_id) b " +
+        "ON b.vehicle_id = v.vehicle_id ORDER BY v.vehicle_id";
+
+    private VehicleCatalog() {
+    }
+
+    /**
+     * Get one page of the catalog
+     *
+     * @param cursor where to resume; use {@link VehiclePage.Cursor#first} for the first page
+     * @param pageSize the maximum number of vehicles to return
+     * @return the page and the cursor for the next one
+     */
+    public static VehiclePage getPage(VehiclePage.Cursor cursor, int pageSize) throws SQLException {
+        int limit = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        boolean byHighestBid = cursor.getOrder() == VehiclePage.Order.BY_HIGHEST_BID;
+        List<Vehicle> vehicles = new ArrayList<>(limit);
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(byHighestBid ? PAGE_BY_HIGHEST_BID_SQL : PAGE_BY_ID_SQL)) {
+
+            if (byHighestBid) {
+                stmt.setDouble(1, cursor.getLastHighestBid());
+                stmt.setDouble(2, cursor.getLastHighestBid());
+                stmt.setInt(3, cursor.getLastVehicleId());
+                stmt.setInt(4, limit + 1);
+            } else {
+                stmt.setInt(1, cursor.getLastVehicleId());
+                stmt.setInt(2, limit + 1);
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    vehicles.add(mapVehicle(rs));
+                }
+            }
+        }
+
+        // One extra row was fetched to learn whether another page exists
+        VehiclePage.Cursor next = null;
+        if (vehicles.size() > limit) {
+            vehicles.remove(limit);
+            Vehicle last = vehicles.get(limit - 1);
+            next = new VehiclePage.Cursor(cursor.getOrder(), last.getVehicleId(), last.getHighestBid());
+        }
+        return new VehiclePage(vehicles, next);
+    }
+
+    /**
+     * Stream the whole catalog in vehicle ID order over a forward-only result set.
+     * The stream holds a pooled connection until it is closed, so use it in a
+     * try-with-resources block.
+     */
+    public static Stream<Vehicle> streamVehicles() throws SQLException {
+        int fetchSize = ConfigManager.getInstance().getIntProperty("catalog.fetch_size", Integer.MIN_VALUE);
+
+        Connection conn = DatabaseConnection.getConnection();
+        try {
+            PreparedStatement stmt = conn.prepareStatement(
+                STREAM_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // Integer.MIN_VALUE makes Connector/J stream rows one at a time instead of buffering the result
+            stmt.setFetchSize(fetchSize);
+            ResultSet rs = stmt.executeQuery();
+
+            Spliterator<Vehicle> rows = new Spliterators.AbstractSpliterator<Vehicle>(
+                    Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+                @Override
+                public boolean tryAdvance(Consumer<? super Vehicle> action) {
+                    try {
+                        if (!rs.next()) {
+                            return false;
+                        }
+                        action.accept(mapVehicle(rs));
+                        return true;
+                    } catch (SQLException e) {
+                        throw new IllegalStateException("Error streaming vehicles", e);
+                    }
+                }
+            };
+
+            return StreamSupport.stream(rows, false).onClose(() -> {
+                try {
+                    rs.close();
+                    stmt.close();
+                } catch (SQLException e) {
+                    logger.warn("Error closing vehicle stream: " + e.getMessage());
+                } finally {
+                    closeQuietly(conn);
+                }
+            });
+        } catch (SQLException | RuntimeException e) {
+            closeQuietly(conn);
+            throw e;
+        }
+    }
+
+    private static Vehicle mapVehicle(ResultSet rs) throws SQLException {
+        double startingBid = rs.getDouble("starting_bid");
+        double highestBid = rs.getDouble("highest_bid");
+        if (rs.wasNull()) {
+            highestBid = startingBid;
+        }
+        return new Vehicle(
+            rs.getInt("vehicle_id"),
+            rs.getString("make"),
+            rs.getString("model"),
+            rs.getInt("year"),
+            startingBid,
+            highestBid
+        );
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            logger.warn("Error closing connection: " + e.getMessage());
+        }
+    }
+}
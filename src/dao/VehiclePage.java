@@ -0,0 +1,70 @@
+package dao;
+
+import model.Vehicle;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of the vehicle catalog and the cursor for the page after it
+ */
+public class VehiclePage {
+    /**
+     * Catalog sort orders supported by keyset pagination
+     */
+    public enum Order {
+        BY_VEHICLE_ID,
+        BY_HIGHEST_BID
+    }
+
+    /**
+     * Position after the last vehicle of a page. Pages resume strictly after
+     * this key, so inserts and bids between requests never shift a page.
+     */
+    public static class Cursor {
+        private final Order order;
+        private final int lastVehicleId;
+        private final double lastHighestBid;
+
+        public Cursor(Order order, int lastVehicleId, double lastHighestBid) {
+            this.order = order;
+            this.lastVehicleId = lastVehicleId;
+            this.lastHighestBid = lastHighestBid;
+        }
+
+        /**
+         * Get the cursor for the first page
+         */
+        public static Cursor first(Order order) {
+            return new Cursor(order, 0, Double.MAX_VALUE);
+        }
+
+        public Order getOrder() { return order; }
+        public int getLastVehicleId() { return lastVehicleId; }
+        public double getLastHighestBid() { return lastHighestBid; }
+
+        @Override
+        public String toString() {
+            return order + ":" + lastVehicleId + ":" + lastHighestBid;
+        }
+    }
+
+    private final List<Vehicle> vehicles;
+    private final Cursor next;
+
+    public VehiclePage(List<Vehicle> vehicles, Cursor next) {
+        this.vehicles = Collections.unmodifiableList(vehicles);
+        this.next = next;
+    }
+
+    public List<Vehicle> getVehicles() { return vehicles; }
+
+    /**
+     * Get the cursor for the next page, or null if this was the last page
+     */
+    public Cursor getNext() { return next; }
+
+    public boolean hasNext() {
+        return next != null;
+    }
+}
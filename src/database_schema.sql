@@ -1,5 +1,7 @@
 -- Database schema for Gridlocked Cryptizer
--- Run this script to create the necessary database and tables
+-- Run this script to create the necessary database and tables by hand.
+-- The application applies the versioned migrations in src/db/migration itself
+-- and records them in schema_version; keep this file in step with them.
 
 -- Create the database if it doesn't exist
 CREATE DATABASE IF NOT EXISTS gridlocked_cryptizer;
@@ -21,7 +23,8 @@ CREATE TABLE IF NOT EXISTS vehicles (
     make VARCHAR(50) NOT NULL,
     model VARCHAR(50) NOT NULL,
     year INT NOT NULL,
-    starting_bid DECIMAL(10, 2) NOT NULL
+    starting_bid DECIMAL(10, 2) NOT NULL,
+    auction_end TIMESTAMP NULL
 );
 
 -- Create the bids table
@@ -30,9 +33,26 @@ CREATE TABLE IF NOT EXISTS bids (
     bidder_id INT NOT NULL,
     vehicle_id INT NOT NULL,
     bid_amount DECIMAL(10, 2) NOT NULL,
-    bid_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    bid_time TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    blockchain_hash VARCHAR(128) NULL,
     FOREIGN KEY (bidder_id) REFERENCES bidders(bidder_id),
-    FOREIGN KEY (vehicle_id) REFERENCES vehicles(vehicle_id)
+    FOREIGN KEY (vehicle_id) REFERENCES vehicles(vehicle_id),
+    INDEX idx_bids_vehicle_amount (vehicle_id, bid_amount),
+    INDEX idx_bids_bidder_time (bidder_id, bid_time)
+);
+
+-- Create the ledger outbox table: bids waiting to be recorded on the ledger
+CREATE TABLE IF NOT EXISTS ledger_outbox (
+    outbox_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    bid_id INT NOT NULL,
+    created_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    next_attempt_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    attempts INT NOT NULL DEFAULT 0,
+    claimed_by VARCHAR(64) NULL,
+    last_error VARCHAR(255) NULL,
+    FOREIGN KEY (bid_id) REFERENCES bids(bid_id),
+    INDEX idx_ledger_outbox_due (next_attempt_at),
+    INDEX idx_ledger_outbox_claim (claimed_by)
 );
 
 -- Insert some sample vehicles
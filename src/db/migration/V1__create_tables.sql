@@ -0,0 +1,27 @@
+-- Core tables for Gridlocked Cryptizer
+-- IF NOT EXISTS lets this adopt databases created by the old database_schema.sql
+
+CREATE TABLE IF NOT EXISTS bidders (
+    bidder_id INT AUTO_INCREMENT PRIMARY KEY,
+    username VARCHAR(50) NOT NULL UNIQUE,
+    password VARCHAR(100) NOT NULL,
+    email VARCHAR(100) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS vehicles (
+    vehicle_id INT AUTO_INCREMENT PRIMARY KEY,
+    make VARCHAR(50) NOT NULL,
+    model VARCHAR(50) NOT NULL,
+    year INT NOT NULL,
+    starting_bid DECIMAL(10, 2) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS bids (
+    bid_id INT AUTO_INCREMENT PRIMARY KEY,
+    bidder_id INT NOT NULL,
+    vehicle_id INT NOT NULL,
+    bid_amount DECIMAL(10, 2) NOT NULL,
+    bid_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (bidder_id) REFERENCES bidders(bidder_id),
+    FOREIGN KEY (vehicle_id) REFERENCES vehicles(vehicle_id)
+);
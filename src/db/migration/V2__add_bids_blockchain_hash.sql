@@ -0,0 +1,3 @@
+-- placeBid stores the blockchain hash of every bid
+
+ALTER TABLE bids ADD COLUMN blockchain_hash VARCHAR(128) NULL;
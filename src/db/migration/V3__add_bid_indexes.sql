@@ -0,0 +1,7 @@
+-- Serves MAX(bid_amount) per vehicle (bid book warm-up, conditional insert, catalog pages)
+-- straight from the index instead of scanning each vehicle's bids
+
+CREATE INDEX idx_bids_vehicle_amount ON bids (vehicle_id, bid_amount);
+
+-- Serves a bidder's bid history
+CREATE INDEX idx_bids_bidder_time ON bids (bidder_id, bid_time);
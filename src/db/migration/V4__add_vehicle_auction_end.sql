@@ -0,0 +1,3 @@
+-- Optional closing time; bids are rejected once it has passed
+
+ALTER TABLE vehicles ADD COLUMN auction_end TIMESTAMP NULL;
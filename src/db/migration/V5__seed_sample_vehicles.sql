@@ -0,0 +1,11 @@
+-- Sample vehicles, only inserted into an empty catalog
+
+INSERT INTO vehicles (make, model, year, starting_bid)
+SELECT s.make, s.model, s.year, s.starting_bid FROM (
+    SELECT 'Toyota' AS make, 'Camry' AS model, 2020 AS year, 15000.00 AS starting_bid
+    UNION ALL SELECT 'Honda', 'Civic', 2019, 12000.00
+    UNION ALL SELECT 'Ford', 'Mustang', 2018, 25000.00
+    UNION ALL SELECT 'Chevrolet', 'Corvette', 2021, 45000.00
+    UNION ALL SELECT 'BMW', 'X5', 2020, 35000.00
+) s
+WHERE NOT EXISTS (SELECT 1 FROM vehicles);
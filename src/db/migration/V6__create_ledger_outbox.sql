@@ -0,0 +1,16 @@
+-- Bids waiting to be recorded on the ledger. A row is written in the same
+-- transaction as its bid and deleted once the ledger receipt is stored in
+-- bids.blockchain_hash.
+
+CREATE TABLE IF NOT EXISTS ledger_outbox (
+    outbox_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    bid_id INT NOT NULL,
+    created_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    next_attempt_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    attempts INT NOT NULL DEFAULT 0,
+    claimed_by VARCHAR(64) NULL,
+    last_error VARCHAR(255) NULL,
+    FOREIGN KEY (bid_id) REFERENCES bids(bid_id),
+    INDEX idx_ledger_outbox_due (next_attempt_at),
+    INDEX idx_ledger_outbox_claim (claimed_by)
+);
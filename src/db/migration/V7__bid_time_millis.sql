@@ -0,0 +1,6 @@
+-- bid_time becomes part of each bid's ledger record, so it is kept to the
+-- millisecond and can never be NULL
+
+UPDATE bids SET bid_time = CURRENT_TIMESTAMP WHERE bid_time IS NULL;
+
+ALTER TABLE bids MODIFY bid_time TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3);
@@ -0,0 +1,265 @@
+package ui;
+
+import model.Vehicle;
+
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.RowFilter;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model for the vehicle list.
+ * Vehicles are held column by column in parallel arrays, in vehicle ID
+ * order as the catalog returns them, so the model costs a few bytes per
+ * row and JTable only asks for the cells it paints. update() merges a
+ * freshly loaded catalog into the rows: changed bids fire row updates,
+ * added and removed lots fire row inserts and deletes, and selection,
+ * sorting and scroll position survive the refresh. When most of the
+ * catalog changed at once the table is reloaded in one event instead.
+ * Only use from the Event Dispatch Thread.
+ */
+public class VehicleTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    public static final int ID_COLUMN = 0;
+    public static final int YEAR_COLUMN = 1;
+    public static final int MAKE_COLUMN = 2;
+    public static final int MODEL_COLUMN = 3;
+    public static final int STARTING_BID_COLUMN = 4;
+    public static final int HIGHEST_BID_COLUMN = 5;
+
+    private static final String[] COLUMN_NAMES = {"ID", "Year", "Make", "Model", "Starting Bid", "Highest Bid"};
+    private static final Class<?>[] COLUMN_CLASSES = {
+        Integer.class, Integer.class, String.class, String.class, Double.class, Double.class
+    };
+    // Row inserts and deletes each shift the arrays; past this many, reload instead
+    private static final int MAX_STRUCTURAL_CHANGES = 64;
+
+    private int size;
+    private int[] ids = new int[0];
+    private int[] years = new int[0];
+    private String[] makes = new String[0];
+    private String[] models = new String[0];
+    private double[] startingBids = new double[0];
+    private double[] highestBids = new double[0];
+
+    @Override
+    public int getRowCount() {
+        return size;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return COLUMN_CLASSES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        switch (column) {
+            case ID_COLUMN: return ids[row];
+            case YEAR_COLUMN: return years[row];
+            case MAKE_COLUMN: return makes[row];
+            case MODEL_COLUMN: return models[row];
+            case STARTING_BID_COLUMN: return startingBids[row];
+            case HIGHEST_BID_COLUMN: return highestBids[row];
+            default: throw new IndexOutOfBoundsException("column " + column);
+        }
+    }
+
+    /**
+     * Get the vehicle ID shown in a model row
+     */
+    public int getVehicleId(int row) {
+        return ids[row];
+    }
+
+    /**
+     * Apply a freshly loaded catalog, firing events only for the rows that changed
+     *
+     * @param vehicles the whole catalog, ordered by vehicle ID
+     */
+    public void update(List<Vehicle> vehicles) {
+        Vehicle[] incoming = vehicles.toArray(new Vehicle[0]);
+        int structural = countStructuralChanges(incoming);
+        if (structural > Math.max(MAX_STRUCTURAL_CHANGES, size / 100)) {
+            replaceAll(incoming);
+            return;
+        }
+
+        // Merge by vehicle ID; row is where the model stands after the events fired so far
+        int row = 0;
+        int runStart = -1;
+        for (Vehicle vehicle : incoming) {
+            int id = vehicle.getVehicleId();
+            while (row < size && ids[row] < id) {
+                runStart = flushRun(runStart, row);
+                removeRow(row);
+                fireTableRowsDeleted(row, row);
+            }
+            if (row < size && ids[row] == id) {
+                if (set(row, vehicle)) {
+                    if (runStart < 0) runStart = row;
+                } else {
+                    runStart = flushRun(runStart, row);
+                }
+            } else {
+                runStart = flushRun(runStart, row);
+                insertRow(row, vehicle);
+                fireTableRowsInserted(row, row);
+            }
+            row++;
+        }
+        flushRun(runStart, row);
+        if (row < size) {
+            int removed = size;
+            size = row;
+            Arrays.fill(makes, row, removed, null);
+            Arrays.fill(models, row, removed, null);
+            fireTableRowsDeleted(row, removed - 1);
+        }
+    }
+
+    // Fire one update for the run of changed rows ending before row
+    private int flushRun(int runStart, int row) {
+        if (runStart >= 0) {
+            fireTableRowsUpdated(runStart, row - 1);
+        }
+        return -1;
+    }
+
+    private int countStructuralChanges(Vehicle[] incoming) {
+        int changes = 0;
+        int row = 0;
+        for (Vehicle vehicle : incoming) {
+            int id = vehicle.getVehicleId();
+            while (row < size && ids[row] < id) {
+                row++;
+                changes++;
+            }
+            if (row < size && ids[row] == id) {
+                row++;
+            } else {
+                changes++;
+            }
+        }
+        return changes + (size - row);
+    }
+
+    private void replaceAll(Vehicle[] incoming) {
+        size = 0;
+        ids = new int[incoming.length];
+        years = new int[incoming.length];
+        makes = new String[incoming.length];
+        models = new String[incoming.length];
+        startingBids = new double[incoming.length];
+        highestBids = new double[incoming.length];
+        for (Vehicle vehicle : incoming) {
+            set(size++, vehicle);
+        }
+        fireTableDataChanged();
+    }
+
+    // Store a vehicle in a row, returning whether anything shown changed
+    private boolean set(int row, Vehicle vehicle) {
+        boolean changed = ids[row] != vehicle.getVehicleId()
+            || years[row] != vehicle.getYear()
+            || !equal(makes[row], vehicle.getMake())
+            || !equal(models[row], vehicle.getModel())
+            || startingBids[row] != vehicle.getStartingBid()
+            || highestBids[row] != vehicle.getHighestBid();
+        ids[row] = vehicle.getVehicleId();
+        years[row] = vehicle.getYear();
+        makes[row] = vehicle.getMake();
+        models[row] = vehicle.getModel();
+        startingBids[row] = vehicle.getStartingBid();
+        highestBids[row] = vehicle.getHighestBid();
+        return changed;
+    }
+
+    private void insertRow(int row, Vehicle vehicle) {
+        if (size == ids.length) {
+            int capacity = Math.max(16, size + (size >> 1));
+            ids = Arrays.copyOf(ids, capacity);
+            years = Arrays.copyOf(years, capacity);
+            makes = Arrays.copyOf(makes, capacity);
+            models = Arrays.copyOf(models, capacity);
+            startingBids = Arrays.copyOf(startingBids, capacity);
+            highestBids = Arrays.copyOf(highestBids, capacity);
+        }
+        int tail = size - row;
+        System.arraycopy(ids, row, ids, row + 1, tail);
+        System.arraycopy(years, row, years, row + 1, tail);
+        System.arraycopy(makes, row, makes, row + 1, tail);
+        System.arraycopy(models, row, models, row + 1, tail);
+        System.arraycopy(startingBids, row, startingBids, row + 1, tail);
+        System.arraycopy(highestBids, row, highestBids, row + 1, tail);
+        size++;
+        set(row, vehicle);
+    }
+
+    private void removeRow(int row) {
+        int tail = size - row - 1;
+        System.arraycopy(ids, row + 1, ids, row, tail);
+        System.arraycopy(years, row + 1, years, row, tail);
+        System.arraycopy(makes, row + 1, makes, row, tail);
+        System.arraycopy(models, row + 1, models, row, tail);
+        System.arraycopy(startingBids, row + 1, startingBids, row, tail);
+        System.arraycopy(highestBids, row + 1, highestBids, row, tail);
+        size--;
+        makes[size] = null;
+        models[size] = null;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Create a filter that keeps vehicles whose make or model contains the
+     * text, or whose ID or year equals it. Rows are matched straight from
+     * the arrays, so filtering needs no query and no per-row objects.
+     */
+    public RowFilter<VehicleTableModel, Integer> textFilter(String text) {
+        String query = text.trim();
+        if (query.isEmpty()) {
+            return null;
+        }
+        int number;
+        try {
+            number = Integer.parseInt(query);
+        } catch (NumberFormatException e) {
+            number = -1;
+        }
+        int wanted = number;
+        return new RowFilter<VehicleTableModel, Integer>() {
+            @Override
+            public boolean include(Entry<? extends VehicleTableModel, ? extends Integer> entry) {
+                int row = entry.getIdentifier();
+                return ids[row] == wanted || years[row] == wanted
+                    || containsIgnoreCase(makes[row], query) || containsIgnoreCase(models[row], query);
+            }
+        };
+    }
+
+    private static boolean containsIgnoreCase(String value, String query) {
+        if (value == null) {
+            return false;
+        }
+        for (int i = 0; i + query.length() <= value.length(); i++) {
+            if (value.regionMatches(true, i, query, 0, query.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
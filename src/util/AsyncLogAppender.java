@@ -0,0 +1,428 @@
+package util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The logging backend every LoggerUtil writes through.
+ * Callers copy their event into a preallocated ring buffer slot and return;
+ * a single writer thread formats the events and writes each drained run to
+ * the log file (and the console) in one write. The file rotates when it
+ * reaches log.rotate.max_bytes or is older than log.rotate.interval_ms,
+ * keeping log.rotate.keep old files. When the buffer is full the caller
+ * either waits for room (log.buffer.full_policy=block) or the event is
+ * dropped and counted (drop); the writer reports drops in the log itself.
+ */
+public final class AsyncLogAppender {
+    private static final DateTimeFormatter TIMESTAMP =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+    private static final int MAX_BATCH_BYTES = 256 * 1024;
+
+    /**
+     * One preallocated ring buffer slot
+     */
+    private static final class Event {
+        long timeMillis;
+        LoggerUtil.Level level;
+        String logger;
+        String thread;
+        String message;
+        Throwable throwable;
+
+        void clear() {
+            message = null;
+            throwable = null;
+        }
+    }
+
+    private final Event[] ring;
+    private final int mask;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    // Guarded by lock: events in [head, tail) are waiting to be written
+    private long head;
+    private long tail;
+    private boolean running = true;
+
+    private volatile LoggerUtil.Level threshold;
+    private final boolean dropWhenFull;
+    private final boolean console;
+    private final File file;
+    private final long maxBytes;
+    private final long intervalMs;
+    private final int keep;
+    private final Thread writer;
+
+    // Owned by the writer thread
+    private OutputStream out;
+    private long fileBytes;
+    private long fileOpenedMillis;
+    private long droppedReported;
+    private final StringBuilder text = new StringBuilder(8192);
+
+    // Statistics
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong rotations = new AtomicLong();
+
+    /**
+     * @param capacity the ring buffer size, rounded up to a power of two
+     * @param threshold events below this level are discarded by the caller
+     * @param dropWhenFull drop events when the buffer is full instead of waiting
+     * @param console also write events to standard error
+     * @param file the log file
+     * @param maxBytes rotate when the file reaches this size, or 0 for never
+     * @param intervalMs rotate when the file is older than this, or 0 for never
+     * @param keep the number of rotated files to keep
+     */
+    public AsyncLogAppender(int capacity, LoggerUtil.Level threshold, boolean dropWhenFull, boolean console,
+                            File file, long maxBytes, long intervalMs, int keep) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        ring = new Event[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Event();
+        }
+        mask = size - 1;
+        this.threshold = threshold;
+        this.dropWhenFull = dropWhenFull;
+        this.console = console;
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.intervalMs = intervalMs;
+        this.keep = Math.max(1, keep);
+
+        openFile();
+        writer = new Thread(this::run, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Create the appender from the log.* settings
+     */
+    public static AsyncLogAppender fromConfig() {
+        ConfigManager config = ConfigManager.getInstance();
+        return new AsyncLogAppender(
+            config.getIntProperty("log.buffer.size", 8192),
+            LoggerUtil.Level.parse(config.getProperty("log.level", "INFO")),
+            "drop".equalsIgnoreCase(config.getProperty("log.buffer.full_policy", "block").trim()),
+            Boolean.parseBoolean(config.getProperty("log.console", "true").trim()),
+            new File(config.getProperty("log.file", "gridlocked_cryptizer.log")),
+            config.getLongProperty("log.rotate.max_bytes", 10485760L),
+            config.getLongProperty("log.rotate.interval_ms", 86400000L),
+            config.getIntProperty("log.rotate.keep", 5));
+    }
+
+    /**
+     * Change the lowest level written, effective for the next event
+     */
+    public void setThreshold(LoggerUtil.Level threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Check whether events at a level are written
+     */
+    public boolean isEnabled(LoggerUtil.Level level) {
+        return level.compareTo(threshold) >= 0;
+    }
+
+    /**
+     * Queue an event for the writer
+     *
+     * @return false if the event was dropped
+     */
+    public boolean append(LoggerUtil.Level level, String logger, String message, Throwable throwable) {
+        long now = System.currentTimeMillis();
+        String thread = Thread.currentThread().getName();
+        lock.lock();
+        try {
+            if (tail - head == ring.length) {
+                // The writer cannot wait on itself
+                if (dropWhenFull || !running || Thread.currentThread() == writer) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                blocked.incrementAndGet();
+                while (tail - head == ring.length && running) {
+                    notFull.awaitUninterruptibly();
+                }
+                if (!running) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+            }
+            Event event = ring[(int) (tail & mask)];
+            event.timeMillis = now;
+            event.level = level;
+            event.logger = logger;
+            event.thread = thread;
+            event.message = message;
+            event.throwable = throwable;
+            if (tail++ == head) {
+                notEmpty.signal();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            long from;
+            long to;
+            lock.lock();
+            try {
+                while (head == tail && running) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (head == tail) {
+                    break;
+                }
+                from = head;
+                to = tail;
+            } finally {
+                lock.unlock();
+            }
+
+            // Producers never overwrite [from, to) until head moves past it
+            for (long seq = from; seq < to; seq++) {
+                Event event = ring[(int) (seq & mask)];
+                format(event);
+                event.clear();
+                if (text.length() >= MAX_BATCH_BYTES) {
+                    writeBatch();
+                }
+            }
+            reportDrops();
+            writeBatch();
+            written.addAndGet(to - from);
+
+            lock.lock();
+            try {
+                head = to;
+                notFull.signalAll();
+                if (head == tail) {
+                    drained.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        closeFile();
+    }
+
+    private void format(Event event) {
+        TIMESTAMP.formatTo(Instant.ofEpochMilli(event.timeMillis), text);
+        text.append(" [").append(event.level).append("] [").append(event.thread).append("] ")
+            .append(event.logger).append(": ").append(event.message).append(System.lineSeparator());
+        if (event.throwable != null) {
+            StringWriter trace = new StringWriter();
+            event.throwable.printStackTrace(new PrintWriter(trace));
+            text.append(trace);
+        }
+    }
+
+    private void reportDrops() {
+        long count = dropped.get();
+        if (count != droppedReported) {
+            TIMESTAMP.formatTo(Instant.now(), text);
+            text.append(" [WARN] [log-writer] ").append(AsyncLogAppender.class.getName()).append(": ")
+                .append(count - droppedReported).append(" log events dropped, buffer full")
+                .append(System.lineSeparator());
+            droppedReported = count;
+        }
+    }
+
+    // Write the formatted events with one call to each destination
+    private void writeBatch() {
+        if (text.length() == 0) {
+            return;
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        text.setLength(0);
+        batches.incrementAndGet();
+        if (console) {
+            System.err.write(bytes, 0, bytes.length);
+            System.err.flush();
+        }
+        if (out == null) {
+            return;
+        }
+        try {
+            out.write(bytes);
+            out.flush();
+            fileBytes += bytes.length;
+        } catch (IOException e) {
+            System.err.println("Failed to write log file " + file + ": " + e.getMessage());
+        }
+        if ((maxBytes > 0 && fileBytes >= maxBytes)
+            || (intervalMs > 0 && System.currentTimeMillis() - fileOpenedMillis >= intervalMs)) {
+            rotate();
+        }
+    }
+
+    // Shift name.1 .. name.(keep-1) up by one, move the current file to name.1 and start a new one
+    private void rotate() {
+        closeFile();
+        String name = file.getPath();
+        new File(name + "." + keep).delete();
+        for (int i = keep - 1; i >= 1; i--) {
+            File older = new File(name + "." + i);
+            if (older.exists() && !older.renameTo(new File(name + "." + (i + 1)))) {
+                System.err.println("Failed to rotate log file " + older);
+            }
+        }
+        if (!file.renameTo(new File(name + ".1"))) {
+            System.err.println("Failed to rotate log file " + file);
+        }
+        rotations.incrementAndGet();
+        openFile();
+    }
+
+    private void openFile() {
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            out = new FileOutputStream(file, true);
+            fileBytes = file.length();
+            // An appended file counts from now; its age is not recorded anywhere
+            fileOpenedMillis = System.currentTimeMillis();
+        } catch (IOException e) {
+            System.err.println("Failed to open log file " + file + ": " + e.getMessage());
+            out = null;
+        }
+    }
+
+    private void closeFile() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close log file " + file + ": " + e.getMessage());
+        }
+        out = null;
+    }
+
+    /**
+     * Wait until every event queued so far has been written
+     *
+     * @return false if the timeout expired first
+     */
+    public boolean flush(long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lock();
+        try {
+            long target = tail;
+            while (head < target) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !writer.isAlive()) {
+                    return false;
+                }
+                drained.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the queued events, close the file and stop the writer.
+     * Events logged afterwards are dropped.
+     */
+    public void shutdown(long timeoutMs) {
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get a snapshot of the appender statistics
+     */
+    public LogStats getStats() {
+        int queued;
+        lock.lock();
+        try {
+            queued = (int) (tail - head);
+        } finally {
+            lock.unlock();
+        }
+        return new LogStats(written.get(), dropped.get(), blocked.get(), batches.get(), rotations.get(),
+            queued, ring.length);
+    }
+
+    /**
+     * Immutable snapshot of appender statistics
+     */
+    public static class LogStats {
+        private final long written;
+        private final long dropped;
+        private final long blocked;
+        private final long batches;
+        private final long rotations;
+        private final int queued;
+        private final int capacity;
+
+        public LogStats(long written, long dropped, long blocked, long batches, long rotations,
+                        int queued, int capacity) {
+            this.written = written;
+            this.dropped = dropped;
+            this.blocked = blocked;
+            this.batches = batches;
+            this.rotations = rotations;
+            this.queued = queued;
+            this.capacity = capacity;
+        }
+
+        public long getWritten() { return written; }
+        public long getDropped() { return dropped; }
+        public long getBlocked() { return blocked; }
+        public long getBatches() { return batches; }
+        public long getRotations() { return rotations; }
+        public int getQueued() { return queued; }
+        public int getCapacity() { return capacity; }
+
+        @Override
+        public String toString() {
+            return String.format("LogStats[written=%d, dropped=%d, blocked=%d, batches=%d, "
+                + "events/batch=%.1f, rotations=%d, queued=%d/%d]",
+                written, dropped, blocked, batches, batches == 0 ? 0.0 : (double) written / batches,
+                rotations, queued, capacity);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flight Recorder event for one stage of a bid.
+ * Every stage of the same bid carries the correlation id handed out when
+ * the bid was placed; the ledger stage runs later in the outbox relay and
+ * only knows the bid id, which the db_insert stage links to the correlation
+ * id. start() begins the clock before the stage and finish() fills the
+ * event in and commits it only if shouldCommit() is true, so when no
+ * recording has the event enabled the JIT reduces both to nothing.
+ *
+ * Record with: -XX:StartFlightRecording=filename=bids.jfr
+ * Analyze with: java util.BidTraceAnalyzer bids.jfr
+ */
+@Name(BidStageEvent.NAME)
+@Label("Bid Stage")
+@Category({"GridlockedCryptizer", "Bids"})
+@Description("One stage of placing a bid")
+@StackTrace(false)
+public class BidStageEvent extends Event {
+    public static final String NAME = "gridlocked.BidStage";
+
+    // Stages, in pipeline order
+    public static final String UI = "ui";
+    public static final String HIGHEST_BID_CHECK = "highest_bid_check";
+    public static final String DB_INSERT = "db_insert";
+    public static final String LEDGER = "ledger";
+    public static final String REFRESH = "refresh";
+
+    private static final AtomicLong correlationIds = new AtomicLong();
+
+    @Label("Correlation ID")
+    public long correlationId;
+
+    @Label("Stage")
+    public String stage;
+
+    @Label("Bid ID")
+    @Description("The bids.bid_id, or 0 before the bid is stored")
+    public long bidId;
+
+    @Label("Vehicle ID")
+    public int vehicleId;
+
+    @Label("Bidder ID")
+    public int bidderId;
+
+    @Label("Outcome")
+    public String outcome;
+
+    /**
+     * Get a new correlation id for a bid
+     */
+    public static long nextCorrelationId() {
+        return correlationIds.incrementAndGet();
+    }
+
+    /**
+     * Check whether a recording has the event enabled, before creating
+     * events for a whole batch of bids
+     */
+    public static boolean isRecording() {
+        return new BidStageEvent().isEnabled();
+    }
+
+    /**
+     * Create an event for a stage and start its clock
+     */
+    public static BidStageEvent start(String stage, long correlationId) {
+        BidStageEvent event = new BidStageEvent();
+        event.stage = stage;
+        event.correlationId = correlationId;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Stop the clock and commit the event if a recording wants it
+     */
+    public void finish(int vehicleId, int bidderId, long bidId, String outcome) {
+        end();
+        if (shouldCommit()) {
+            this.vehicleId = vehicleId;
+            this.bidderId = bidderId;
+            this.bidId = bidId;
+            this.outcome = outcome;
+            commit();
+        }
+    }
+}
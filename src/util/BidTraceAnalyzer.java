@@ -0,0 +1,157 @@
+package util;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Summarizes the BidStageEvents in a flight recording.
+ * Prints, for each stage, the count and the latency percentiles, and for the
+ * backend stages (highest-bid check, database insert and ledger) their share
+ * of the time spent in the backend, then the same per outcome. Ledger
+ * events are joined to their bids through the bid ID, and the report ends
+ * with how many bids were seen through each stage, so a stage that is slow
+ * or missing stands out.
+ *
+ * Usage: java util.BidTraceAnalyzer recording.jfr
+ */
+public class BidTraceAnalyzer {
+    private static final String[] STAGES = {
+        BidStageEvent.UI, BidStageEvent.HIGHEST_BID_CHECK, BidStageEvent.DB_INSERT,
+        BidStageEvent.LEDGER, BidStageEvent.REFRESH
+    };
+    private static final String[] BACKEND_STAGES = {
+        BidStageEvent.HIGHEST_BID_CHECK, BidStageEvent.DB_INSERT, BidStageEvent.LEDGER
+    };
+
+    private final Map<String, LatencyHistogram> byStage = new LinkedHashMap<>();
+    private final Map<String, LatencyHistogram> byOutcome = new TreeMap<>();
+    private final Map<String, Long> nanosByStage = new HashMap<>();
+    // Bid ID to correlation ID, from the db_insert events
+    private final Map<Long, Long> correlationByBid = new HashMap<>();
+    // Stages seen per correlation ID, as a bit set over STAGES
+    private final Map<Long, Integer> stagesByCorrelation = new HashMap<>();
+    private long events;
+
+    public BidTraceAnalyzer() {
+        for (String stage : STAGES) {
+            byStage.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Read every bid stage event in a recording
+     */
+    public void read(Path recording) throws IOException {
+        Set<Long> ledgerBids = new HashSet<>();
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                if (!BidStageEvent.NAME.equals(event.getEventType().getName())) {
+                    continue;
+                }
+                events++;
+                String stage = event.getString("stage");
+                long nanos = event.getDuration().toNanos();
+                long correlationId = event.getLong("correlationId");
+                long bidId = event.getLong("bidId");
+
+                byStage.computeIfAbsent(stage, s -> new LatencyHistogram()).record(nanos);
+                byOutcome.computeIfAbsent(stage + " " + event.getString("outcome"), s -> new LatencyHistogram())
+                    .record(nanos);
+                nanosByStage.merge(stage, nanos, Long::sum);
+
+                if (BidStageEvent.DB_INSERT.equals(stage) && bidId > 0 && correlationId > 0) {
+                    correlationByBid.put(bidId, correlationId);
+                }
+                if (BidStageEvent.LEDGER.equals(stage)) {
+                    // Ledger events may come before the insert event is read
+                    ledgerBids.add(bidId);
+                } else if (correlationId > 0) {
+                    markStage(correlationId, stage);
+                }
+            }
+        }
+        for (Long bidId : ledgerBids) {
+            Long correlationId = correlationByBid.get(bidId);
+            if (correlationId != null) {
+                markStage(correlationId, BidStageEvent.LEDGER);
+            }
+        }
+    }
+
+    private void markStage(long correlationId, String stage) {
+        for (int i = 0; i < STAGES.length; i++) {
+            if (STAGES[i].equals(stage)) {
+                stagesByCorrelation.merge(correlationId, 1 << i, (a, b) -> a | b);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Format the per-stage breakdown
+     */
+    public String report() {
+        // The UI stage spans the backend stages and refresh is separate, so neither counts
+        long backendNanos = 0;
+        for (String stage : BACKEND_STAGES) {
+            backendNanos += nanosByStage.getOrDefault(stage, 0L);
+        }
+
+        StringBuilder text = new StringBuilder();
+        text.append(events).append(" bid stage events, ").append(stagesByCorrelation.size())
+            .append(" correlated bids\n\n");
+        text.append(String.format("%-28s %8s %10s %10s %10s %10s %7s%n",
+            "stage", "count", "mean_ms", "p50_ms", "p99_ms", "max_ms", "backend"));
+        for (Map.Entry<String, LatencyHistogram> entry : byStage.entrySet()) {
+            LatencyHistogram.Snapshot s = entry.getValue().snapshot();
+            double share = -1;
+            if (Arrays.asList(BACKEND_STAGES).contains(entry.getKey())) {
+                long nanos = nanosByStage.getOrDefault(entry.getKey(), 0L);
+                share = backendNanos == 0 ? 0.0 : 100.0 * nanos / backendNanos;
+            }
+            text.append(row(entry.getKey(), s, share));
+        }
+
+        text.append(String.format("%n%-28s %8s %10s %10s %10s %10s%n",
+            "stage outcome", "count", "mean_ms", "p50_ms", "p99_ms", "max_ms"));
+        for (Map.Entry<String, LatencyHistogram> entry : byOutcome.entrySet()) {
+            text.append(row(entry.getKey(), entry.getValue().snapshot(), -1));
+        }
+
+        text.append("\nbids seen through each stage:\n");
+        for (int i = 0; i < STAGES.length; i++) {
+            int bit = 1 << i;
+            long count = stagesByCorrelation.values().stream().filter(mask -> (mask & bit) != 0).count();
+            text.append(String.format("  %-26s %8d%n", STAGES[i], count));
+        }
+        return text.toString();
+    }
+
+    private static String row(String label, LatencyHistogram.Snapshot s, double share) {
+        return String.format("%-28s %8d %10.3f %10.3f %10.3f %10.3f%s%n", label, s.getCount(),
+            s.getMean() / 1e6, s.getPercentile(50) / 1e6, s.getPercentile(99) / 1e6, s.getMax() / 1e6,
+            share < 0 ? "" : String.format(" %6.1f%%", share));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java util.BidTraceAnalyzer recording.jfr");
+            System.exit(2);
+        }
+        BidTraceAnalyzer analyzer = new BidTraceAnalyzer();
+        analyzer.read(Paths.get(args[0]));
+        System.out.print(analyzer.report());
+    }
+}
@@ -1,20 +1,58 @@
 package util;
 
 import java.io.*;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * Application configuration, backed by config.properties.
+ * The settings are held as an immutable ConfigSnapshot behind a volatile
+ * reference, so reading them never takes a lock. Changes, whether through
+ * setProperties or by editing the file while config.watch.enabled is on,
+ * build a new snapshot, swap it in atomically and tell the listeners which
+ * keys changed.
+ */
 public class ConfigManager {
-    private static ConfigManager instance;
-    private Properties properties;
+    private static volatile ConfigManager instance;
     private static final String CONFIG_FILE = "config.properties";
-    
+    // Let an editor finish writing before the file is re-read
+    private static final long RELOAD_SETTLE_MS = 100;
+
+    private final Path configPath = Paths.get(CONFIG_FILE).toAbsolutePath();
+    private final Object updateLock = new Object();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile ConfigSnapshot snapshot;
+
+    /**
+     * Told about every change to the configuration
+     */
+    public interface Listener {
+        /**
+         * @param previous the settings before the change
+         * @param current the settings now in effect
+         * @param changedKeys the keys added, removed or changed
+         */
+        void configChanged(ConfigSnapshot previous, ConfigSnapshot current, Set<String> changedKeys);
+    }
+
     /**
      * Private constructor for singleton pattern
      */
     private ConfigManager() {
-        properties = new Properties();
-        
-        File configFile = new File(CONFIG_FILE);
+        File configFile = configPath.toFile();
         
         // Create default config if it doesn't exist
         if (!configFile.exists()) {
@@ -22,23 +60,54 @@ public class ConfigManager {
         }
         
         // Load configuration
-        try (InputStream input = new FileInputStream(CONFIG_FILE)) {
+        Properties properties = new Properties();
+        try (InputStream input = new FileInputStream(configFile)) {
             properties.load(input);
             System.out.println("Configuration loaded successfully");
         } catch (IOException e) {
             System.err.println("Failed to load configuration: " + e.getMessage());
             e.printStackTrace();
         }
+        snapshot = new ConfigSnapshot(1, properties);
+
+        if (snapshot.getBoolean("config.watch.enabled", true)) {
+            startWatcher();
+        }
     }
     
     /**
      * Get the singleton instance
      */
-    public static synchronized ConfigManager getInstance() {
-        if (instance == null) {
-            instance = new ConfigManager();
+    public static ConfigManager getInstance() {
+        ConfigManager manager = instance;
+        if (manager == null) {
+            synchronized (ConfigManager.class) {
+                manager = instance;
+                if (manager == null) {
+                    manager = new ConfigManager();
+                    instance = manager;
+                }
+            }
         }
-        return instance;
+        return manager;
+    }
+
+    /**
+     * Get the settings currently in effect
+     */
+    public ConfigSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Register a listener for configuration changes
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
     }
     
     /**
@@ -46,13 +115,79 @@ public class ConfigManager {
      */
     private void createDefaultConfig() {
         Properties defaultProps = new Properties();
-        defaultProps.setProperty("db.url", "jdbc:mysql://localhost:3306/gridlocked_cryptizer?allowPublicKeyRetrieval=true&useSSL=false");
+        defaultProps.setProperty("db.url", "jdbc:mysql://localhost:3306/gridlocked_cryptizer?allowPublicKeyRetrieval=true&useSSL=false&rewriteBatchedStatements=true");
         defaultProps.setProperty("db.base_url", "jdbc:mysql://localhost:3306/?allowPublicKeyRetrieval=true&useSSL=false");
         defaultProps.setProperty("db.user", "root");
         defaultProps.setProperty("db.password", "");
         defaultProps.setProperty("blockchain.endpoint", "http://localhost:8545");
+        defaultProps.setProperty("blockchain.block.max_bids", "256");
+        defaultProps.setProperty("blockchain.block.max_delay_ms", "1000");
+        defaultProps.setProperty("blockchain.proof_cache.blocks", "64");
+        defaultProps.setProperty("blockchain.block_cache.blocks", "256");
+        defaultProps.setProperty("blockchain.store.path", "ledger");
+        defaultProps.setProperty("blockchain.store.segment_bytes", "67108864");
+        defaultProps.setProperty("blockchain.store.hot_segments", "8");
+        defaultProps.setProperty("blockchain.store.force_on_seal", "true");
+        defaultProps.setProperty("blockchain.rpc.enabled", "false");
+        defaultProps.setProperty("blockchain.rpc.account", "gridlocked-cryptizer");
+        defaultProps.setProperty("blockchain.rpc.max_batch", "100");
+        defaultProps.setProperty("blockchain.rpc.max_in_flight", "4");
+        defaultProps.setProperty("blockchain.rpc.acquire_timeout_ms", "5000");
+        defaultProps.setProperty("blockchain.rpc.request_timeout_ms", "10000");
+        defaultProps.setProperty("config.watch.enabled", "true");
         defaultProps.setProperty("ui.theme", "light");
         defaultProps.setProperty("log.level", "INFO");
+        defaultProps.setProperty("log.file", "gridlocked_cryptizer.log");
+        defaultProps.setProperty("log.console", "true");
+        defaultProps.setProperty("log.buffer.size", "8192");
+        defaultProps.setProperty("log.buffer.full_policy", "block");
+        defaultProps.setProperty("log.rotate.max_bytes", "10485760");
+        defaultProps.setProperty("log.rotate.interval_ms", "86400000");
+        defaultProps.setProperty("log.rotate.keep", "5");
+        defaultProps.setProperty("metrics.jmx.enabled", "true");
+        defaultProps.setProperty("metrics.dump.interval_ms", "0");
+        defaultProps.setProperty("db.pool.min_size", "2");
+        defaultProps.setProperty("db.pool.max_size", "10");
+        defaultProps.setProperty("db.pool.idle_timeout_ms", "300000");
+        defaultProps.setProperty("db.pool.borrow_timeout_ms", "5000");
+        defaultProps.setProperty("db.pool.validation_interval_ms", "500");
+        defaultProps.setProperty("db.pool.validation_timeout_s", "2");
+        defaultProps.setProperty("db.pool.leak_threshold_ms", "30000");
+        defaultProps.setProperty("db.pool.leak_trace", "false");
+        defaultProps.setProperty("db.trace.enabled", "false");
+        defaultProps.setProperty("db.trace.slow_ms", "200");
+        defaultProps.setProperty("db.trace.top_n", "10");
+        defaultProps.setProperty("db.trace.report_interval_ms", "300000");
+        defaultProps.setProperty("db.migrations.path", "src/db/migration");
+        defaultProps.setProperty("db.migrations.lock_timeout_s", "60");
+        defaultProps.setProperty("db.async.timeout_ms", "10000");
+        defaultProps.setProperty("bidbook.reconcile_interval_ms", "60000");
+        defaultProps.setProperty("bid.lock_stripes", "64");
+        defaultProps.setProperty("bid.group_commit.enabled", "false");
+        defaultProps.setProperty("bid.group_commit.queue_capacity", "10000");
+        defaultProps.setProperty("bid.group_commit.max_batch", "100");
+        defaultProps.setProperty("bid.group_commit.max_delay_ms", "5");
+        defaultProps.setProperty("bid.group_commit.enqueue_timeout_ms", "1000");
+        defaultProps.setProperty("ledger.outbox.batch_size", "100");
+        defaultProps.setProperty("ledger.outbox.poll_ms", "500");
+        defaultProps.setProperty("ledger.outbox.claim_timeout_ms", "30000");
+        defaultProps.setProperty("ledger.outbox.retry_base_ms", "1000");
+        defaultProps.setProperty("ledger.outbox.retry_max_ms", "60000");
+        defaultProps.setProperty("audit.chunk_size", "10000");
+        defaultProps.setProperty("audit.parallelism", "0");
+        defaultProps.setProperty("audit.checkpoint.path", "ledger/audit.checkpoint");
+        defaultProps.setProperty("audit.checkpoint.interval_ms", "30000");
+        defaultProps.setProperty("catalog.fetch_size", String.valueOf(Integer.MIN_VALUE));
+        defaultProps.setProperty("catalog.cache.ttl_ms", "5000");
+        defaultProps.setProperty("catalog.cache.max_entries", "10000");
+        defaultProps.setProperty("session.ttl_ms", "28800000");
+        defaultProps.setProperty("session.idle_timeout_ms", "1800000");
+        defaultProps.setProperty("session.max_sessions", "10000");
+        defaultProps.setProperty("bidder.cache.max_entries", "10000");
+        defaultProps.setProperty("security.hash.target_ms", "100");
+        defaultProps.setProperty("security.hash.min_iterations", "100000");
+        defaultProps.setProperty("security.hash.queue_capacity", "64");
+        defaultProps.setProperty("security.hash.timeout_ms", "5000");
         
         try (OutputStream output = new FileOutputStream(CONFIG_FILE)) {
             defaultProps.store(output, "Gridlocked Cryptizer Configuration");
@@ -67,28 +202,134 @@ public class ConfigManager {
      * Get a configuration property
      */
     public String getProperty(String key) {
-        return properties.getProperty(key);
+        return snapshot.getString(key);
     }
     
     /**
      * Get a configuration property with default value
      */
     public String getProperty(String key, String defaultValue) {
-        return properties.getProperty(key, defaultValue);
+        return snapshot.getString(key, defaultValue);
     }
     
+    /**
+     * Get an integer configuration property, falling back to the default if missing or malformed
+     */
+    public int getIntProperty(String key, int defaultValue) {
+        return snapshot.getInt(key, defaultValue);
+    }
+
+    /**
+     * Get a long configuration property, falling back to the default if missing or malformed
+     */
+    public long getLongProperty(String key, long defaultValue) {
+        return snapshot.getLong(key, defaultValue);
+    }
+
     /**
      * Set a configuration property
      */
     public void setProperty(String key, String value) {
-        properties.setProperty(key, value);
-        
-        try (OutputStream output = new FileOutputStream(CONFIG_FILE)) {
-            properties.store(output, "Gridlocked Cryptizer Configuration");
-            System.out.println("Configuration updated: " + key + " = " + value);
+        setProperties(Collections.singletonMap(key, value));
+    }
+
+    /**
+     * Set several properties as one change: the file is written once and
+     * listeners see a single snapshot with all of them applied
+     */
+    public void setProperties(Map<String, String> updates) {
+        synchronized (updateLock) {
+            Properties properties = snapshot.toProperties();
+            properties.putAll(updates);
+
+            // Write beside the file and move it into place, so a reader never sees half a file
+            Path temp = configPath.resolveSibling(configPath.getFileName() + ".tmp");
+            try {
+                try (OutputStream output = Files.newOutputStream(temp)) {
+                    properties.store(output, "Gridlocked Cryptizer Configuration");
+                }
+                Files.move(temp, configPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                System.out.println("Configuration updated: " + updates.keySet());
+            } catch (IOException e) {
+                System.err.println("Failed to save configuration: " + e.getMessage());
+                e.printStackTrace();
+            }
+            swap(properties);
+        }
+    }
+
+    /**
+     * Re-read config.properties, applying any changes
+     *
+     * @return true if any setting changed
+     */
+    public boolean reload() {
+        synchronized (updateLock) {
+            Properties properties = new Properties();
+            try (InputStream input = Files.newInputStream(configPath)) {
+                properties.load(input);
+            } catch (IOException e) {
+                System.err.println("Failed to reload configuration: " + e.getMessage());
+                return false;
+            }
+            return swap(properties);
+        }
+    }
+
+    // Caller holds updateLock
+    private boolean swap(Properties properties) {
+        ConfigSnapshot previous = snapshot;
+        ConfigSnapshot current = new ConfigSnapshot(previous.getVersion() + 1, properties);
+        Set<String> changed = previous.changedKeys(current);
+        if (changed.isEmpty()) {
+            return false;
+        }
+        snapshot = current;
+        Set<String> changedKeys = Collections.unmodifiableSet(changed);
+        for (Listener listener : listeners) {
+            try {
+                listener.configChanged(previous, current, changedKeys);
+            } catch (RuntimeException e) {
+                System.err.println("Configuration listener failed: " + e);
+                e.printStackTrace();
+            }
+        }
+        return true;
+    }
+
+    // Reload whenever config.properties is written or replaced
+    private void startWatcher() {
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            configPath.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
         } catch (IOException e) {
-            System.err.println("Failed to save configuration: " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("Cannot watch configuration for changes: " + e.getMessage());
+            return;
         }
+
+        Thread watcher = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    boolean touched = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        touched |= configPath.getFileName().equals(event.context());
+                    }
+                    key.reset();
+                    if (touched) {
+                        Thread.sleep(RELOAD_SETTLE_MS);
+                        if (reload()) {
+                            System.out.println("Configuration reloaded: version " + snapshot.getVersion());
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
     }
 }
\ No newline at end of file
@@ -0,0 +1,151 @@
+package util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One immutable version of the configuration, with typed accessors.
+ * Numbers and booleans are parsed on first read and cached, so hot paths
+ * can read settings without parsing. A malformed value falls back to each
+ * caller's own default and is reported once per snapshot.
+ */
+public final class ConfigSnapshot {
+    private final long version;
+    private final Map<String, String> values;
+    // Parsed values; a key read as both int and long simply holds the latest
+    private final ConcurrentMap<String, Object> parsed = new ConcurrentHashMap<>();
+
+    // Cached in place of a value that does not parse as the type; per type, since "3000000000" is a long but not an int
+    private enum Malformed { INT, LONG }
+
+    ConfigSnapshot(long version, Properties properties) {
+        Map<String, String> copy = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            copy.put(key, properties.getProperty(key));
+        }
+        this.version = version;
+        this.values = Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Get the version, which increases with every change
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get every setting as an unmodifiable map
+     */
+    public Map<String, String> asMap() {
+        return values;
+    }
+
+    public String getString(String key) {
+        return values.get(key);
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = values.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Object cached = parsed.get(key);
+        if (cached instanceof Integer) {
+            return (Integer) cached;
+        }
+        if (cached == Malformed.INT) {
+            return defaultValue;
+        }
+        String value = values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int result = Integer.parseInt(value.trim());
+            parsed.put(key, result);
+            return result;
+        } catch (NumberFormatException e) {
+            return invalid(key, value, defaultValue, Malformed.INT);
+        }
+    }
+
+    public long getLong(String key, long defaultValue) {
+        Object cached = parsed.get(key);
+        if (cached instanceof Long) {
+            return (Long) cached;
+        }
+        if (cached == Malformed.LONG) {
+            return defaultValue;
+        }
+        String value = values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long result = Long.parseLong(value.trim());
+            parsed.put(key, result);
+            return result;
+        } catch (NumberFormatException e) {
+            return invalid(key, value, defaultValue, Malformed.LONG);
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object cached = parsed.get(key);
+        if (cached instanceof Boolean) {
+            return (Boolean) cached;
+        }
+        String value = values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        boolean result = Boolean.parseBoolean(value.trim());
+        parsed.put(key, result);
+        return result;
+    }
+
+    // Report a malformed value once, then let later reads return their own default without re-parsing
+    private <T> T invalid(String key, String value, T defaultValue, Malformed marker) {
+        if (parsed.put(key, marker) != marker) {
+            System.err.println("Invalid value for " + key + ": " + value + ", using default " + defaultValue);
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Get the keys whose values differ between this snapshot and another
+     */
+    public Set<String> changedKeys(ConfigSnapshot other) {
+        Set<String> changed = new TreeSet<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (!entry.getValue().equals(other.values.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String key : other.values.keySet()) {
+            if (!values.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+        return changed;
+    }
+
+    Properties toProperties() {
+        Properties properties = new Properties();
+        properties.putAll(values);
+        return properties;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigSnapshot[version=" + version + ", " + values.size() + " settings]";
+    }
+}
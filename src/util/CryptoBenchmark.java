@@ -0,0 +1,126 @@
+package util;
+
+import blockchain.BidRecord;
+
+import java.lang.management.ManagementFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.function.IntSupplier;
+
+/**
+ * Compares the original allocate-per-call crypto paths with the current
+ * SecurityUtil implementation. Reports throughput and bytes allocated per
+ * operation on the calling thread.
+ *
+ * Run with: java -cp out util.CryptoBenchmark [iterations]
+ */
+@SuppressWarnings("deprecation")
+public class CryptoBenchmark {
+    private static final String PASSWORD = "Benchmark1Password";
+    private static long sequence;
+    private static volatile long blackhole;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        String stored = SecurityUtil.hashPassword(PASSWORD);
+        StoredCredential credential = StoredCredential.parse(stored);
+
+        System.out.println("Crypto benchmark, " + iterations + " iterations per case");
+        System.out.println(String.format("%-28s %14s %14s", "case", "ops/s", "bytes/op"));
+
+        // Warm up both paths so the JIT has compiled them before measuring
+        for (int round = 0; round < 2; round++) {
+            boolean report = round == 1;
+            run("hashPassword (legacy)", iterations, report, () -> legacyHashPassword(PASSWORD).length());
+            run("hashPassword", iterations, report, () -> SecurityUtil.hashPassword(PASSWORD).length());
+            run("checkPassword (legacy)", iterations, report, () -> legacyCheckPassword(PASSWORD, stored) ? 1 : 0);
+            run("checkPassword", iterations, report, () -> SecurityUtil.checkPassword(PASSWORD, stored) ? 1 : 0);
+            run("checkPassword (pre-parsed)", iterations, report,
+                () -> SecurityUtil.checkPassword(PASSWORD, credential) ? 1 : 0);
+            run("bid hash (legacy)", iterations, report, () -> legacyBidHash(7, 42, 15250.5).length());
+            run("bid hash", iterations, report, () -> bidHash(7, 42, 15250.5).length());
+        }
+    }
+
+    private static void run(String name, int iterations, boolean report, IntSupplier operation) {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long sink = 0;
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += operation.getAsInt();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        if (report) {
+            System.out.println(String.format("%-28s %14.0f %14d", name,
+                iterations / (elapsed / 1e9), allocated / iterations));
+        }
+        // Keep the results observable so the JIT cannot discard the work
+        blackhole += sink;
+    }
+
+    // The current bid hashing path: one leaf hash over the canonical BidRecord
+    private static String bidHash(int bidderId, int vehicleId, double bidAmount) {
+        BidRecord record = new BidRecord(bidderId, vehicleId, BidRecord.toCents(bidAmount),
+            System.currentTimeMillis(), ++sequence);
+        return Base64.getEncoder().encodeToString(record.leafHash());
+    }
+
+    // The implementations below are the original ones, kept for comparison
+
+    private static String legacyHashPassword(String plainTextPassword) {
+        try {
+            SecureRandom random = new SecureRandom();
+            byte[] salt = new byte[16];
+            random.nextBytes(salt);
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(salt);
+            byte[] hashedPassword = md.digest(plainTextPassword.getBytes());
+            return Base64.getEncoder().encodeToString(salt) + ":" + Base64.getEncoder().encodeToString(hashedPassword);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Error hashing password", e);
+        }
+    }
+
+    private static boolean legacyCheckPassword(String plainTextPassword, String storedPassword) {
+        try {
+            String[] parts = storedPassword.split(":");
+            if (parts.length != 2) {
+                return false;
+            }
+            byte[] salt = Base64.getDecoder().decode(parts[0]);
+            byte[] hash = Base64.getDecoder().decode(parts[1]);
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(salt);
+            byte[] hashedPassword = md.digest(plainTextPassword.getBytes());
+            if (hash.length != hashedPassword.length) {
+                return false;
+            }
+            int diff = 0;
+            for (int i = 0; i < hash.length; i++) {
+                diff |= hash[i] ^ hashedPassword[i];
+            }
+            return diff == 0;
+        } catch (NoSuchAlgorithmException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String legacyBidHash(int bidderId, int vehicleId, double bidAmount) {
+        try {
+            String bidData = bidderId + ":" + vehicleId + ":" + bidAmount + ":" + System.currentTimeMillis();
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] hash = md.digest(bidData.getBytes());
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+}
@@ -1,101 +1,175 @@
 package util;
 
-import java.io.IOException;
-import java.util.logging.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 
 public class LoggerUtil {
-    private static final String LOG_FILE = "gridlocked_cryptizer.log";
-    private final Logger logger;
-    
-    // Private constructor for singleton pattern
-    private LoggerUtil(Class<?> clazz) {
-        logger = Logger.getLogger(clazz.getName());
-        
-        try {
-            // Create file handler
-            FileHandler fileHandler = new FileHandler(LOG_FILE, true);
-            fileHandler.setFormatter(new SimpleFormatter());
-            
-            // Create console handler
-            ConsoleHandler consoleHandler = new ConsoleHandler();
-            consoleHandler.setFormatter(new CustomFormatter());
-            
-            // Remove existing handlers
-            Logger rootLogger = Logger.getLogger("");
-            Handler[] handlers = rootLogger.getHandlers();
-            for (Handler handler : handlers) {
-                rootLogger.removeHandler(handler);
+    private static final ConcurrentMap<String, LoggerUtil> loggers = new ConcurrentHashMap<>();
+    private final String name;
+
+    /**
+     * Log levels, lowest first
+     */
+    public enum Level {
+        DEBUG,
+        INFO,
+        WARN,
+        ERROR,
+        OFF;
+
+        /**
+         * Parse a level name, accepting the java.util.logging names too
+         */
+        public static Level parse(String text) {
+            switch (text.trim().toUpperCase(Locale.ROOT)) {
+                case "ALL": case "FINEST": case "FINER": case "FINE": case "CONFIG": case "DEBUG":
+                    return DEBUG;
+                case "INFO":
+                    return INFO;
+                case "WARNING": case "WARN":
+                    return WARN;
+                case "SEVERE": case "ERROR":
+                    return ERROR;
+                case "OFF":
+                    return OFF;
+                default:
+                    System.err.println("Unknown log level " + text + ", using INFO");
+                    return INFO;
             }
-            
-            // Set log level
-            logger.setLevel(Level.ALL);
-            
-            // Add handlers
-            logger.addHandler(fileHandler);
-            logger.addHandler(consoleHandler);
-            
-            // Don't forward to parent handlers
-            logger.setUseParentHandlers(false);
-        } catch (IOException e) {
-            System.err.println("Failed to initialize logger: " + e.getMessage());
-            e.printStackTrace();
         }
     }
-    
+
+    // Started on first use, so loggers can be created in static initializers
+    private static final class Backend {
+        static final AsyncLogAppender APPENDER = AsyncLogAppender.fromConfig();
+
+        static {
+            // Write out what is queued if the JVM exits without calling shutdown
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> APPENDER.flush(2000), "log-flush"));
+            // Follow log.level as it is edited
+            ConfigManager.getInstance().addListener((previous, current, changedKeys) -> {
+                if (changedKeys.contains("log.level")) {
+                    APPENDER.setThreshold(Level.parse(current.getString("log.level", "INFO")));
+                }
+            });
+        }
+    }
+
+    // Private constructor; loggers are shared per class
+    private LoggerUtil(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Start the log writer ahead of the first log message
+     */
+    public static void initialize() {
+        Backend.APPENDER.isEnabled(Level.INFO);
+    }
+
     /**
-     * Get a logger for the specified class
+     * Write the queued messages and stop the log writer
+     */
+    public static void shutdown() {
+        Backend.APPENDER.shutdown(5000);
+    }
+
+    /**
+     * Get the log writer statistics
+     */
+    public static AsyncLogAppender.LogStats getStats() {
+        return Backend.APPENDER.getStats();
+    }
+
+    /**
+     * Get the logger for the specified class
      */
     public static LoggerUtil getLogger(Class<?> clazz) {
-        return new LoggerUtil(clazz);
+        return loggers.computeIfAbsent(clazz.getName(), LoggerUtil::new);
     }
-    
+
+    /**
+     * Check whether messages at a level are logged
+     */
+    public boolean isEnabled(Level level) {
+        return Backend.APPENDER.isEnabled(level);
+    }
+
+    /**
+     * Check whether debug messages are logged
+     */
+    public boolean isDebugEnabled() {
+        return isEnabled(Level.DEBUG);
+    }
+
+    private void log(Level level, String message, Throwable throwable) {
+        if (Backend.APPENDER.isEnabled(level)) {
+            Backend.APPENDER.append(level, name, message, throwable);
+        }
+    }
+
+    // Build the message only when the level is enabled
+    private void log(Level level, Supplier<String> message) {
+        if (Backend.APPENDER.isEnabled(level)) {
+            Backend.APPENDER.append(level, name, message.get(), null);
+        }
+    }
+
+    /**
+     * Log a debug message
+     */
+    public void debug(String message) {
+        log(Level.DEBUG, message, null);
+    }
+
+    /**
+     * Log a debug message built only if debug is enabled
+     */
+    public void debug(Supplier<String> message) {
+        log(Level.DEBUG, message);
+    }
+
     /**
      * Log an info message
      */
     public void info(String message) {
-        logger.info(message);
+        log(Level.INFO, message, null);
     }
-    
+
+    /**
+     * Log an info message built only if info is enabled
+     */
+    public void info(Supplier<String> message) {
+        log(Level.INFO, message);
+    }
+
     /**
      * Log a warning message
      */
     public void warn(String message) {
-        logger.warning(message);
+        log(Level.WARN, message, null);
     }
-    
+
+    /**
+     * Log a warning message built only if warnings are enabled
+     */
+    public void warn(Supplier<String> message) {
+        log(Level.WARN, message);
+    }
+
     /**
      * Log an error message
      */
     public void error(String message) {
-        logger.severe(message);
+        log(Level.ERROR, message, null);
     }
-    
+
     /**
      * Log an error message with exception
      */
     public void error(String message, Throwable throwable) {
-        logger.log(Level.SEVERE, message, throwable);
-    }
-    
-    /**
-     * Custom log formatter for console output
-     */
-    static class CustomFormatter extends Formatter {
-        private static final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        
-        @Override
-        public String format(LogRecord record) {
-            LocalDateTime now = LocalDateTime.now();
-            String timestamp = dtf.format(now);
-            
-            return String.format("[%s] [%s] %s: %s%n", 
-                timestamp,
-                record.getLevel(),
-                record.getLoggerName(),
-                record.getMessage()
-            );
-        }
+        log(Level.ERROR, message, throwable);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,270 @@
+package util;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide registry of operation timers and counters.
+ * A timer keeps one latency histogram per outcome, created the first time
+ * that outcome is recorded. Callers look their timers up once and keep
+ * them in static fields, so recording costs a nanoTime call and a few
+ * uncontended atomic adds. With metrics.jmx.enabled every histogram and
+ * counter is registered as a platform MXBean under GridlockedCryptizer:*,
+ * and with metrics.dump.interval_ms set the text snapshot is logged
+ * periodically.
+ */
+public class MetricsRegistry {
+    private static final LoggerUtil logger = LoggerUtil.getLogger(MetricsRegistry.class);
+    private static final String DOMAIN = "GridlockedCryptizer";
+    private static MetricsRegistry instance;
+
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final boolean jmxEnabled;
+    private final ScheduledExecutorService dumper;
+
+    /**
+     * How an operation ended
+     */
+    public enum Outcome {
+        SUCCESS,
+        REJECTED,
+        SQL_ERROR,
+        FALLBACK,
+        ERROR;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private MetricsRegistry() {
+        ConfigManager config = ConfigManager.getInstance();
+        jmxEnabled = Boolean.parseBoolean(config.getProperty("metrics.jmx.enabled", "true").trim());
+        long dumpIntervalMs = config.getLongProperty("metrics.dump.interval_ms", 0L);
+        if (dumpIntervalMs > 0) {
+            dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "metrics-dump");
+                t.setDaemon(true);
+                return t;
+            });
+            dumper.scheduleAtFixedRate(() -> logger.info("Metrics snapshot\n" + dump()),
+                dumpIntervalMs, dumpIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            dumper = null;
+        }
+    }
+
+    /**
+     * Get the singleton instance
+     */
+    public static synchronized MetricsRegistry getInstance() {
+        if (instance == null) {
+            instance = new MetricsRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * Get the timer for an operation, creating it on first use
+     */
+    public static Timer timer(String name) {
+        MetricsRegistry registry = getInstance();
+        return registry.timers.computeIfAbsent(name, n -> new Timer(registry, n));
+    }
+
+    /**
+     * Get a counter, creating it on first use
+     */
+    public static Counter counter(String name) {
+        MetricsRegistry registry = getInstance();
+        return registry.counters.computeIfAbsent(name, n -> {
+            Counter counter = new Counter(n);
+            registry.register("type=Counter,name=" + ObjectName.quote(n), counter);
+            return counter;
+        });
+    }
+
+    private void register(String properties, Object mbean) {
+        if (!jmxEnabled) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(mbean, name);
+            }
+        } catch (JMException e) {
+            logger.warn("Could not register metrics MBean " + properties + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Format every timer and counter as a plain-text table, sorted by name
+     */
+    public String dump() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%-36s %-10s %10s %10s %10s %10s %10s %10s%n",
+            "operation", "outcome", "count", "mean_us", "p50_us", "p99_us", "p999_us", "max_us"));
+        for (Timer timer : new TreeMap<>(timers).values()) {
+            for (Outcome outcome : Outcome.values()) {
+                LatencyHistogram histogram = timer.histograms.get(outcome.ordinal());
+                if (histogram == null) {
+                    continue;
+                }
+                LatencyHistogram.Snapshot s = histogram.snapshot();
+                text.append(String.format("%-36s %-10s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    timer.name, outcome.label(), s.getCount(), s.getMean() / 1000.0,
+                    s.getPercentile(50) / 1000.0, s.getPercentile(99) / 1000.0,
+                    s.getPercentile(99.9) / 1000.0, s.getMax() / 1000.0));
+            }
+        }
+        Map<String, Counter> sortedCounters = new TreeMap<>(counters);
+        if (!sortedCounters.isEmpty()) {
+            text.append(String.format("%n%-36s %10s%n", "counter", "count"));
+            for (Counter counter : sortedCounters.values()) {
+                text.append(String.format("%-36s %10d%n", counter.name, counter.getCount()));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Stop the periodic dump, logging a last snapshot
+     */
+    public void shutdown() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            logger.info("Metrics snapshot at shutdown\n" + dump());
+        }
+    }
+
+    /**
+     * Latency of one operation, split by outcome
+     */
+    public static final class Timer {
+        private final MetricsRegistry registry;
+        private final String name;
+        private final AtomicReferenceArray<LatencyHistogram> histograms =
+            new AtomicReferenceArray<>(Outcome.values().length);
+
+        private Timer(MetricsRegistry registry, String name) {
+            this.registry = registry;
+            this.name = name;
+        }
+
+        /**
+         * Start timing; pass the result to stop
+         */
+        public long start() {
+            return System.nanoTime();
+        }
+
+        /**
+         * Record the time since start under an outcome
+         */
+        public void stop(long start, Outcome outcome) {
+            record(outcome, System.nanoTime() - start);
+        }
+
+        /**
+         * Record a duration under an outcome
+         */
+        public void record(Outcome outcome, long nanos) {
+            LatencyHistogram histogram = histograms.get(outcome.ordinal());
+            if (histogram == null) {
+                histogram = create(outcome);
+            }
+            histogram.record(nanos);
+        }
+
+        private LatencyHistogram create(Outcome outcome) {
+            LatencyHistogram created = new LatencyHistogram();
+            if (!histograms.compareAndSet(outcome.ordinal(), null, created)) {
+                return histograms.get(outcome.ordinal());
+            }
+            registry.register("type=Operation,name=" + ObjectName.quote(name) + ",outcome=" + outcome.label(),
+                new OperationStats(created));
+            return created;
+        }
+
+        /**
+         * Get a snapshot for one outcome, or null if it was never recorded
+         */
+        public LatencyHistogram.Snapshot snapshot(Outcome outcome) {
+            LatencyHistogram histogram = histograms.get(outcome.ordinal());
+            return histogram == null ? null : histogram.snapshot();
+        }
+
+        public String getName() { return name; }
+    }
+
+    /**
+     * A monotonically increasing count
+     */
+    public static final class Counter implements CounterMXBean {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long delta) {
+            count.add(delta);
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+    }
+
+    public interface CounterMXBean {
+        long getCount();
+    }
+
+    /**
+     * JMX view of one operation outcome, in microseconds
+     */
+    public interface OperationStatsMXBean {
+        long getCount();
+        double getMeanMicros();
+        double getP50Micros();
+        double getP99Micros();
+        double getP999Micros();
+        double getMaxMicros();
+    }
+
+    private static final class OperationStats implements OperationStatsMXBean {
+        private final LatencyHistogram histogram;
+
+        OperationStats(LatencyHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override public long getCount() { return histogram.snapshot().getCount(); }
+        @Override public double getMeanMicros() { return histogram.snapshot().getMean() / 1000.0; }
+        @Override public double getP50Micros() { return histogram.snapshot().getPercentile(50) / 1000.0; }
+        @Override public double getP99Micros() { return histogram.snapshot().getPercentile(99) / 1000.0; }
+        @Override public double getP999Micros() { return histogram.snapshot().getPercentile(99.9) / 1000.0; }
+        @Override public double getMaxMicros() { return histogram.snapshot().getMax() / 1000.0; }
+    }
+}
@@ -0,0 +1,237 @@
+package util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs PBKDF2 password hashing on a dedicated, bounded executor.
+ * A login storm fills this executor's queue and is then rejected
+ * immediately, instead of tying up the threads that serve bidding.
+ * The iteration count is calibrated at startup so one hash takes about
+ * security.hash.target_ms on this machine.
+ */
+public class PasswordHasher {
+    private static final LoggerUtil logger = LoggerUtil.getLogger(PasswordHasher.class);
+    private static final int CALIBRATION_ITERATIONS = 10000;
+
+    private static PasswordHasher instance;
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+    private final int iterations;
+
+    // Statistics
+    private final AtomicLong hashes = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong hashNanosTotal = new AtomicLong();
+    private final AtomicLong hashNanosMax = new AtomicLong();
+
+    private PasswordHasher() {
+        ConfigManager config = ConfigManager.getInstance();
+        int threads = Math.max(1, config.getIntProperty("security.hash.threads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2)));
+        int queueCapacity = Math.max(1, config.getIntProperty("security.hash.queue_capacity", 64));
+        timeoutMs = config.getLongProperty("security.hash.timeout_ms", 5000L);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            r -> {
+                Thread t = new Thread(r, "password-hasher-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+
+        iterations = calibrate(
+            config.getLongProperty("security.hash.target_ms", 100L),
+            config.getIntProperty("security.hash.min_iterations", 100000));
+    }
+
+    /**
+     * Get the singleton instance, calibrating on first use
+     */
+    public static synchronized PasswordHasher getInstance() {
+        if (instance == null) {
+            instance = new PasswordHasher();
+        }
+        return instance;
+    }
+
+    // Pick the iteration count that takes about targetMs, but never fewer than minIterations
+    private static int calibrate(long targetMs, int minIterations) {
+        String probe = "calibration-probe";
+        byte[] salt = new byte[16];
+
+        // The first rounds warm up the JIT; the best of the rest is the estimate
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            SecurityUtil.pbkdf2(probe, salt, CALIBRATION_ITERATIONS);
+            if (i >= 2) {
+                best = Math.min(best, System.nanoTime() - start);
+            }
+        }
+
+        long calibrated = TimeUnit.MILLISECONDS.toNanos(targetMs) * CALIBRATION_ITERATIONS / Math.max(1, best);
+        int result = (int) Math.max(minIterations, Math.min(Integer.MAX_VALUE, calibrated));
+        logger.info("Password hashing calibrated to " + result + " PBKDF2 iterations (target " + targetMs + "ms)");
+        return result;
+    }
+
+    /**
+     * Get the calibrated PBKDF2 iteration count
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Hash a password on the hashing executor
+     *
+     * @return a future with the stored credential text; fails fast with
+     *         RejectedExecutionException if the hashing queue is full
+     */
+    public CompletableFuture<String> hashPasswordAsync(String plainTextPassword) {
+        return submit(() -> SecurityUtil.hashPassword(plainTextPassword, iterations));
+    }
+
+    /**
+     * Verify a password on the hashing executor
+     *
+     * @return a future that completes with true if the password matches
+     */
+    public CompletableFuture<Boolean> checkPasswordAsync(String plainTextPassword, StoredCredential credential) {
+        return submit(() -> SecurityUtil.checkPassword(plainTextPassword, credential));
+    }
+
+    /**
+     * Hash a password, waiting up to security.hash.timeout_ms
+     *
+     * @throws RejectedExecutionException if the hashing executor is saturated or too slow
+     */
+    public String hashPassword(String plainTextPassword) {
+        return await(hashPasswordAsync(plainTextPassword));
+    }
+
+    /**
+     * Verify a password, waiting up to security.hash.timeout_ms
+     *
+     * @throws RejectedExecutionException if the hashing executor is saturated or too slow
+     */
+    public boolean checkPassword(String plainTextPassword, StoredCredential credential) {
+        return await(checkPasswordAsync(plainTextPassword, credential));
+    }
+
+    /**
+     * Check whether a credential should be upgraded to the current settings
+     */
+    public boolean needsRehash(StoredCredential credential) {
+        return SecurityUtil.needsRehash(credential, iterations);
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                // The caller gave up while this was queued
+                if (future.isDone()) return;
+                long start = System.nanoTime();
+                try {
+                    future.complete(task.get());
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    long elapsed = System.nanoTime() - start;
+                    hashes.incrementAndGet();
+                    hashNanosTotal.addAndGet(elapsed);
+                    hashNanosMax.accumulateAndGet(elapsed, Math::max);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while hashing password", e);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw new RejectedExecutionException("Password hashing timed out after " + timeoutMs + "ms", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    /**
+     * Get a snapshot of the hashing statistics
+     */
+    public HasherStats getStats() {
+        long count = hashes.get();
+        return new HasherStats(
+            iterations,
+            executor.getQueue().size(),
+            executor.getActiveCount(),
+            count,
+            rejected.get(),
+            count == 0 ? 0 : hashNanosTotal.get() / count / 1000,
+            hashNanosMax.get() / 1000
+        );
+    }
+
+    /**
+     * Immutable snapshot of hashing statistics. Latencies are in microseconds.
+     */
+    public static class HasherStats {
+        private final int iterations;
+        private final int queueDepth;
+        private final int activeThreads;
+        private final long hashes;
+        private final long rejected;
+        private final long averageMicros;
+        private final long maxMicros;
+
+        HasherStats(int iterations, int queueDepth, int activeThreads, long hashes, long rejected,
+                    long averageMicros, long maxMicros) {
+            this.iterations = iterations;
+            this.queueDepth = queueDepth;
+            this.activeThreads = activeThreads;
+            this.hashes = hashes;
+            this.rejected = rejected;
+            this.averageMicros = averageMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        public int getIterations() { return iterations; }
+        public int getQueueDepth() { return queueDepth; }
+        public int getActiveThreads() { return activeThreads; }
+        public long getHashes() { return hashes; }
+        public long getRejected() { return rejected; }
+        public long getAverageMicros() { return averageMicros; }
+        public long getMaxMicros() { return maxMicros; }
+
+        @Override
+        public String toString() {
+            return "iterations=" + iterations + ", queued=" + queueDepth + ", active=" + activeThreads
+                + ", hashes=" + hashes + ", rejected=" + rejected
+                + ", latency(us) avg=" + averageMicros + " max=" + maxMicros;
+        }
+    }
+}
@@ -1,9 +1,18 @@
 package util;
 
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.util.Base64;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
 import java.util.regex.Pattern;
 
 public class SecurityUtil {
@@ -16,77 +25,168 @@ public class SecurityUtil {
         Pattern.compile("^(?=.*[0-9])(?=.*[a-z])(?=.*[A-Z]).{8,}$");
 
     private static final int SALT_LENGTH = 16;
+    private static final int HASH_LENGTH = 32;
+
+    // Digests, random generators and encoders are reused per thread instead of created per call
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+    private static final ThreadLocal<CharsetEncoder> ENCODER =
+        ThreadLocal.withInitial(() -> Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE));
+    private static final ThreadLocal<ByteBuffer> ENCODE_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(256));
+    private static final ThreadLocal<SecretKeyFactory> PBKDF2 = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("PBKDF2WithHmacSHA256 not available", e);
+        }
+    });
+    private static final ThreadLocal<byte[]> HASH_BUFFER = ThreadLocal.withInitial(() -> new byte[HASH_LENGTH]);
+
+    /**
+     * Get this thread's SHA-256 digest, reset and ready for use
+     */
+    public static MessageDigest sha256() {
+        MessageDigest md = SHA256.get();
+        md.reset();
+        return md;
+    }
+
+    /**
+     * Feed characters to a digest in the platform charset (as String.getBytes() would)
+     * without allocating a byte array. The scratch buffer is wiped afterwards.
+     */
+    public static void update(MessageDigest md, CharSequence text) {
+        CharsetEncoder encoder = ENCODER.get();
+        ByteBuffer buffer = ENCODE_BUFFER.get();
+        int needed = (int) Math.ceil(text.length() * (double) encoder.maxBytesPerChar());
+        if (buffer.capacity() < needed) {
+            buffer = ByteBuffer.allocate(needed);
+            ENCODE_BUFFER.set(buffer);
+        }
+
+        buffer.clear();
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(text), buffer, true);
+        encoder.flush(buffer);
+        buffer.flip();
+        int length = buffer.remaining();
+        md.update(buffer);
+
+        // Don't leave password bytes lying around in the shared buffer
+        Arrays.fill(buffer.array(), 0, length, (byte) 0);
+    }
 
     /**
      * Hashes a password using SHA-256 with a random salt
      * 
      * @param plainTextPassword the password to hash
      * @return the hashed password with salt (format: salt:hash)
+     * @deprecated single-round SHA-256 is too fast to resist brute force;
+     *             use {@link PasswordHasher#hashPassword(String)}
      */
+    @Deprecated
     public static String hashPassword(String plainTextPassword) {
+        // Generate a random salt
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.get().nextBytes(salt);
+
+        // Hash the password with the salt
+        MessageDigest md = sha256();
+        md.update(salt);
+        update(md, plainTextPassword);
+        byte[] hashedPassword = md.digest();
+
+        // Return salt:hash
+        return new StoredCredential(salt, hashedPassword).toString();
+    }
+
+    /**
+     * Hashes a password using PBKDF2-HMAC-SHA256 with a random salt.
+     * This is deliberately slow; run it through PasswordHasher so hashing
+     * cannot starve other work.
+     *
+     * @param plainTextPassword the password to hash
+     * @param iterations the PBKDF2 iteration count
+     * @return the hashed password (format: pbkdf2$iterations$salt$hash)
+     */
+    public static String hashPassword(String plainTextPassword, int iterations) {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.get().nextBytes(salt);
+        return new StoredCredential(iterations, salt, pbkdf2(plainTextPassword, salt, iterations)).toString();
+    }
+
+    /**
+     * Derives a PBKDF2-HMAC-SHA256 key from a password
+     */
+    public static byte[] pbkdf2(String plainTextPassword, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(plainTextPassword.toCharArray(), salt, iterations, HASH_LENGTH * 8);
         try {
-            // Generate a random salt
-            SecureRandom random = new SecureRandom();
-            byte[] salt = new byte[SALT_LENGTH];
-            random.nextBytes(salt);
-
-            // Hash the password with the salt
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.update(salt);
-            byte[] hashedPassword = md.digest(plainTextPassword.getBytes());
-
-            // Convert to Base64 for storage
-            String saltString = Base64.getEncoder().encodeToString(salt);
-            String hashString = Base64.getEncoder().encodeToString(hashedPassword);
-
-            // Return salt:hash
-            return saltString + ":" + hashString;
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Error hashing password", e);
+            return PBKDF2.get().generateSecret(spec).getEncoded();
+        } catch (InvalidKeySpecException e) {
+            throw new IllegalStateException("Error hashing password", e);
+        } finally {
+            spec.clearPassword();
         }
     }
 
+    /**
+     * Checks whether a credential should be rehashed with the current settings
+     *
+     * @param credential the stored credential
+     * @param iterations the current PBKDF2 iteration count
+     * @return true if the credential is legacy SHA-256 or uses fewer iterations
+     */
+    public static boolean needsRehash(StoredCredential credential, int iterations) {
+        return credential.isLegacy() || credential.getIterations() < iterations;
+    }
+
     /**
      * Verifies a password against a hash
      * 
      * @param plainTextPassword the password to check
-     * @param storedPassword the stored password (format: salt:hash)
+     * @param storedPassword the stored password (format: salt:hash or pbkdf2$iterations$salt$hash)
      * @return true if the password matches the hash
      */
     public static boolean checkPassword(String plainTextPassword, String storedPassword) {
+        StoredCredential credential = StoredCredential.parse(storedPassword);
+        return credential != null && checkPassword(plainTextPassword, credential);
+    }
+
+    /**
+     * Verifies a password against an already parsed credential
+     *
+     * @param plainTextPassword the password to check
+     * @param credential the stored credential
+     * @return true if the password matches the hash
+     */
+    public static boolean checkPassword(String plainTextPassword, StoredCredential credential) {
+        if (!credential.isLegacy()) {
+            byte[] derived = pbkdf2(plainTextPassword, credential.getSalt(), credential.getIterations());
+            return MessageDigest.isEqual(credential.getHash(), derived);
+        }
+
+        // Hash the password with the same salt
+        MessageDigest md = sha256();
+        md.update(credential.getSalt());
+        update(md, plainTextPassword);
+
+        byte[] hashedPassword = HASH_BUFFER.get();
         try {
-            // Split the stored password into salt and hash
-            String[] parts = storedPassword.split(":");
-            if (parts.length != 2) {
-                return false;
-            }
-
-            String saltString = parts[0];
-            String hashString = parts[1];
-
-            // Decode the salt and hash
-            byte[] salt = Base64.getDecoder().decode(saltString);
-            byte[] hash = Base64.getDecoder().decode(hashString);
-
-            // Hash the password with the same salt
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.update(salt);
-            byte[] hashedPassword = md.digest(plainTextPassword.getBytes());
-
-            // Compare the hashes
-            if (hash.length != hashedPassword.length) {
-                return false;
-            }
-
-            // Time-constant comparison to prevent timing attacks
-            int diff = 0;
-            for (int i = 0; i < hash.length; i++) {
-                diff |= hash[i] ^ hashedPassword[i];
-            }
-            return diff == 0;
-        } catch (NoSuchAlgorithmException | IllegalArgumentException e) {
+            md.digest(hashedPassword, 0, HASH_LENGTH);
+        } catch (DigestException e) {
             return false;
         }
+
+        // Time-constant comparison to prevent timing attacks
+        return MessageDigest.isEqual(credential.getHash(), hashedPassword);
     }
 
     /**
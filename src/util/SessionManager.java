@@ -0,0 +1,231 @@
+package util;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues and validates signed, expiring session tokens.
+ * A token is base64url(sessionId, bidderId, expiresAt) + "." + HMAC-SHA256 signature.
+ * Validation is done entirely in memory; the session store adds revocation
+ * and idle expiry on top of the signed expiry.
+ */
+public class SessionManager {
+    private static final LoggerUtil logger = LoggerUtil.getLogger(SessionManager.class);
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int SESSION_ID_LENGTH = 16;
+    private static final int PAYLOAD_LENGTH = SESSION_ID_LENGTH + Integer.BYTES + Long.BYTES;
+
+    private static SessionManager instance;
+
+    private final SecretKeySpec signingKey;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<Mac> macs;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long ttlMs;
+    private final long idleTimeoutMs;
+    private final int maxSessions;
+    private final ScheduledExecutorService sweeper;
+
+    private SessionManager() {
+        ConfigManager config = ConfigManager.getInstance();
+        ttlMs = config.getLongProperty("session.ttl_ms", 8 * 60 * 60 * 1000L);
+        idleTimeoutMs = config.getLongProperty("session.idle_timeout_ms", 30 * 60 * 1000L);
+        maxSessions = config.getIntProperty("session.max_sessions", 10000);
+
+        // Tokens are only meaningful to this process, so the key never leaves memory
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        signingKey = new SecretKeySpec(key, HMAC_ALGORITHM);
+        macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(signingKey);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HMAC-SHA256 not available", e);
+            }
+        });
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, 60, 60, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Get the singleton instance
+     */
+    public static synchronized SessionManager getInstance() {
+        if (instance == null) {
+            instance = new SessionManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Start a session for an authenticated bidder
+     *
+     * @param bidderId the ID of the bidder
+     * @return the signed session token
+     */
+    public String createSession(int bidderId) {
+        long now = System.currentTimeMillis();
+        byte[] sessionIdBytes = new byte[SESSION_ID_LENGTH];
+        random.nextBytes(sessionIdBytes);
+
+        ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_LENGTH);
+        payload.put(sessionIdBytes).putInt(bidderId).putLong(now + ttlMs);
+        byte[] payloadBytes = payload.array();
+
+        if (sessions.size() >= maxSessions) {
+            makeRoom();
+        }
+        String sessionId = Base64.getUrlEncoder().withoutPadding().encodeToString(sessionIdBytes);
+        sessions.put(sessionId, new Session(sessionId, bidderId, now, now + ttlMs));
+
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(payloadBytes) + "." + encoder.encodeToString(macs.get().doFinal(payloadBytes));
+    }
+
+    /**
+     * Validate a session token and refresh its idle timer
+     *
+     * @param token the session token
+     * @return the session, or null if the token is invalid, expired or revoked
+     */
+    public Session validate(String token) {
+        byte[] payload = verifySignature(token);
+        if (payload == null) {
+            return null;
+        }
+
+        long expiresAt = ByteBuffer.wrap(payload).getLong(SESSION_ID_LENGTH + Integer.BYTES);
+        long now = System.currentTimeMillis();
+        if (now >= expiresAt) {
+            return null;
+        }
+
+        String sessionId = sessionIdOf(payload);
+        Session session = sessions.get(sessionId);
+        if (session == null) {
+            return null;
+        }
+        if (now - session.lastAccessedAt >= idleTimeoutMs) {
+            sessions.remove(sessionId, session);
+            return null;
+        }
+        session.lastAccessedAt = now;
+        return session;
+    }
+
+    /**
+     * Revoke a session so its token is no longer accepted
+     */
+    public void revoke(String token) {
+        byte[] payload = verifySignature(token);
+        if (payload != null) {
+            sessions.remove(sessionIdOf(payload));
+        }
+    }
+
+    /**
+     * Revoke every session belonging to a bidder
+     */
+    public void revokeAll(int bidderId) {
+        sessions.values().removeIf(session -> session.bidderId == bidderId);
+    }
+
+    /**
+     * Get the number of live sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    // Check the signature and return the payload, or null if the token was not issued by us
+    private byte[] verifySignature(String token) {
+        if (token == null) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            byte[] payload = decoder.decode(token.substring(0, dot));
+            byte[] signature = decoder.decode(token.substring(dot + 1));
+            if (payload.length != PAYLOAD_LENGTH) {
+                return null;
+            }
+            return MessageDigest.isEqual(macs.get().doFinal(payload), signature) ? payload : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String sessionIdOf(byte[] payload) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(payload, SESSION_ID_LENGTH));
+    }
+
+    // Drop expired sessions, then the least recently used ones, until there is room
+    private void makeRoom() {
+        sweep();
+        while (sessions.size() >= maxSessions) {
+            Session oldest = null;
+            for (Session session : sessions.values()) {
+                if (oldest == null || session.lastAccessedAt < oldest.lastAccessedAt) {
+                    oldest = session;
+                }
+            }
+            if (oldest == null) break;
+            sessions.remove(oldest.sessionId, oldest);
+            logger.warn("Session store full; evicted session of bidder " + oldest.bidderId);
+        }
+    }
+
+    // Remove sessions past their expiry or idle timeout
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(session ->
+            now >= session.expiresAt || now - session.lastAccessedAt >= idleTimeoutMs);
+    }
+
+    /**
+     * A live session
+     */
+    public static class Session {
+        private final String sessionId;
+        private final int bidderId;
+        private final long createdAt;
+        private final long expiresAt;
+        private volatile long lastAccessedAt;
+
+        Session(String sessionId, int bidderId, long createdAt, long expiresAt) {
+            this.sessionId = sessionId;
+            this.bidderId = bidderId;
+            this.createdAt = createdAt;
+            this.expiresAt = expiresAt;
+            this.lastAccessedAt = createdAt;
+        }
+
+        public String getSessionId() { return sessionId; }
+        public int getBidderId() { return bidderId; }
+        public long getCreatedAt() { return createdAt; }
+        public long getExpiresAt() { return expiresAt; }
+        public long getLastAccessedAt() { return lastAccessedAt; }
+    }
+}
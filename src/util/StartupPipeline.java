@@ -0,0 +1,236 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs application startup as named stages with dependencies.
+ * Each stage starts as soon as the stages it depends on have succeeded, so
+ * independent stages run in parallel. A failed stage skips its dependents
+ * but not the rest of the pipeline. Every stage's start offset and duration
+ * is recorded, along with milestones such as the first frame being shown.
+ */
+public class StartupPipeline {
+    private static final LoggerUtil logger = LoggerUtil.getLogger(StartupPipeline.class);
+
+    /**
+     * Work done by a stage
+     */
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    public enum Status {
+        SUCCEEDED,
+        FAILED,
+        SKIPPED
+    }
+
+    private final Map<String, StageDefinition> definitions = new LinkedHashMap<>();
+    private final Map<String, CompletableFuture<Void>> futures = new ConcurrentHashMap<>();
+    private final Map<String, StageTiming> timings = new ConcurrentHashMap<>();
+    private final Map<String, Long> milestones = Collections.synchronizedMap(new LinkedHashMap<>());
+    private volatile long startNanos;
+
+    /**
+     * Add a stage that runs after the named stages have succeeded
+     */
+    public StartupPipeline stage(String name, Task task, String... dependsOn) {
+        if (startNanos != 0) {
+            throw new IllegalStateException("Pipeline already started");
+        }
+        if (definitions.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate stage: " + name);
+        }
+        for (String dependency : dependsOn) {
+            // Requiring dependencies to be declared first also rules out cycles
+            if (!definitions.containsKey(dependency)) {
+                throw new IllegalArgumentException("Stage " + name + " depends on undeclared stage " + dependency);
+            }
+        }
+        definitions.put(name, new StageDefinition(name, task, dependsOn));
+        return this;
+    }
+
+    /**
+     * Start every stage and return a future that completes with the report
+     * once all of them have finished. Stage failures do not fail the future.
+     */
+    public CompletableFuture<StartupReport> start() {
+        startNanos = System.nanoTime();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, definitions.size()), r -> {
+            Thread t = new Thread(r, "startup-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        for (StageDefinition definition : definitions.values()) {
+            CompletableFuture<?>[] dependencies = new CompletableFuture<?>[definition.dependsOn.length];
+            for (int i = 0; i < dependencies.length; i++) {
+                dependencies[i] = futures.get(definition.dependsOn[i]);
+            }
+            CompletableFuture<Void> future = CompletableFuture.allOf(dependencies)
+                .handle((ignored, failure) -> failure)
+                .thenApplyAsync(failure -> {
+                    if (failure != null) {
+                        timings.put(definition.name, new StageTiming(definition.name, Status.SKIPPED, 0, 0, null));
+                        throw new IllegalStateException("Skipped " + definition.name + ": a dependency failed");
+                    }
+                    return runStage(definition);
+                }, executor);
+            futures.put(definition.name, future);
+        }
+
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+            .handle((ignored, failure) -> {
+                executor.shutdown();
+                StartupReport report = getReport();
+                logger.info(report.toString());
+                return report;
+            });
+    }
+
+    private Void runStage(StageDefinition definition) {
+        long start = System.nanoTime();
+        try {
+            definition.task.run();
+            timings.put(definition.name, new StageTiming(definition.name, Status.SUCCEEDED,
+                toMillis(start - startNanos), toMillis(System.nanoTime() - start), null));
+            return null;
+        } catch (Exception e) {
+            timings.put(definition.name, new StageTiming(definition.name, Status.FAILED,
+                toMillis(start - startNanos), toMillis(System.nanoTime() - start), e));
+            logger.error("Startup stage " + definition.name + " failed", e);
+            throw new IllegalStateException("Stage " + definition.name + " failed", e);
+        }
+    }
+
+    /**
+     * Get a future that completes when the named stage succeeds, or fails if it fails or is skipped
+     */
+    public CompletableFuture<Void> whenDone(String name) {
+        CompletableFuture<Void> future = futures.get(name);
+        if (future == null) {
+            throw new IllegalArgumentException("Unknown or not yet started stage: " + name);
+        }
+        return future;
+    }
+
+    /**
+     * Record the time since the pipeline started, e.g. when the first frame is shown
+     */
+    public void milestone(String name) {
+        milestones.putIfAbsent(name, toMillis(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Get the timings recorded so far
+     */
+    public StartupReport getReport() {
+        List<StageTiming> stages = new ArrayList<>();
+        for (String name : definitions.keySet()) {
+            StageTiming timing = timings.get(name);
+            if (timing != null) {
+                stages.add(timing);
+            }
+        }
+        Map<String, Long> milestoneCopy;
+        synchronized (milestones) {
+            milestoneCopy = new LinkedHashMap<>(milestones);
+        }
+        return new StartupReport(stages, milestoneCopy);
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1000000;
+    }
+
+    private static final class StageDefinition {
+        private final String name;
+        private final Task task;
+        private final String[] dependsOn;
+
+        StageDefinition(String name, Task task, String[] dependsOn) {
+            this.name = name;
+            this.task = task;
+            this.dependsOn = dependsOn.clone();
+        }
+    }
+
+    /**
+     * Outcome and timing of one stage. Times are in milliseconds since the pipeline started.
+     */
+    public static class StageTiming {
+        private final String name;
+        private final Status status;
+        private final long startOffsetMs;
+        private final long durationMs;
+        private final Throwable error;
+
+        StageTiming(String name, Status status, long startOffsetMs, long durationMs, Throwable error) {
+            this.name = name;
+            this.status = status;
+            this.startOffsetMs = startOffsetMs;
+            this.durationMs = durationMs;
+            this.error = error;
+        }
+
+        public String getName() { return name; }
+        public Status getStatus() { return status; }
+        public long getStartOffsetMs() { return startOffsetMs; }
+        public long getDurationMs() { return durationMs; }
+        public Throwable getError() { return error; }
+
+        @Override
+        public String toString() {
+            return name + " " + status + (status == Status.SKIPPED ? ""
+                : " at +" + startOffsetMs + "ms took " + durationMs + "ms");
+        }
+    }
+
+    /**
+     * Immutable snapshot of startup timings
+     */
+    public static class StartupReport {
+        private final List<StageTiming> stages;
+        private final Map<String, Long> milestones;
+
+        StartupReport(List<StageTiming> stages, Map<String, Long> milestones) {
+            this.stages = Collections.unmodifiableList(stages);
+            this.milestones = Collections.unmodifiableMap(milestones);
+        }
+
+        public List<StageTiming> getStages() { return stages; }
+        public Map<String, Long> getMilestones() { return milestones; }
+
+        public boolean isSucceeded(String stage) {
+            for (StageTiming timing : stages) {
+                if (timing.name.equals(stage)) {
+                    return timing.status == Status.SUCCEEDED;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("Startup:");
+            for (Map.Entry<String, Long> milestone : milestones.entrySet()) {
+                sb.append(' ').append(milestone.getKey()).append("=+").append(milestone.getValue()).append("ms");
+            }
+            for (StageTiming timing : stages) {
+                sb.append("\n  ").append(timing);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package util;
+
+import java.util.Base64;
+
+/**
+ * A stored password credential, decoded once from its text form.
+ * Two formats exist: legacy single-round SHA-256 as salt:hash, and
+ * PBKDF2-HMAC-SHA256 as pbkdf2$iterations$salt$hash.
+ */
+public class StoredCredential {
+    private static final String PBKDF2_PREFIX = "pbkdf2$";
+
+    private final int iterations;
+    private final byte[] salt;
+    private final byte[] hash;
+
+    /**
+     * Create a legacy SHA-256 credential
+     */
+    public StoredCredential(byte[] salt, byte[] hash) {
+        this(0, salt, hash);
+    }
+
+    /**
+     * Create a PBKDF2 credential, or a legacy one if iterations is 0
+     */
+    public StoredCredential(int iterations, byte[] salt, byte[] hash) {
+        this.iterations = iterations;
+        this.salt = salt;
+        this.hash = hash;
+    }
+
+    /**
+     * Parse a stored password
+     *
+     * @param storedPassword the stored text in either format
+     * @return the credential, or null if the text is malformed
+     */
+    public static StoredCredential parse(String storedPassword) {
+        if (storedPassword == null) {
+            return null;
+        }
+        try {
+            Base64.Decoder decoder = Base64.getDecoder();
+            if (storedPassword.startsWith(PBKDF2_PREFIX)) {
+                int start = PBKDF2_PREFIX.length();
+                int saltStart = storedPassword.indexOf('$', start) + 1;
+                int hashStart = storedPassword.indexOf('$', saltStart) + 1;
+                if (saltStart <= start || hashStart <= saltStart) {
+                    return null;
+                }
+                int iterations = Integer.parseInt(storedPassword.substring(start, saltStart - 1));
+                if (iterations <= 0) {
+                    return null;
+                }
+                return new StoredCredential(iterations,
+                    decoder.decode(storedPassword.substring(saltStart, hashStart - 1)),
+                    decoder.decode(storedPassword.substring(hashStart)));
+            }
+
+            int colon = storedPassword.indexOf(':');
+            if (colon <= 0 || colon != storedPassword.lastIndexOf(':') || colon == storedPassword.length() - 1) {
+                return null;
+            }
+            return new StoredCredential(
+                decoder.decode(storedPassword.substring(0, colon)),
+                decoder.decode(storedPassword.substring(colon + 1)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check whether this is a legacy single-round SHA-256 credential
+     */
+    public boolean isLegacy() {
+        return iterations == 0;
+    }
+
+    public int getIterations() { return iterations; }
+    public byte[] getSalt() { return salt; }
+    public byte[] getHash() { return hash; }
+
+    @Override
+    public String toString() {
+        Base64.Encoder encoder = Base64.getEncoder();
+        if (isLegacy()) {
+            return encoder.encodeToString(salt) + ":" + encoder.encodeToString(hash);
+        }
+        return PBKDF2_PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+}